@@ -0,0 +1,46 @@
+package com.ztype.zemmision.models;
+
+/**
+ * Lightweight, read-only view of a playlist for lists and policies that do
+ * not need its tracks.
+ */
+public class PlaylistSummary {
+    private final String id;
+    private final String name;
+    private final long lastPlayed;
+    private final boolean isPermanentlySeeded;
+    private final int trackCount;
+
+    public PlaylistSummary(String id, String name, long lastPlayed, boolean isPermanentlySeeded, int trackCount) {
+        this.id = id;
+        this.name = name;
+        this.lastPlayed = lastPlayed;
+        this.isPermanentlySeeded = isPermanentlySeeded;
+        this.trackCount = trackCount;
+    }
+
+    public static PlaylistSummary of(Playlist playlist) {
+        return new PlaylistSummary(playlist.getId(), playlist.getName(), playlist.getLastPlayed(),
+                playlist.isPermanentlySeeded(), playlist.getTracks() != null ? playlist.getTracks().size() : 0);
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getLastPlayed() {
+        return lastPlayed;
+    }
+
+    public boolean isPermanentlySeeded() {
+        return isPermanentlySeeded;
+    }
+
+    public int getTrackCount() {
+        return trackCount;
+    }
+}
@@ -8,6 +8,8 @@ public class Track {
     private String artist;
     private String album;
     private String coverImagePath;
+    // Local download preference, kept out of the metadata.json shared with the torrent
+    private transient TrackPriority priority = TrackPriority.NORMAL;
 
     public Track() {
     }
@@ -74,4 +76,13 @@ public class Track {
     public void setCoverImagePath(String coverImagePath) {
         this.coverImagePath = coverImagePath;
     }
+
+    public TrackPriority getPriority() {
+        // Tracks deserialized from JSON written before priorities existed have none
+        return priority != null ? priority : TrackPriority.NORMAL;
+    }
+
+    public void setPriority(TrackPriority priority) {
+        this.priority = priority;
+    }
 }
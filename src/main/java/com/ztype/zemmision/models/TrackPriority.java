@@ -0,0 +1,27 @@
+package com.ztype.zemmision.models;
+
+/**
+ * How eagerly a track of a torrent-backed playlist is downloaded.
+ */
+public enum TrackPriority {
+    /** Not downloaded unless it is played. */
+    SKIP,
+    NORMAL,
+    /** Downloaded before normal tracks. */
+    HIGH;
+
+    /**
+     * @return the priority named {@code name}, or {@link #NORMAL} for
+     *         {@code null} or an unknown name
+     */
+    public static TrackPriority fromName(String name) {
+        if (name != null) {
+            for (TrackPriority priority : values()) {
+                if (priority.name().equals(name)) {
+                    return priority;
+                }
+            }
+        }
+        return NORMAL;
+    }
+}
@@ -0,0 +1,296 @@
+package com.ztype.zemmision.services;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Shares upload and download bandwidth between all running torrents.
+ * <p>
+ * Every {@link #add(String) added} torrent has a token bucket per direction.
+ * Transfers are charged with {@link #reserve(String, Direction, long, long)},
+ * which never blocks and may leave the bucket in debt; the network side asks
+ * {@link #hasAllowance(String, Direction, long)} before requesting or sending
+ * more. Once a second the bucket rates are recomputed by weighted max-min
+ * fair sharing of the global limit: a torrent that used less than its share
+ * keeps what it used plus some headroom, and the rest is split by weight
+ * among the torrents that were held back. No torrent gets more than the
+ * per-torrent limit. The playing playlist's weight is multiplied by
+ * {@link #PLAYING_WEIGHT_FACTOR}.
+ * <p>
+ * A limit of 0 means unlimited. With no limits set, there is always an
+ * allowance. Unknown torrents are never limited.
+ */
+public class BandwidthScheduler {
+
+    public enum Direction {
+        DOWNLOAD, UPLOAD
+    }
+
+    public static final long UNLIMITED = 0;
+    public static final double DEFAULT_WEIGHT = 1.0;
+    public static final double PLAYING_WEIGHT_FACTOR = 8.0;
+    // Buckets hold this much of their rate, so short bursts pass without waiting
+    static final double BURST_SECONDS = 0.5;
+    // Idle torrents are still granted this much, so they can start without waiting a whole period
+    static final double MIN_DEMAND = 16 * 1024;
+    // Torrents that used less than their share keep this much more than they used
+    static final double DEMAND_HEADROOM = 1.25;
+    static final long REALLOCATE_NANOS = 1_000_000_000L;
+
+    private final Map<Direction, Long> globalLimits = new EnumMap<>(Direction.class);
+    private final Map<Direction, Long> perTorrentLimits = new EnumMap<>(Direction.class);
+    private final Map<String, Flow> flows = new HashMap<>();
+    private String playing;
+    private long lastMeasurement = Long.MIN_VALUE;
+    // Set when limits, weights or the torrents change, to reallocate on the next reservation
+    private boolean dirty = true;
+
+    public BandwidthScheduler() {
+        for (Direction direction : Direction.values()) {
+            globalLimits.put(direction, UNLIMITED);
+            perTorrentLimits.put(direction, UNLIMITED);
+        }
+    }
+
+    /**
+     * @param bytesPerSecond total for all torrents, or {@link #UNLIMITED}
+     */
+    public synchronized void setGlobalLimit(Direction direction, long bytesPerSecond) {
+        globalLimits.put(direction, Math.max(UNLIMITED, bytesPerSecond));
+        dirty = true;
+    }
+
+    public synchronized long getGlobalLimit(Direction direction) {
+        return globalLimits.get(direction);
+    }
+
+    /**
+     * @param bytesPerSecond cap for any single torrent, or {@link #UNLIMITED}
+     */
+    public synchronized void setPerTorrentLimit(Direction direction, long bytesPerSecond) {
+        perTorrentLimits.put(direction, Math.max(UNLIMITED, bytesPerSecond));
+        dirty = true;
+    }
+
+    public synchronized long getPerTorrentLimit(Direction direction) {
+        return perTorrentLimits.get(direction);
+    }
+
+    /**
+     * Starts sharing the limits with {@code torrentId}. Adding it twice has no
+     * further effect.
+     */
+    public synchronized void add(String torrentId) {
+        if (!flows.containsKey(torrentId)) {
+            flows.put(torrentId, new Flow());
+            dirty = true;
+        }
+    }
+
+    public synchronized void setWeight(String torrentId, double weight) {
+        Flow flow = flows.get(torrentId);
+        if (flow != null) {
+            flow.weight = weight > 0 ? weight : DEFAULT_WEIGHT;
+            dirty = true;
+        }
+    }
+
+    /**
+     * Marks {@code torrentId} as the playlist being played, or none for
+     * {@code null}.
+     */
+    public synchronized void setPlaying(String torrentId) {
+        this.playing = torrentId;
+        dirty = true;
+    }
+
+    public synchronized String getPlaying() {
+        return playing;
+    }
+
+    public synchronized void remove(String torrentId) {
+        flows.remove(torrentId);
+        if (torrentId.equals(playing)) {
+            playing = null;
+        }
+        dirty = true;
+    }
+
+    /**
+     * Charges {@code bytes} to the torrent's bucket. Never blocks.
+     *
+     * @return nanoseconds until the bucket is out of debt again, 0 if it is
+     *         not in debt or the torrent is unknown
+     */
+    public synchronized long reserve(String torrentId, Direction direction, long bytes, long nowNanos) {
+        Flow flow = flows.get(torrentId);
+        if (flow == null) {
+            return 0;
+        }
+        reallocateIfDue(nowNanos);
+        Bucket bucket = flow.buckets.get(direction);
+        bucket.used += bytes;
+        if (Double.isInfinite(bucket.rate)) {
+            return 0;
+        }
+        bucket.refill(nowNanos);
+        bucket.tokens -= bytes;
+        if (bucket.tokens >= 0) {
+            return 0;
+        }
+        bucket.throttled = true;
+        return (long) (-bucket.tokens / bucket.rate * 1e9);
+    }
+
+    /**
+     * @return {@code false} while the torrent's bucket is empty or in debt:
+     *         no more should be requested or sent for now
+     */
+    public synchronized boolean hasAllowance(String torrentId, Direction direction, long nowNanos) {
+        Flow flow = flows.get(torrentId);
+        if (flow == null) {
+            return true;
+        }
+        reallocateIfDue(nowNanos);
+        Bucket bucket = flow.buckets.get(direction);
+        if (Double.isInfinite(bucket.rate)) {
+            return true;
+        }
+        bucket.refill(nowNanos);
+        if (bucket.tokens > 0) {
+            return true;
+        }
+        // Held back: counts as wanting more than its share at the next allocation
+        bucket.throttled = true;
+        return false;
+    }
+
+    /**
+     * @return the torrent's current rate in bytes per second, or
+     *         {@link Long#MAX_VALUE} if it is not limited
+     */
+    public synchronized long getAllowance(String torrentId, Direction direction) {
+        Flow flow = flows.get(torrentId);
+        double rate = flow != null ? flow.buckets.get(direction).rate : Double.POSITIVE_INFINITY;
+        return Double.isInfinite(rate) ? Long.MAX_VALUE : (long) rate;
+    }
+
+    private void reallocateIfDue(long nowNanos) {
+        if (dirty || lastMeasurement == Long.MIN_VALUE || nowNanos - lastMeasurement >= REALLOCATE_NANOS) {
+            allocate(nowNanos);
+        }
+    }
+
+    private void allocate(long nowNanos) {
+        // Demand is only measured over whole periods; a reallocation in between reuses the last measurement
+        boolean measure = lastMeasurement == Long.MIN_VALUE || nowNanos - lastMeasurement >= REALLOCATE_NANOS;
+        double seconds = lastMeasurement == Long.MIN_VALUE ? 0 : (nowNanos - lastMeasurement) / 1e9;
+        if (measure) {
+            lastMeasurement = nowNanos;
+        }
+        dirty = false;
+        for (Direction direction : Direction.values()) {
+            allocate(direction, measure ? seconds : -1, nowNanos);
+        }
+    }
+
+    // Weighted max-min fair share of the global limit, each torrent capped by its demand and the per-torrent limit.
+    // A negative period keeps the demand measured last time.
+    private void allocate(Direction direction, double seconds, long nowNanos) {
+        double global = limit(globalLimits.get(direction));
+        double perTorrent = limit(perTorrentLimits.get(direction));
+        List<Flow> unsettled = new ArrayList<>();
+        for (Map.Entry<String, Flow> entry : flows.entrySet()) {
+            Flow flow = entry.getValue();
+            Bucket bucket = flow.buckets.get(direction);
+            if (seconds >= 0) {
+                bucket.demand = bucket.throttled || seconds == 0
+                        ? Double.POSITIVE_INFINITY
+                        : Math.max(MIN_DEMAND, bucket.used / seconds * DEMAND_HEADROOM);
+                bucket.used = 0;
+                bucket.throttled = false;
+            }
+            flow.want = Math.min(bucket.demand, perTorrent);
+            flow.effectiveWeight = flow.weight * (entry.getKey().equals(playing) ? PLAYING_WEIGHT_FACTOR : 1.0);
+            if (Double.isInfinite(global)) {
+                // Nothing to share: only the per-torrent limit applies
+                bucket.setRate(perTorrent, nowNanos);
+            } else {
+                unsettled.add(flow);
+            }
+        }
+
+        double remaining = global;
+        while (!unsettled.isEmpty()) {
+            double totalWeight = 0;
+            for (Flow flow : unsettled) {
+                totalWeight += flow.effectiveWeight;
+            }
+            double perWeight = remaining / totalWeight;
+            boolean settled = false;
+            for (var it = unsettled.iterator(); it.hasNext();) {
+                Flow flow = it.next();
+                if (flow.want <= perWeight * flow.effectiveWeight) {
+                    flow.buckets.get(direction).setRate(flow.want, nowNanos);
+                    remaining -= flow.want;
+                    it.remove();
+                    settled = true;
+                }
+            }
+            if (!settled) {
+                // Everyone left wants more than their share: split what is left by weight
+                for (Flow flow : unsettled) {
+                    flow.buckets.get(direction).setRate(perWeight * flow.effectiveWeight, nowNanos);
+                }
+                break;
+            }
+        }
+    }
+
+    private static double limit(long bytesPerSecond) {
+        return bytesPerSecond == UNLIMITED ? Double.POSITIVE_INFINITY : bytesPerSecond;
+    }
+
+    private static final class Flow {
+        final Map<Direction, Bucket> buckets = new EnumMap<>(Direction.class);
+        double weight = DEFAULT_WEIGHT;
+        double effectiveWeight;
+        double want;
+
+        Flow() {
+            for (Direction direction : Direction.values()) {
+                buckets.put(direction, new Bucket());
+            }
+        }
+    }
+
+    private static final class Bucket {
+        double rate = Double.POSITIVE_INFINITY;
+        double tokens;
+        long refilledAt;
+        double demand = Double.POSITIVE_INFINITY; // bytes per second wanted, from the last measurement
+        long used; // bytes reserved since the last measurement
+        boolean throttled; // had to wait since the last measurement
+
+        void setRate(double rate, long nowNanos) {
+            if (!Double.isInfinite(this.rate)) {
+                refill(nowNanos);
+            } else {
+                tokens = rate * BURST_SECONDS;
+                refilledAt = nowNanos;
+            }
+            this.rate = rate;
+            if (!Double.isInfinite(rate)) {
+                tokens = Math.min(tokens, rate * BURST_SECONDS);
+            }
+        }
+
+        void refill(long nowNanos) {
+            tokens = Math.min(rate * BURST_SECONDS, tokens + rate * (nowNanos - refilledAt) / 1e9);
+            refilledAt = nowNanos;
+        }
+    }
+}
@@ -1,25 +1,64 @@
 package com.ztype.zemmision.services;
 
 import com.ztype.zemmision.models.Playlist;
+import com.ztype.zemmision.models.PlaylistSummary;
 import com.ztype.zemmision.models.Track;
+import com.ztype.zemmision.models.TrackPriority;
 import com.google.gson.Gson;
 import com.google.gson.reflect.TypeToken;
 
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.function.Consumer;
 import java.lang.reflect.Type;
 
 public class DatabaseService {
     private static final String DB_URL = "jdbc:sqlite:torrentstreamer.db";
+    private static final int READER_CONNECTIONS = 2;
+    private static final Type TRACK_LIST_TYPE = new TypeToken<ArrayList<Track>>() {
+    }.getType();
+
+    // Columns of the tracks table as of schema v3, before per-track priorities
+    private static final String TRACK_COLUMNS_V3 = "playlist_id, position, title, file_path, duration_seconds, size_bytes, artist, album, cover_image_path";
+    private static final String TRACK_COLUMNS = TRACK_COLUMNS_V3 + ", priority";
+
+    // Trigram matching needs at least three characters per term
+    private static final int MIN_FUZZY_TERM_LENGTH = 3;
+
     private final Gson gson;
+    private final SqliteConnectionPool pool;
 
     public DatabaseService() {
+        this(DB_URL);
+    }
+
+    public DatabaseService(String dbUrl) {
         this.gson = new Gson();
+        this.pool = new SqliteConnectionPool(dbUrl, READER_CONNECTIONS);
         initializeDatabase();
     }
 
     private void initializeDatabase() {
+        try {
+            new SchemaMigrator(pool)
+                    .register(1, "playlists table", this::createPlaylistsTable)
+                    .register(2, "normalized tracks table", this::createTracksTable)
+                    .register(3, "track search index", this::createTrackSearchIndex)
+                    .register(4, "track download priority", this::addTrackPriority)
+                    .migrate();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private Void createPlaylistsTable(SqliteConnectionPool.Session session) throws SQLException {
         String createTableSQL = "CREATE TABLE IF NOT EXISTS playlists ("
                 + "id TEXT PRIMARY KEY,"
                 + "name TEXT NOT NULL,"
@@ -33,58 +72,222 @@ public class DatabaseService {
                 + "is_permanently_seeded INTEGER"
                 + ");";
 
-        try (Connection conn = DriverManager.getConnection(DB_URL);
-                Statement stmt = conn.createStatement()) {
+        try (Statement stmt = session.connection().createStatement()) {
             stmt.execute(createTableSQL);
-            try {
-                // Migration for existing databases
-                stmt.execute("ALTER TABLE playlists ADD COLUMN cover_image_path TEXT");
-            } catch (SQLException ignored) {
+
+            // Databases created before versioning may lack the later columns
+            Set<String> columns = new HashSet<>();
+            try (ResultSet rs = stmt.executeQuery("PRAGMA table_info(playlists)")) {
+                while (rs.next()) {
+                    columns.add(rs.getString("name"));
+                }
             }
-            try {
-                stmt.execute("ALTER TABLE playlists ADD COLUMN author TEXT");
-            } catch (SQLException ignored) {
+            String[][] added = {
+                    { "cover_image_path", "TEXT" },
+                    { "author", "TEXT" },
+                    { "last_played", "INTEGER" },
+                    { "is_permanently_seeded", "INTEGER" }
+            };
+            for (String[] column : added) {
+                if (!columns.contains(column[0])) {
+                    stmt.execute("ALTER TABLE playlists ADD COLUMN " + column[0] + " " + column[1]);
+                }
             }
-            try {
-                stmt.execute("ALTER TABLE playlists ADD COLUMN last_played INTEGER");
-            } catch (SQLException ignored) {
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_playlists_name ON playlists(name)");
+        }
+        return null;
+    }
+
+    private Void createTracksTable(SqliteConnectionPool.Session session) throws SQLException {
+        try (Statement stmt = session.connection().createStatement()) {
+            stmt.execute("CREATE TABLE IF NOT EXISTS tracks ("
+                    + "playlist_id TEXT NOT NULL,"
+                    + "position INTEGER NOT NULL,"
+                    + "title TEXT,"
+                    + "file_path TEXT,"
+                    + "duration_seconds INTEGER,"
+                    + "size_bytes INTEGER,"
+                    + "artist TEXT,"
+                    + "album TEXT,"
+                    + "cover_image_path TEXT,"
+                    + "PRIMARY KEY (playlist_id, position)"
+                    + ");");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_tracks_artist ON tracks(artist)");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_tracks_album ON tracks(album)");
+        }
+
+        // Move the legacy JSON blobs over; runs inside the migration transaction
+        Map<String, List<Track>> legacy = new HashMap<>();
+        try (Statement stmt = session.connection().createStatement();
+                ResultSet rs = stmt.executeQuery("SELECT id, tracks_json FROM playlists WHERE tracks_json IS NOT NULL")) {
+            while (rs.next()) {
+                List<Track> tracks = gson.fromJson(rs.getString("tracks_json"), TRACK_LIST_TYPE);
+                if (tracks != null) {
+                    legacy.put(rs.getString("id"), tracks);
+                }
             }
-            try {
-                stmt.execute("ALTER TABLE playlists ADD COLUMN is_permanently_seeded INTEGER");
-            } catch (SQLException ignored) {
+        }
+        for (Map.Entry<String, List<Track>> entry : legacy.entrySet()) {
+            // The priority column only arrives with v4
+            insertTracks(session, entry.getKey(), entry.getValue(), false);
+        }
+        try (Statement stmt = session.connection().createStatement()) {
+            stmt.execute("UPDATE playlists SET tracks_json = NULL");
+        }
+        return null;
+    }
+
+    /**
+     * Adds two FTS5 indexes over the title, artist and album of every track:
+     * a word index with prefix tables for type-ahead search and a trigram
+     * index for substring and typo-tolerant matching. Both are external
+     * content tables over {@code tracks}, kept in sync by triggers, so every
+     * write path updates them inside its own transaction.
+     */
+    private Void createTrackSearchIndex(SqliteConnectionPool.Session session) throws SQLException {
+        try (Statement stmt = session.connection().createStatement()) {
+            // FTS content tables address rows by rowid, which VACUUM may renumber
+            // unless it is an explicit INTEGER PRIMARY KEY; rebuild tracks with one
+            stmt.execute("CREATE TABLE tracks_new ("
+                    + "id INTEGER PRIMARY KEY,"
+                    + "playlist_id TEXT NOT NULL,"
+                    + "position INTEGER NOT NULL,"
+                    + "title TEXT,"
+                    + "file_path TEXT,"
+                    + "duration_seconds INTEGER,"
+                    + "size_bytes INTEGER,"
+                    + "artist TEXT,"
+                    + "album TEXT,"
+                    + "cover_image_path TEXT,"
+                    + "UNIQUE (playlist_id, position)"
+                    + ");");
+            stmt.execute("INSERT INTO tracks_new(" + TRACK_COLUMNS_V3 + ") SELECT " + TRACK_COLUMNS_V3
+                    + " FROM tracks ORDER BY playlist_id, position");
+            stmt.execute("DROP TABLE tracks");
+            stmt.execute("ALTER TABLE tracks_new RENAME TO tracks");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_tracks_artist ON tracks(artist)");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_tracks_album ON tracks(album)");
+
+            stmt.execute("CREATE VIRTUAL TABLE tracks_fts USING fts5("
+                    + "title, artist, album, content='tracks', content_rowid='id',"
+                    + " tokenize='unicode61 remove_diacritics 2', prefix='2 3')");
+            stmt.execute("CREATE VIRTUAL TABLE tracks_trigram USING fts5("
+                    + "title, artist, album, content='tracks', content_rowid='id', tokenize='trigram')");
+
+            for (String index : new String[] { "tracks_fts", "tracks_trigram" }) {
+                stmt.execute("CREATE TRIGGER " + index + "_ai AFTER INSERT ON tracks BEGIN"
+                        + " INSERT INTO " + index + "(rowid, title, artist, album)"
+                        + " VALUES (new.id, new.title, new.artist, new.album); END");
+                stmt.execute("CREATE TRIGGER " + index + "_ad AFTER DELETE ON tracks BEGIN"
+                        + " INSERT INTO " + index + "(" + index + ", rowid, title, artist, album)"
+                        + " VALUES ('delete', old.id, old.title, old.artist, old.album); END");
+                stmt.execute("CREATE TRIGGER " + index + "_au AFTER UPDATE OF title, artist, album ON tracks BEGIN"
+                        + " INSERT INTO " + index + "(" + index + ", rowid, title, artist, album)"
+                        + " VALUES ('delete', old.id, old.title, old.artist, old.album);"
+                        + " INSERT INTO " + index + "(rowid, title, artist, album)"
+                        + " VALUES (new.id, new.title, new.artist, new.album); END");
+                stmt.execute("INSERT INTO " + index + "(" + index + ") VALUES ('rebuild')");
             }
+        }
+        return null;
+    }
+
+    private Void addTrackPriority(SqliteConnectionPool.Session session) throws SQLException {
+        try (Statement stmt = session.connection().createStatement()) {
+            stmt.execute("ALTER TABLE tracks ADD COLUMN priority TEXT NOT NULL DEFAULT 'NORMAL'");
+        }
+        return null;
+    }
+
+    public void savePlaylist(Playlist playlist) {
+        try {
+            writePlaylist(playlist);
         } catch (SQLException e) {
             e.printStackTrace();
         }
     }
 
-    public void savePlaylist(Playlist playlist) {
-        String sql = "INSERT OR REPLACE INTO playlists(id, name, description, tracks_json, torrent_hash, torrent_file_path, cover_image_path, author, last_played, is_permanently_seeded) VALUES(?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    /**
+     * Like {@link #savePlaylist(Playlist)}, but throws instead of logging, so
+     * a batch running it in {@link #writeInTransaction(SqlRunnable)} rolls
+     * back as a whole.
+     */
+    public void writePlaylist(Playlist playlist) throws SQLException {
+        String sql = "INSERT INTO playlists(id, name, description, torrent_hash, torrent_file_path, cover_image_path, author, last_played, is_permanently_seeded) VALUES(?, ?, ?, ?, ?, ?, ?, ?, ?)"
+                + " ON CONFLICT(id) DO UPDATE SET name = excluded.name, description = excluded.description,"
+                + " torrent_hash = excluded.torrent_hash, torrent_file_path = excluded.torrent_file_path,"
+                + " cover_image_path = excluded.cover_image_path, author = excluded.author,"
+                + " last_played = excluded.last_played, is_permanently_seeded = excluded.is_permanently_seeded";
 
-        try (Connection conn = DriverManager.getConnection(DB_URL);
-                PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+        pool.transaction(session -> {
+            PreparedStatement pstmt = session.prepare(sql);
             pstmt.setString(1, playlist.getId());
             pstmt.setString(2, playlist.getName());
             pstmt.setString(3, playlist.getDescription());
-            pstmt.setString(4, gson.toJson(playlist.getTracks()));
-            pstmt.setString(5, playlist.getTorrentHash());
-            pstmt.setString(6, playlist.getTorrentFilePath());
-            pstmt.setString(7, playlist.getCoverImagePath());
-            pstmt.setString(8, playlist.getAuthor());
-            pstmt.setLong(9, playlist.getLastPlayed());
-            pstmt.setInt(10, playlist.isPermanentlySeeded() ? 1 : 0);
+            pstmt.setString(4, playlist.getTorrentHash());
+            pstmt.setString(5, playlist.getTorrentFilePath());
+            pstmt.setString(6, playlist.getCoverImagePath());
+            pstmt.setString(7, playlist.getAuthor());
+            pstmt.setLong(8, playlist.getLastPlayed());
+            pstmt.setInt(9, playlist.isPermanentlySeeded() ? 1 : 0);
             pstmt.executeUpdate();
+
+            PreparedStatement deleteTracks = session.prepare("DELETE FROM tracks WHERE playlist_id = ?");
+            deleteTracks.setString(1, playlist.getId());
+            deleteTracks.executeUpdate();
+            insertTracks(session, playlist.getId(), playlist.getTracks());
+            return null;
+        });
+    }
+
+    /**
+     * Rewrites the single {@code tracks} row at {@code position} without
+     * touching the rest of the playlist.
+     */
+    public void updateTrack(String playlistId, int position, Track track) {
+        try {
+            writeTrack(playlistId, position, track);
         } catch (SQLException e) {
             e.printStackTrace();
         }
     }
 
+    /**
+     * Like {@link #updateTrack(String, int, Track)}, but throws instead of
+     * logging.
+     */
+    public void writeTrack(String playlistId, int position, Track track) throws SQLException {
+        String sql = "UPDATE tracks SET title = ?, file_path = ?, duration_seconds = ?, size_bytes = ?, artist = ?, album = ?, cover_image_path = ?,"
+                + " priority = ? WHERE playlist_id = ? AND position = ?";
+
+        pool.write(session -> {
+            PreparedStatement pstmt = session.prepare(sql);
+            pstmt.setString(1, track.getTitle());
+            pstmt.setString(2, track.getFilePath());
+            pstmt.setLong(3, track.getDurationSeconds());
+            pstmt.setLong(4, track.getSizeBytes());
+            pstmt.setString(5, track.getArtist());
+            pstmt.setString(6, track.getAlbum());
+            pstmt.setString(7, track.getCoverImagePath());
+            pstmt.setString(8, track.getPriority().name());
+            pstmt.setString(9, playlistId);
+            pstmt.setInt(10, position);
+            return pstmt.executeUpdate();
+        });
+    }
+
     public void deletePlaylist(String playlistId) {
-        String sql = "DELETE FROM playlists WHERE id = ?";
-        try (Connection conn = DriverManager.getConnection(DB_URL);
-                PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setString(1, playlistId);
-            pstmt.executeUpdate();
+        try {
+            pool.transaction(session -> {
+                PreparedStatement deleteTracks = session.prepare("DELETE FROM tracks WHERE playlist_id = ?");
+                deleteTracks.setString(1, playlistId);
+                deleteTracks.executeUpdate();
+
+                PreparedStatement pstmt = session.prepare("DELETE FROM playlists WHERE id = ?");
+                pstmt.setString(1, playlistId);
+                return pstmt.executeUpdate();
+            });
         } catch (SQLException e) {
             e.printStackTrace();
         }
@@ -92,35 +295,424 @@ public class DatabaseService {
 
     public List<Playlist> getAllPlaylists() {
         List<Playlist> playlists = new ArrayList<>();
-        String sql = "SELECT * FROM playlists";
 
-        try (Connection conn = DriverManager.getConnection(DB_URL);
-                Statement stmt = conn.createStatement();
-                ResultSet rs = stmt.executeQuery(sql)) {
+        try {
+            pool.read(session -> {
+                Map<String, Playlist> byId = new HashMap<>();
+                try (ResultSet rs = session.prepare("SELECT * FROM playlists").executeQuery()) {
+                    while (rs.next()) {
+                        Playlist playlist = mapPlaylist(rs);
+                        playlists.add(playlist);
+                        byId.put(playlist.getId(), playlist);
+                    }
+                }
+                try (ResultSet rs = session.prepare("SELECT " + TRACK_COLUMNS + " FROM tracks ORDER BY playlist_id, position")
+                        .executeQuery()) {
+                    while (rs.next()) {
+                        Playlist owner = byId.get(rs.getString("playlist_id"));
+                        if (owner != null) {
+                            owner.getTracks().add(mapTrack(rs));
+                        }
+                    }
+                }
+                return null;
+            });
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return playlists;
+    }
+
+    /**
+     * Returns id, name, last-played time, permanent-seeding flag and track
+     * count of every playlist in insertion order, without loading any tracks.
+     */
+    public List<PlaylistSummary> getPlaylistSummaries() {
+        List<PlaylistSummary> summaries = new ArrayList<>();
+        String sql = "SELECT p.id, p.name, p.last_played, p.is_permanently_seeded,"
+                + " (SELECT COUNT(*) FROM tracks t WHERE t.playlist_id = p.id) AS track_count"
+                + " FROM playlists p ORDER BY p.rowid";
+        try {
+            pool.read(session -> {
+                try (ResultSet rs = session.prepare(sql).executeQuery()) {
+                    while (rs.next()) {
+                        summaries.add(new PlaylistSummary(rs.getString("id"), rs.getString("name"),
+                                rs.getLong("last_played"), rs.getInt("is_permanently_seeded") == 1,
+                                rs.getInt("track_count")));
+                    }
+                }
+                return null;
+            });
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return summaries;
+    }
 
-            while (rs.next()) {
-                Playlist playlist = new Playlist();
-                playlist.setId(rs.getString("id"));
-                playlist.setName(rs.getString("name"));
-                playlist.setDescription(rs.getString("description"));
-
-                String tracksJson = rs.getString("tracks_json");
-                Type listType = new TypeToken<ArrayList<Track>>() {
-                }.getType();
-                List<Track> tracks = gson.fromJson(tracksJson, listType);
-                playlist.setTracks(tracks);
-
-                playlist.setTorrentHash(rs.getString("torrent_hash"));
-                playlist.setTorrentFilePath(rs.getString("torrent_file_path"));
-                playlist.setCoverImagePath(rs.getString("cover_image_path"));
-                playlist.setAuthor(rs.getString("author"));
-                playlist.setLastPlayed(rs.getLong("last_played"));
-                playlist.setPermanentlySeeded(rs.getInt("is_permanently_seeded") == 1);
-                playlists.add(playlist);
-            }
+    /**
+     * Returns up to {@code limit} fully loaded playlists starting at
+     * {@code offset}, in insertion order.
+     */
+    public List<Playlist> getPlaylistsPage(int offset, int limit) {
+        List<Playlist> playlists = new ArrayList<>();
+        try {
+            pool.read(session -> {
+                PreparedStatement pstmt = session.prepare("SELECT * FROM playlists ORDER BY rowid LIMIT ? OFFSET ?");
+                pstmt.setInt(1, limit);
+                pstmt.setInt(2, offset);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        playlists.add(mapPlaylist(rs));
+                    }
+                }
+                for (Playlist playlist : playlists) {
+                    loadTracks(session, playlist);
+                }
+                return null;
+            });
         } catch (SQLException e) {
             e.printStackTrace();
         }
         return playlists;
     }
+
+    /**
+     * Hands every playlist, with its tracks, to {@code consumer} one at a time
+     * in insertion order, so only one playlist is decoded at once. The
+     * consumer runs while a reader connection is held and should not block.
+     */
+    public void streamPlaylists(Consumer<Playlist> consumer) {
+        try {
+            pool.read(session -> {
+                try (ResultSet rs = session.prepare("SELECT * FROM playlists ORDER BY rowid").executeQuery()) {
+                    while (rs.next()) {
+                        Playlist playlist = mapPlaylist(rs);
+                        loadTracks(session, playlist);
+                        consumer.accept(playlist);
+                    }
+                }
+                return null;
+            });
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Returns every track in the library with a single query, ordered by
+     * playlist name and position.
+     */
+    public List<Track> getAllTracks() {
+        List<Track> tracks = new ArrayList<>();
+        String sql = "SELECT t.* FROM tracks t JOIN playlists p ON p.id = t.playlist_id ORDER BY p.name, t.playlist_id, t.position";
+        try {
+            pool.read(session -> {
+                try (ResultSet rs = session.prepare(sql).executeQuery()) {
+                    while (rs.next()) {
+                        tracks.add(mapTrack(rs));
+                    }
+                }
+                return null;
+            });
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return tracks;
+    }
+
+    /**
+     * Returns one page of the whole library in the order of
+     * {@link #getAllTracks()}, without loading the rest of it.
+     */
+    public List<Track> getTracksPage(int offset, int limit) {
+        String sql = "SELECT t.* FROM tracks t JOIN playlists p ON p.id = t.playlist_id"
+                + " ORDER BY p.name, t.playlist_id, t.position LIMIT ? OFFSET ?";
+        return queryTracks(sql, limit, offset);
+    }
+
+    /**
+     * Type-ahead search over track titles, artists and albums. Every word of
+     * {@code query} must match the start of a word in one of those columns;
+     * results are ranked by relevance. A blank query pages the whole library.
+     */
+    public List<Track> searchTracks(String query, int offset, int limit) {
+        List<String> terms = searchTerms(query);
+        if (terms.isEmpty()) {
+            return getTracksPage(offset, limit);
+        }
+        StringBuilder match = new StringBuilder();
+        for (String term : terms) {
+            if (match.length() > 0) {
+                match.append(' ');
+            }
+            match.append(quote(term)).append('*');
+        }
+        String sql = "SELECT t.* FROM tracks_fts f JOIN tracks t ON t.id = f.rowid"
+                + " WHERE tracks_fts MATCH ? ORDER BY f.rank, t.id LIMIT ? OFFSET ?";
+        return queryTracks(sql, match.toString(), limit, offset);
+    }
+
+    /**
+     * Typo-tolerant search: ranks tracks by how many three-character
+     * fragments of {@code query} occur in their title, artist or album, so
+     * misspellings and partial words still find close matches. Terms shorter
+     * than three characters are ignored.
+     */
+    public List<Track> fuzzySearchTracks(String query, int offset, int limit) {
+        Set<String> trigrams = new LinkedHashSet<>();
+        for (String term : searchTerms(query)) {
+            if (term.length() < MIN_FUZZY_TERM_LENGTH) {
+                continue;
+            }
+            for (int i = 0; i + MIN_FUZZY_TERM_LENGTH <= term.length(); i++) {
+                trigrams.add(term.substring(i, i + MIN_FUZZY_TERM_LENGTH));
+            }
+        }
+        if (trigrams.isEmpty()) {
+            return new ArrayList<>();
+        }
+        StringJoiner match = new StringJoiner(" OR ");
+        for (String trigram : trigrams) {
+            match.add(quote(trigram));
+        }
+        String sql = "SELECT t.* FROM tracks_trigram f JOIN tracks t ON t.id = f.rowid"
+                + " WHERE tracks_trigram MATCH ? ORDER BY f.rank, t.id LIMIT ? OFFSET ?";
+        return queryTracks(sql, match.toString(), limit, offset);
+    }
+
+    private List<Track> queryTracks(String sql, Object... params) {
+        List<Track> tracks = new ArrayList<>();
+        try {
+            pool.read(session -> {
+                PreparedStatement pstmt = session.prepare(sql);
+                for (int i = 0; i < params.length; i++) {
+                    pstmt.setObject(i + 1, params[i]);
+                }
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        tracks.add(mapTrack(rs));
+                    }
+                }
+                return null;
+            });
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return tracks;
+    }
+
+    private static List<String> searchTerms(String query) {
+        List<String> terms = new ArrayList<>();
+        if (query == null) {
+            return terms;
+        }
+        for (String term : query.trim().toLowerCase().split("\\s+")) {
+            if (!term.isEmpty()) {
+                terms.add(term);
+            }
+        }
+        return terms;
+    }
+
+    // FTS5 string literal, so user input is never parsed as query syntax
+    private static String quote(String term) {
+        return "\"" + term.replace("\"", "\"\"") + "\"";
+    }
+
+    /**
+     * Looks a playlist up by primary key.
+     *
+     * @return the playlist, or {@code null} if there is none with this id
+     */
+    public Playlist findById(String playlistId) {
+        return findOne("SELECT * FROM playlists WHERE id = ?", playlistId);
+    }
+
+    /**
+     * Looks a playlist up by display name using {@code idx_playlists_name}.
+     *
+     * @return the first matching playlist, or {@code null} if none matches
+     */
+    public Playlist findByName(String name) {
+        return findOne("SELECT * FROM playlists WHERE name = ? LIMIT 1", name);
+    }
+
+    /**
+     * Updates only the {@code last_played} column of one playlist.
+     */
+    public void updateLastPlayed(String playlistId, long timestamp) {
+        try {
+            writeLastPlayed(playlistId, timestamp);
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Like {@link #updateLastPlayed(String, long)}, but throws instead of
+     * logging.
+     */
+    public void writeLastPlayed(String playlistId, long timestamp) throws SQLException {
+        String sql = "UPDATE playlists SET last_played = ? WHERE id = ?";
+
+        pool.write(session -> {
+            PreparedStatement pstmt = session.prepare(sql);
+            pstmt.setLong(1, timestamp);
+            pstmt.setString(2, playlistId);
+            return pstmt.executeUpdate();
+        });
+    }
+
+    /**
+     * Updates only the {@code is_permanently_seeded} column of one playlist.
+     */
+    public void updatePermanentlySeeded(String playlistId, boolean permanentlySeeded) {
+        try {
+            writePermanentlySeeded(playlistId, permanentlySeeded);
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Like {@link #updatePermanentlySeeded(String, boolean)}, but throws
+     * instead of logging.
+     */
+    public void writePermanentlySeeded(String playlistId, boolean permanentlySeeded) throws SQLException {
+        String sql = "UPDATE playlists SET is_permanently_seeded = ? WHERE id = ?";
+
+        pool.write(session -> {
+            PreparedStatement pstmt = session.prepare(sql);
+            pstmt.setInt(1, permanentlySeeded ? 1 : 0);
+            pstmt.setString(2, playlistId);
+            return pstmt.executeUpdate();
+        });
+    }
+
+    private Playlist findOne(String sql, String key) {
+        try {
+            return pool.read(session -> {
+                PreparedStatement pstmt = session.prepare(sql);
+                pstmt.setString(1, key);
+                Playlist playlist;
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    if (!rs.next()) {
+                        return null;
+                    }
+                    playlist = mapPlaylist(rs);
+                }
+                loadTracks(session, playlist);
+                return playlist;
+            });
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Runs {@code work} in a single write transaction. Calls made by
+     * {@code work} to the other write methods of this service join it, so a
+     * batch of updates costs one commit.
+     */
+    public void runInTransaction(Runnable work) {
+        try {
+            writeInTransaction(work::run);
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Like {@link #runInTransaction(Runnable)}, but a failure of any write in
+     * {@code work} rolls the whole transaction back and is thrown. Use the
+     * throwing {@code write...} methods inside it: the logging ones swallow
+     * their failure and let the rest commit.
+     */
+    public void writeInTransaction(SqlRunnable work) throws SQLException {
+        pool.transaction(session -> {
+            work.run();
+            return null;
+        });
+    }
+
+    @FunctionalInterface
+    public interface SqlRunnable {
+        void run() throws SQLException;
+    }
+
+    /**
+     * Closes the pooled connections. Further calls fail and are logged.
+     */
+    public void close() {
+        pool.close();
+    }
+
+    private void insertTracks(SqliteConnectionPool.Session session, String playlistId, List<Track> tracks)
+            throws SQLException {
+        insertTracks(session, playlistId, tracks, true);
+    }
+
+    private void insertTracks(SqliteConnectionPool.Session session, String playlistId, List<Track> tracks,
+            boolean withPriority) throws SQLException {
+        if (tracks == null || tracks.isEmpty()) {
+            return;
+        }
+        PreparedStatement pstmt = session.prepare(withPriority
+                ? "INSERT INTO tracks(" + TRACK_COLUMNS + ") VALUES(?, ?, ?, ?, ?, ?, ?, ?, ?, ?)"
+                : "INSERT INTO tracks(" + TRACK_COLUMNS_V3 + ") VALUES(?, ?, ?, ?, ?, ?, ?, ?, ?)");
+        for (int i = 0; i < tracks.size(); i++) {
+            Track track = tracks.get(i);
+            pstmt.setString(1, playlistId);
+            pstmt.setInt(2, i);
+            pstmt.setString(3, track.getTitle());
+            pstmt.setString(4, track.getFilePath());
+            pstmt.setLong(5, track.getDurationSeconds());
+            pstmt.setLong(6, track.getSizeBytes());
+            pstmt.setString(7, track.getArtist());
+            pstmt.setString(8, track.getAlbum());
+            pstmt.setString(9, track.getCoverImagePath());
+            if (withPriority) {
+                pstmt.setString(10, track.getPriority().name());
+            }
+            pstmt.addBatch();
+        }
+        pstmt.executeBatch();
+    }
+
+    private void loadTracks(SqliteConnectionPool.Session session, Playlist playlist) throws SQLException {
+        PreparedStatement pstmt = session.prepare(
+                "SELECT " + TRACK_COLUMNS + " FROM tracks WHERE playlist_id = ? ORDER BY position");
+        pstmt.setString(1, playlist.getId());
+        try (ResultSet rs = pstmt.executeQuery()) {
+            while (rs.next()) {
+                playlist.getTracks().add(mapTrack(rs));
+            }
+        }
+    }
+
+    private Playlist mapPlaylist(ResultSet rs) throws SQLException {
+        Playlist playlist = new Playlist();
+        playlist.setId(rs.getString("id"));
+        playlist.setName(rs.getString("name"));
+        playlist.setDescription(rs.getString("description"));
+        playlist.setTracks(new ArrayList<>());
+        playlist.setTorrentHash(rs.getString("torrent_hash"));
+        playlist.setTorrentFilePath(rs.getString("torrent_file_path"));
+        playlist.setCoverImagePath(rs.getString("cover_image_path"));
+        playlist.setAuthor(rs.getString("author"));
+        playlist.setLastPlayed(rs.getLong("last_played"));
+        playlist.setPermanentlySeeded(rs.getInt("is_permanently_seeded") == 1);
+        return playlist;
+    }
+
+    private Track mapTrack(ResultSet rs) throws SQLException {
+        Track track = new Track(rs.getString("title"), rs.getString("file_path"),
+                rs.getLong("duration_seconds"), rs.getLong("size_bytes"));
+        track.setArtist(rs.getString("artist"));
+        track.setAlbum(rs.getString("album"));
+        track.setCoverImagePath(rs.getString("cover_image_path"));
+        track.setPriority(TrackPriority.fromName(rs.getString("priority")));
+        return track;
+    }
 }
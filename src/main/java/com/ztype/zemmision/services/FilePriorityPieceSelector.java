@@ -0,0 +1,100 @@
+package com.ztype.zemmision.services;
+
+import bt.torrent.PieceStatistics;
+import bt.torrent.selector.PieceSelector;
+import com.ztype.zemmision.models.TrackPriority;
+
+import java.util.BitSet;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * Applies per-file download priorities on top of another selector: pieces of
+ * {@link TrackPriority#HIGH} files are offered first, pieces that belong only
+ * to {@link TrackPriority#SKIP} files are never offered, and the rest keep the
+ * delegate's order.
+ * <p>
+ * A piece shared by a skipped file and a wanted neighbour is still fetched,
+ * since the neighbour cannot be verified without it.
+ */
+public class FilePriorityPieceSelector implements PieceSelector {
+
+    private final PieceSelector delegate;
+    private volatile Priorities priorities = new Priorities(new BitSet(), new BitSet());
+
+    public FilePriorityPieceSelector(PieceSelector delegate) {
+        this.delegate = delegate;
+    }
+
+    /**
+     * Sets the pieces to fetch first and the pieces to leave out. Both sets
+     * are copied.
+     */
+    public void setPriorities(BitSet high, BitSet skipped) {
+        BitSet skippedOnly = (BitSet) skipped.clone();
+        skippedOnly.andNot(high);
+        this.priorities = new Priorities((BitSet) high.clone(), skippedOnly);
+    }
+
+    /**
+     * Maps per-file priorities, keyed by file name, onto the pieces of
+     * {@code pieceMap}. Files without an entry are {@link TrackPriority#NORMAL}.
+     */
+    public void setPriorities(PieceMap pieceMap, Map<String, TrackPriority> filePriorities) {
+        BitSet high = new BitSet(pieceMap.getPieceCount());
+        BitSet wanted = new BitSet(pieceMap.getPieceCount());
+        for (int file = 0; file < pieceMap.getFileCount(); file++) {
+            if (pieceMap.getPieceCount(file) <= 0) {
+                continue;
+            }
+            String name = pieceMap.getFileName(file);
+            TrackPriority priority = filePriorities.getOrDefault(name, TrackPriority.NORMAL);
+            int from = pieceMap.getFirstPiece(file);
+            int to = pieceMap.getLastPiece(file) + 1;
+            if (priority == TrackPriority.HIGH) {
+                high.set(from, to);
+            }
+            // Pad files of hybrid torrents only matter as part of their track's last piece
+            if (priority != TrackPriority.SKIP && !name.startsWith(".pad/")) {
+                wanted.set(from, to);
+            }
+        }
+        BitSet skipped = new BitSet(pieceMap.getPieceCount());
+        skipped.set(0, pieceMap.getPieceCount());
+        skipped.andNot(wanted);
+        setPriorities(high, skipped);
+    }
+
+    public boolean isSkipped(int piece) {
+        return priorities.skipped.get(piece);
+    }
+
+    public boolean isHigh(int piece) {
+        return priorities.high.get(piece);
+    }
+
+    @Override
+    public IntStream getNextPieces(BitSet relevantChunks, PieceStatistics pieceStatistics) {
+        Priorities current = priorities;
+        if (current.high.isEmpty() && current.skipped.isEmpty()) {
+            return delegate.getNextPieces(relevantChunks, pieceStatistics);
+        }
+        IntStream high = current.high.isEmpty()
+                ? IntStream.empty()
+                : delegate.getNextPieces(relevantChunks, pieceStatistics).filter(current.high::get);
+        IntStream rest = delegate.getNextPieces(relevantChunks, pieceStatistics)
+                .filter(piece -> !current.high.get(piece) && !current.skipped.get(piece));
+        return IntStream.concat(high, rest);
+    }
+
+    // Never modified once published
+    private static final class Priorities {
+        final BitSet high;
+        final BitSet skipped;
+
+        Priorities(BitSet high, BitSet skipped) {
+            this.high = high;
+            this.skipped = skipped;
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package com.ztype.zemmision.services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Detects downloads that have lost all their peers and asks for peer
+ * discovery to be retried, driven by the session-state callbacks of each
+ * client rather than by polling.
+ * <p>
+ * A download counts as stalled while it is incomplete and has no connected
+ * peers. After {@code stallThresholdMillis} the recovery action runs; if the
+ * stall persists it is retried with exponential backoff (plus jitter, so many
+ * playlists stalled at once do not retry in lockstep), and recoveries across
+ * all playlists are spaced at least {@code globalSpacingMillis} apart.
+ * Complete torrents with no peers are idle seeds, not stalls.
+ */
+public class PeerHealthMonitor {
+
+    private static final Logger logger = LoggerFactory.getLogger(PeerHealthMonitor.class);
+
+    /**
+     * Retries peer discovery for one playlist without restarting its client.
+     */
+    public interface Recovery {
+        void recover(String playlistId);
+    }
+
+    private final Recovery recovery;
+    private final long stallThresholdMillis;
+    private final long initialBackoffMillis;
+    private final long maxBackoffMillis;
+    private final long globalSpacingMillis;
+    private final double jitter;
+    private final Map<String, Health> health = new ConcurrentHashMap<>();
+    private long nextGlobalRecovery = 0;
+
+    public PeerHealthMonitor(Recovery recovery) {
+        this(recovery, 15_000, 30_000, 10 * 60_000, 2_000, 0.2);
+    }
+
+    /**
+     * @param jitter fraction by which each backoff is randomly stretched or
+     *               shortened; 0 for fixed delays
+     */
+    public PeerHealthMonitor(Recovery recovery, long stallThresholdMillis, long initialBackoffMillis,
+            long maxBackoffMillis, long globalSpacingMillis, double jitter) {
+        this.recovery = recovery;
+        this.stallThresholdMillis = stallThresholdMillis;
+        this.initialBackoffMillis = initialBackoffMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+        this.globalSpacingMillis = globalSpacingMillis;
+        this.jitter = jitter;
+    }
+
+    /**
+     * Feeds one session-state update for {@code playlistId}.
+     *
+     * @param complete whether every piece is downloaded
+     * @param peers    number of connected peers
+     */
+    public void onState(String playlistId, boolean complete, int peers, long nowMillis) {
+        Health h = health.computeIfAbsent(playlistId, id -> new Health());
+        boolean recover;
+        long stalledSeconds;
+        int attempt;
+        synchronized (h) {
+            if (complete || peers > 0) {
+                if (h.stallStart >= 0) {
+                    long stalled = nowMillis - h.stallStart;
+                    h.totalStalledMillis += stalled;
+                    h.longestStallMillis = Math.max(h.longestStallMillis, stalled);
+                    h.stallStart = -1;
+                    logger.info("Playlist ID: {} has peers again after {} seconds stalled.", playlistId, stalled / 1000);
+                }
+                return;
+            }
+            if (h.stallStart < 0) {
+                h.stallStart = nowMillis;
+                h.stallCount++;
+                h.backoffMillis = initialBackoffMillis;
+                h.nextRecovery = nowMillis + stallThresholdMillis;
+                return;
+            }
+            recover = nowMillis >= h.nextRecovery && claimGlobalSlot(nowMillis);
+            if (recover) {
+                h.recoveries++;
+                h.nextRecovery = nowMillis + jittered(h.backoffMillis);
+                h.backoffMillis = Math.min(h.backoffMillis * 2, maxBackoffMillis);
+            }
+            stalledSeconds = (nowMillis - h.stallStart) / 1000;
+            attempt = h.recoveries;
+        }
+        if (recover) {
+            logger.warn("Playlist ID: {} download is frozen (0 seeders) for {} seconds. Re-querying peers (attempt {}).",
+                    playlistId, stalledSeconds, attempt);
+            recovery.recover(playlistId);
+        }
+    }
+
+    private synchronized boolean claimGlobalSlot(long nowMillis) {
+        if (nowMillis < nextGlobalRecovery) {
+            return false;
+        }
+        nextGlobalRecovery = nowMillis + globalSpacingMillis;
+        return true;
+    }
+
+    private long jittered(long delay) {
+        if (jitter <= 0) {
+            return delay;
+        }
+        return (long) (delay * (1.0 + ThreadLocalRandom.current().nextDouble(-jitter, jitter)));
+    }
+
+    public void remove(String playlistId) {
+        health.remove(playlistId);
+    }
+
+    /**
+     * @return stall statistics for {@code playlistId}, all zero if it never
+     *         reported a state
+     */
+    public StallStats getStats(String playlistId, long nowMillis) {
+        Health h = health.get(playlistId);
+        if (h == null) {
+            return new StallStats(0, 0, 0, 0, 0);
+        }
+        synchronized (h) {
+            long current = h.stallStart >= 0 ? nowMillis - h.stallStart : 0;
+            return new StallStats(h.stallCount, h.recoveries, h.totalStalledMillis + current,
+                    Math.max(h.longestStallMillis, current), current);
+        }
+    }
+
+    private static class Health {
+        long stallStart = -1;
+        long nextRecovery;
+        long backoffMillis;
+        int stallCount;
+        int recoveries;
+        long totalStalledMillis;
+        long longestStallMillis;
+    }
+
+    public static class StallStats {
+        private final int stallCount;
+        private final int recoveryAttempts;
+        private final long totalStalledMillis;
+        private final long longestStallMillis;
+        private final long currentStallMillis;
+
+        public StallStats(int stallCount, int recoveryAttempts, long totalStalledMillis, long longestStallMillis,
+                long currentStallMillis) {
+            this.stallCount = stallCount;
+            this.recoveryAttempts = recoveryAttempts;
+            this.totalStalledMillis = totalStalledMillis;
+            this.longestStallMillis = longestStallMillis;
+            this.currentStallMillis = currentStallMillis;
+        }
+
+        public int getStallCount() {
+            return stallCount;
+        }
+
+        public int getRecoveryAttempts() {
+            return recoveryAttempts;
+        }
+
+        public long getTotalStalledMillis() {
+            return totalStalledMillis;
+        }
+
+        public long getLongestStallMillis() {
+            return longestStallMillis;
+        }
+
+        public long getCurrentStallMillis() {
+            return currentStallMillis;
+        }
+
+        public boolean isStalled() {
+            return currentStallMillis > 0;
+        }
+    }
+}
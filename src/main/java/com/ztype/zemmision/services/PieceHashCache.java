@@ -0,0 +1,159 @@
+package com.ztype.zemmision.services;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers the hashes of the pieces lying entirely inside a file, so a
+ * torrent rebuilt after a playlist edit only rehashes files that changed.
+ * <p>
+ * An entry for a v1 torrent holds the concatenated 20-byte SHA-1 hashes of
+ * those pieces. An entry for a hybrid v1+v2 torrent, stored with alignment
+ * {@code -1} since its files always start a piece, holds the SHA-1 hashes of
+ * all its pieces but the last, whose v1 hash depends on the padding after
+ * it, followed by the 32-byte v2 piece-layer hashes of all its pieces.
+ * <p>
+ * Entries are keyed by the file's identity (its inode where the file system
+ * has one, so hard links of the same track share an entry, otherwise its
+ * path), size and modification time, plus the piece length and the file's
+ * offset modulo the piece length: pieces spanning two files are never cached,
+ * and when an earlier file changes size the later files' pieces shift and
+ * their entries simply stop matching.
+ */
+public class PieceHashCache {
+
+    private static final int FORMAT_VERSION = 2;
+
+    private final Map<Key, byte[]> entries = new ConcurrentHashMap<>();
+
+    /**
+     * @param alignment the file's offset modulo the piece length, or
+     *                  {@code -1} for a file of a hybrid torrent
+     * @return the hashes recorded for this file layout, laid out as described
+     *         in the class comment for v1 or hybrid entries, or {@code null}
+     */
+    public byte[] get(Path file, long size, long lastModified, long pieceLength, long alignment) {
+        return entries.get(new Key(identity(file), file.toAbsolutePath().toString(), size, lastModified,
+                pieceLength, alignment));
+    }
+
+    public void put(Path file, long size, long lastModified, long pieceLength, long alignment, byte[] hashes) {
+        Key key = new Key(identity(file), file.toAbsolutePath().toString(), size, lastModified, pieceLength, alignment);
+        // Replace the key too, so it records the latest path
+        entries.remove(key);
+        entries.put(key, hashes);
+    }
+
+    private static String identity(Path file) {
+        try {
+            Object fileKey = Files.readAttributes(file, java.nio.file.attribute.BasicFileAttributes.class).fileKey();
+            if (fileKey != null) {
+                return fileKey.toString();
+            }
+        } catch (IOException ignored) {
+            // Fall back to the path
+        }
+        return file.toAbsolutePath().toString();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Reads entries saved by {@link #save(Path)}. A missing or unreadable file
+     * leaves the cache empty, since every entry can be recomputed.
+     */
+    public static PieceHashCache load(Path path) {
+        PieceHashCache cache = new PieceHashCache();
+        if (!Files.exists(path)) {
+            return cache;
+        }
+        try (DataInputStream in = new DataInputStream(new java.io.BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != FORMAT_VERSION) {
+                return cache;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                Key key = new Key(in.readUTF(), in.readUTF(), in.readLong(), in.readLong(), in.readLong(),
+                        in.readLong());
+                byte[] hashes = new byte[in.readInt()];
+                in.readFully(hashes);
+                cache.entries.put(key, hashes);
+            }
+        } catch (IOException e) {
+            // Truncated or corrupt: start over
+            cache.entries.clear();
+        }
+        return cache;
+    }
+
+    /**
+     * Writes the entries whose files still exist unchanged, at the path they
+     * were last seen under, to {@code path}.
+     */
+    public void save(Path path) throws IOException {
+        entries.keySet().removeIf(key -> !key.matchesDisk());
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new java.io.BufferedOutputStream(Files.newOutputStream(temp)))) {
+            Map<Key, byte[]> snapshot = Map.copyOf(entries);
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(snapshot.size());
+            for (Map.Entry<Key, byte[]> entry : snapshot.entrySet()) {
+                Key key = entry.getKey();
+                out.writeUTF(key.identity);
+                out.writeUTF(key.path);
+                out.writeLong(key.size);
+                out.writeLong(key.lastModified);
+                out.writeLong(key.pieceLength);
+                out.writeLong(key.alignment);
+                out.writeInt(entry.getValue().length);
+                out.write(entry.getValue());
+            }
+        }
+        Files.move(temp, path, java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static final class Key {
+        final String identity;
+        final String path; // where the file was seen; not part of equality
+        final long size;
+        final long lastModified;
+        final long pieceLength;
+        final long alignment;
+
+        Key(String identity, String path, long size, long lastModified, long pieceLength, long alignment) {
+            this.identity = identity;
+            this.path = path;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.pieceLength = pieceLength;
+            this.alignment = alignment;
+        }
+
+        boolean matchesDisk() {
+            java.io.File file = new java.io.File(path);
+            return file.isFile() && file.length() == size && file.lastModified() == lastModified;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key other)) {
+                return false;
+            }
+            return size == other.size && lastModified == other.lastModified && pieceLength == other.pieceLength
+                    && alignment == other.alignment && identity.equals(other.identity);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(identity, size, lastModified, pieceLength, alignment);
+        }
+    }
+}
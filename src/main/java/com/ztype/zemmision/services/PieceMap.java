@@ -0,0 +1,306 @@
+package com.ztype.zemmision.services;
+
+import bt.metainfo.Torrent;
+import bt.metainfo.TorrentFile;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntPredicate;
+
+/**
+ * Precomputed file-to-piece layout of one torrent plus a running count of
+ * completed pieces per file.
+ * <p>
+ * Built once when the torrent metadata is known. {@link #sync(int)} folds in
+ * newly completed pieces from the client's bitfield, touching only pieces not
+ * seen complete before, so per-file progress reads are O(1) and safe from any
+ * thread. {@link #verifiedLength(int, long, long)} and
+ * {@link #awaitRange(int, long, long, long)} tell readers which bytes of a file
+ * are safe to hand out and block until more are. The completion state is
+ * guarded by a {@link ReentrantLock} rather than a monitor, so a virtual
+ * thread waiting for a piece releases its carrier.
+ */
+public class PieceMap {
+
+    private final long pieceLength;
+    private final int pieceCount;
+    private final String[] fileNames;
+    private final long[] fileOffsets;
+    private final long[] fileSizes;
+    private final int[] firstPiece;
+    private final int[] lastPiece;
+    private final Map<String, Integer> fileIndex = new HashMap<>();
+    private final AtomicIntegerArray completeCounts;
+    private final BitSet knownComplete;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition pieceVerified = lock.newCondition();
+    private volatile int piecesComplete = 0;
+    private volatile IntPredicate bitfield;
+
+    public PieceMap(long pieceLength, List<String> fileNames, List<Long> fileSizes) {
+        if (pieceLength <= 0) {
+            throw new IllegalArgumentException("Piece length must be positive: " + pieceLength);
+        }
+        int files = fileNames.size();
+        this.pieceLength = pieceLength;
+        this.fileNames = fileNames.toArray(new String[0]);
+        this.fileOffsets = new long[files];
+        this.fileSizes = new long[files];
+        this.firstPiece = new int[files];
+        this.lastPiece = new int[files];
+
+        long offset = 0;
+        for (int i = 0; i < files; i++) {
+            long size = fileSizes.get(i);
+            fileOffsets[i] = offset;
+            this.fileSizes[i] = size;
+            firstPiece[i] = (int) (offset / pieceLength);
+            // Empty files own no pieces: lastPiece < firstPiece
+            lastPiece[i] = size > 0 ? (int) ((offset + size - 1) / pieceLength) : firstPiece[i] - 1;
+            // First file wins on duplicate names, matching the old linear lookup
+            fileIndex.putIfAbsent(fileNames.get(i), i);
+            offset += size;
+        }
+        this.pieceCount = (int) ((offset + pieceLength - 1) / pieceLength);
+        this.completeCounts = new AtomicIntegerArray(files);
+        this.knownComplete = new BitSet(pieceCount);
+    }
+
+    /**
+     * Builds the map from torrent metadata; files are keyed by the last
+     * element of their path, pad files of hybrid torrents by their full path
+     * so they never shadow a track.
+     */
+    public static PieceMap of(Torrent torrent) {
+        List<String> names = new ArrayList<>();
+        List<Long> sizes = new ArrayList<>();
+        for (TorrentFile file : torrent.getFiles()) {
+            List<String> pathElements = file.getPathElements();
+            if (pathElements.size() > 1 && ".pad".equals(pathElements.get(0))) {
+                names.add(String.join("/", pathElements));
+            } else {
+                names.add(pathElements.isEmpty() ? "" : pathElements.get(pathElements.size() - 1));
+            }
+            sizes.add(file.getSize());
+        }
+        return new PieceMap(torrent.getChunkSize(), names, sizes);
+    }
+
+    public int getPieceCount() {
+        return pieceCount;
+    }
+
+    public long getPieceLength() {
+        return pieceLength;
+    }
+
+    public int getPiecesComplete() {
+        return piecesComplete;
+    }
+
+    /**
+     * Sets the source of truth for {@link #sync(int)}, typically the client's
+     * local bitfield.
+     */
+    public void attach(IntPredicate bitfield) {
+        this.bitfield = bitfield;
+    }
+
+    public boolean isAttached() {
+        return bitfield != null;
+    }
+
+    /**
+     * Folds newly completed pieces from the attached bitfield into the
+     * per-file counts. {@code reportedComplete} is the client's own count of
+     * completed pieces; when it matches what was already seen this is a no-op.
+     */
+    public void sync(int reportedComplete) {
+        IntPredicate source = bitfield;
+        if (source == null || reportedComplete == piecesComplete) {
+            return;
+        }
+        lock.lock();
+        try {
+            for (int piece = knownComplete.nextClearBit(0); piece < pieceCount; piece = knownComplete.nextClearBit(piece + 1)) {
+                if (source.test(piece)) {
+                    markComplete(piece);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Records {@code piece} as verified. Calling it twice for the same piece
+     * has no further effect.
+     */
+    public void markComplete(int piece) {
+        lock.lock();
+        try {
+            if (piece < 0 || piece >= pieceCount || knownComplete.get(piece)) {
+                return;
+            }
+            knownComplete.set(piece);
+            for (int file = firstFileOf(piece); file < fileOffsets.length && firstPiece[file] <= piece; file++) {
+                if (lastPiece[file] >= piece) {
+                    completeCounts.incrementAndGet(file);
+                }
+            }
+            piecesComplete++;
+            pieceVerified.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * How many bytes of {@code file} from {@code offset} on, up to
+     * {@code maxLength}, lie in verified pieces. Pieces the attached bitfield
+     * already has are folded in on the way, so this is never behind the
+     * client.
+     *
+     * @return 0 if the piece holding {@code offset} is not verified yet, or
+     *         {@code offset} is past the end of the file
+     */
+    public long verifiedLength(int file, long offset, long maxLength) {
+        long end = Math.min(fileSizes[file], offset + maxLength);
+        if (offset >= end) {
+            return 0;
+        }
+        long start = fileOffsets[file] + offset;
+        int last = (int) ((fileOffsets[file] + end - 1) / pieceLength);
+        IntPredicate source = bitfield;
+        lock.lock();
+        try {
+            int missing = knownComplete.nextClearBit((int) (start / pieceLength));
+            while (missing <= last && source != null && source.test(missing)) {
+                markComplete(missing);
+                missing = knownComplete.nextClearBit(missing);
+            }
+            if (missing > last) {
+                return end - offset;
+            }
+            return Math.max(0, missing * pieceLength - start);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Blocks until the pieces holding bytes {@code [offset, offset + length)}
+     * of {@code file} are all verified. The range is clipped to the file.
+     *
+     * @return {@code true} once they are, {@code false} if
+     *         {@code timeoutMillis} passed first
+     * @throws InterruptedException if the waiting thread is interrupted
+     */
+    public boolean awaitRange(int file, long offset, long length, long timeoutMillis)
+            throws InterruptedException {
+        long end = Math.min(fileSizes[file], offset + Math.max(length, 1));
+        if (offset >= end) {
+            return true;
+        }
+        int first = (int) ((fileOffsets[file] + offset) / pieceLength);
+        int last = (int) ((fileOffsets[file] + end - 1) / pieceLength);
+        long remaining = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        lock.lock();
+        try {
+            while (knownComplete.nextClearBit(first) <= last) {
+                if (remaining <= 0) {
+                    return false;
+                }
+                remaining = pieceVerified.awaitNanos(remaining);
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean isComplete(int piece) {
+        lock.lock();
+        try {
+            return knownComplete.get(piece);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return index of the file named {@code fileName}, or -1 if the torrent
+     *         has no such file
+     */
+    public int indexOf(String fileName) {
+        Integer index = fileIndex.get(fileName);
+        return index != null ? index : -1;
+    }
+
+    /**
+     * Fraction of the pieces overlapping {@code fileName} that are complete,
+     * or 0 if the torrent has no such file.
+     */
+    public double getProgress(String fileName) {
+        int file = indexOf(fileName);
+        if (file < 0) {
+            return 0.0;
+        }
+        int total = getPieceCount(file);
+        if (total == 0) {
+            return 1.0;
+        }
+        return (double) completeCounts.get(file) / total;
+    }
+
+    public int getFileCount() {
+        return fileNames.length;
+    }
+
+    public String getFileName(int file) {
+        return fileNames[file];
+    }
+
+    public int getFirstPiece(int file) {
+        return firstPiece[file];
+    }
+
+    public int getLastPiece(int file) {
+        return lastPiece[file];
+    }
+
+    public int getPieceCount(int file) {
+        return lastPiece[file] - firstPiece[file] + 1;
+    }
+
+    public long getFileOffset(int file) {
+        return fileOffsets[file];
+    }
+
+    public long getFileSize(int file) {
+        return fileSizes[file];
+    }
+
+    // Index of the first file whose piece range can contain piece (files are in torrent order)
+    private int firstFileOf(int piece) {
+        int low = 0;
+        int high = fileOffsets.length - 1;
+        long pieceStart = piece * pieceLength;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (fileOffsets[mid] + fileSizes[mid] <= pieceStart) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
@@ -0,0 +1,247 @@
+package com.ztype.zemmision.services;
+
+import com.ztype.zemmision.models.Playlist;
+import com.ztype.zemmision.models.PlaylistSummary;
+import com.ztype.zemmision.models.Track;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Write-through cache of every playlist, keyed by id.
+ * <p>
+ * The library is loaded from {@link DatabaseService} on first access; after
+ * that reads are served from memory. The cached {@link Playlist} instances
+ * are the same objects handed to callers, so in-place edits made by the UI
+ * are visible immediately and only need to be persisted.
+ * <p>
+ * Mutations are called from the JavaFX thread, so they only update memory
+ * and hand the database write to a {@link PlaylistWriteBehind}; deletes are
+ * the one exception. Call {@link #flush()} when the writes must be on disk.
+ */
+public class PlaylistRepository implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(PlaylistRepository.class);
+
+    /**
+     * Notified after a playlist has been persisted or removed. Callbacks run on
+     * the thread that made the change.
+     */
+    public interface PlaylistListener {
+        void playlistChanged(Playlist playlist);
+
+        void playlistRemoved(String playlistId);
+    }
+
+    private final DatabaseService databaseService;
+    private final PlaylistWriteBehind writeBehind;
+    private final Map<String, Entry> playlists = new ConcurrentHashMap<>();
+    private final List<PlaylistListener> listeners = new CopyOnWriteArrayList<>();
+    private final AtomicLong insertionOrder = new AtomicLong();
+    private volatile boolean loaded = false;
+
+    public PlaylistRepository(DatabaseService databaseService) {
+        this(databaseService, new PlaylistWriteBehind(databaseService));
+    }
+
+    public PlaylistRepository(DatabaseService databaseService, PlaylistWriteBehind writeBehind) {
+        this.databaseService = databaseService;
+        this.writeBehind = writeBehind;
+    }
+
+    public void addListener(PlaylistListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(PlaylistListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Returns all playlists in the order they were first seen.
+     */
+    public List<Playlist> findAll() {
+        ensureLoaded();
+        return findCached();
+    }
+
+    private List<Playlist> findCached() {
+        List<Entry> entries = new ArrayList<>(playlists.values());
+        entries.sort(Comparator.comparingLong(e -> e.order));
+        List<Playlist> result = new ArrayList<>(entries.size());
+        for (Entry entry : entries) {
+            result.add(entry.playlist);
+        }
+        return result;
+    }
+
+    /**
+     * Returns a summary of every playlist. Served from the cache when it is
+     * warm; otherwise read from the database without loading any tracks, with
+     * the playlists already cached taking precedence over their rows, which
+     * may still be waiting in the write-behind queue.
+     */
+    public List<PlaylistSummary> findSummaries() {
+        if (!loaded) {
+            List<PlaylistSummary> stored = databaseService.getPlaylistSummaries();
+            if (playlists.isEmpty()) {
+                return stored;
+            }
+            Map<String, PlaylistSummary> merged = new java.util.LinkedHashMap<>();
+            for (PlaylistSummary summary : stored) {
+                merged.put(summary.getId(), summary);
+            }
+            for (Playlist playlist : findCached()) {
+                merged.put(playlist.getId(), PlaylistSummary.of(playlist));
+            }
+            return new ArrayList<>(merged.values());
+        }
+        List<Playlist> all = findAll();
+        List<PlaylistSummary> summaries = new ArrayList<>(all.size());
+        for (Playlist playlist : all) {
+            summaries.add(PlaylistSummary.of(playlist));
+        }
+        return summaries;
+    }
+
+    public Optional<Playlist> findById(String playlistId) {
+        ensureLoaded();
+        Entry entry = playlists.get(playlistId);
+        if (entry != null) {
+            return Optional.of(entry.playlist);
+        }
+        // Not cached (e.g. written behind our back); fall back to the database once
+        Playlist playlist = databaseService.findById(playlistId);
+        if (playlist != null) {
+            cache(playlist);
+        }
+        return Optional.ofNullable(playlist);
+    }
+
+    public Optional<Playlist> findByName(String name) {
+        ensureLoaded();
+        return findAll().stream()
+                .filter(p -> p.getName().equals(name))
+                .findFirst();
+    }
+
+    /**
+     * Queues a full save of {@code playlist}, coalesced with other edits to
+     * it. The full row supersedes any queued track edits, which are keyed by
+     * position and would land on the wrong rows after a reorder.
+     */
+    public void save(Playlist playlist) {
+        ensureLoaded();
+        cache(playlist);
+        writeBehind.savePlaylist(playlist);
+        fireChanged(playlist);
+    }
+
+    public void updateTrack(Playlist playlist, int position, Track track) {
+        cache(playlist);
+        writeBehind.updateTrack(playlist.getId(), position, track);
+        fireChanged(playlist);
+    }
+
+    public void updateLastPlayed(String playlistId, long timestamp) {
+        findById(playlistId).ifPresent(p -> {
+            p.setLastPlayed(timestamp);
+            writeBehind.updateLastPlayed(playlistId, timestamp);
+            fireChanged(p);
+        });
+    }
+
+    public void updatePermanentlySeeded(String playlistId, boolean permanentlySeeded) {
+        findById(playlistId).ifPresent(p -> {
+            p.setPermanentlySeeded(permanentlySeeded);
+            writeBehind.updatePermanentlySeeded(playlistId, permanentlySeeded);
+            fireChanged(p);
+        });
+    }
+
+    public void delete(String playlistId) {
+        // Serialized with pending writes so a late flush cannot bring it back
+        writeBehind.delete(playlistId, () -> databaseService.deletePlaylist(playlistId));
+        playlists.remove(playlistId);
+        for (PlaylistListener listener : listeners) {
+            try {
+                listener.playlistRemoved(playlistId);
+            } catch (Exception e) {
+                logger.error("Playlist listener failed for removal of {}", playlistId, e);
+            }
+        }
+    }
+
+    /**
+     * Blocks until every deferred write has reached the database.
+     */
+    public void flush() {
+        writeBehind.flush();
+    }
+
+    public PlaylistWriteBehind.Metrics getWriteBehindMetrics() {
+        return writeBehind.getMetrics();
+    }
+
+    /**
+     * Flushes and stops the write-behind queue. Must run before the
+     * {@link DatabaseService} is closed.
+     */
+    @Override
+    public void close() {
+        writeBehind.close();
+    }
+
+    private void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        synchronized (this) {
+            if (loaded) {
+                return;
+            }
+            int[] count = { 0 };
+            databaseService.streamPlaylists(playlist -> {
+                // Keep instances cached before warm-up; callers may hold them
+                playlists.computeIfAbsent(playlist.getId(),
+                        id -> new Entry(playlist, insertionOrder.getAndIncrement()));
+                count[0]++;
+            });
+            loaded = true;
+            logger.info("Playlist cache warmed with {} playlists.", count[0]);
+        }
+    }
+
+    private void cache(Playlist playlist) {
+        playlists.compute(playlist.getId(), (id, existing) ->
+                new Entry(playlist, existing != null ? existing.order : insertionOrder.getAndIncrement()));
+    }
+
+    private void fireChanged(Playlist playlist) {
+        for (PlaylistListener listener : listeners) {
+            try {
+                listener.playlistChanged(playlist);
+            } catch (Exception e) {
+                logger.error("Playlist listener failed for {}", playlist.getId(), e);
+            }
+        }
+    }
+
+    private static class Entry {
+        private final Playlist playlist;
+        private final long order;
+
+        Entry(Playlist playlist, long order) {
+            this.playlist = playlist;
+            this.order = order;
+        }
+    }
+}
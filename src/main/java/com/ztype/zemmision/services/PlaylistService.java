@@ -1,7 +1,9 @@
 package com.ztype.zemmision.services;
 
 import com.ztype.zemmision.models.Playlist;
+import com.ztype.zemmision.models.PlaylistSummary;
 import com.ztype.zemmision.models.Track;
+import com.ztype.zemmision.models.TrackPriority;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -14,9 +16,21 @@ import java.util.List;
 public class PlaylistService {
 
     private static final Logger logger = LoggerFactory.getLogger(PlaylistService.class);
+    // Seconds of the next track fetched ahead of a track change
+    private static final int PREFETCH_SECONDS = 15;
+    // Assumed bitrate (bytes/s, 320 kbps) when a track's duration is unknown
+    private static final long FALLBACK_BYTES_PER_SECOND = 40_000;
 
     private final DatabaseService databaseService;
     private final TorrentService torrentService;
+    private final PlaylistRepository playlistRepository;
+    // One query at a time; the UI drops results it no longer wants
+    private final java.util.concurrent.ExecutorService searchExecutor = java.util.concurrent.Executors
+            .newSingleThreadExecutor(r -> {
+                Thread t = new Thread(r, "track-search");
+                t.setDaemon(true);
+                return t;
+            });
 
     public PlaylistService() {
         this(new DatabaseService(), new TorrentService());
@@ -25,9 +39,44 @@ public class PlaylistService {
     public PlaylistService(DatabaseService databaseService, TorrentService torrentService) {
         this.databaseService = databaseService;
         this.torrentService = torrentService;
+        this.playlistRepository = new PlaylistRepository(databaseService);
+    }
+
+    public void addPlaylistListener(PlaylistRepository.PlaylistListener listener) {
+        playlistRepository.addListener(listener);
+    }
+
+    public void removePlaylistListener(PlaylistRepository.PlaylistListener listener) {
+        playlistRepository.removeListener(listener);
     }
 
     public Playlist createPlaylist(String name, String description, List<File> files) {
+        return createPlaylist(name, description, files, null, null);
+    }
+
+    /**
+     * Creates the playlist off the calling thread. Hashing progress goes to
+     * {@code progressListener} (may be {@code null}, called from worker
+     * threads); cancelling the returned future stops the torrent build, and
+     * pieces hashed so far are kept for the next attempt.
+     */
+    public java.util.concurrent.CompletableFuture<Playlist> createPlaylistAsync(String name, String description,
+            List<File> files, TorrentBuilder.ProgressListener progressListener) {
+        java.util.concurrent.CompletableFuture<Playlist> future = new java.util.concurrent.CompletableFuture<>();
+        Thread worker = new Thread(() -> {
+            try {
+                future.complete(createPlaylist(name, description, files, progressListener, future::isCancelled));
+            } catch (Exception e) {
+                future.completeExceptionally(e);
+            }
+        }, "playlist-create");
+        worker.setDaemon(true);
+        worker.start();
+        return future;
+    }
+
+    private Playlist createPlaylist(String name, String description, List<File> files,
+            TorrentBuilder.ProgressListener progressListener, java.util.function.BooleanSupplier cancellation) {
         logger.info("Creating playlist '{}' with {} files.", name, files.size());
         Playlist playlist = new Playlist(name, description);
         List<Track> tracks = new ArrayList<>();
@@ -86,10 +135,10 @@ public class PlaylistService {
             java.nio.file.Files.write(metadataFile.toPath(), json.getBytes());
 
             // 4. Create the .torrent file
-            Path torrentPath = torrentService.createPlaylistTorrent(playlist);
+            Path torrentPath = torrentService.createPlaylistTorrent(playlist, progressListener, cancellation);
             playlist.setTorrentFilePath(torrentPath.toString());
 
-            databaseService.savePlaylist(playlist);
+            playlistRepository.save(playlist);
             torrentService.startSeeding(playlist);
             logger.info("Playlist '{}' created and seeding started.", name);
 
@@ -131,7 +180,7 @@ public class PlaylistService {
         playlist.setTorrentFilePath(torrentFile.getAbsolutePath());
 
         // Save initial state
-        databaseService.savePlaylist(playlist);
+        playlistRepository.save(playlist);
 
         // Try to refresh metadata immediately if files already exist
         refreshMetadata(playlist.getId());
@@ -145,10 +194,7 @@ public class PlaylistService {
     // Method to refresh metadata from downloaded files
     public void refreshMetadata(String playlistId) {
         try {
-            Playlist playlist = databaseService.getAllPlaylists().stream()
-                    .filter(p -> p.getId().equals(playlistId))
-                    .findFirst()
-                    .orElse(null);
+            Playlist playlist = playlistRepository.findById(playlistId).orElse(null);
 
             if (playlist == null)
                 return;
@@ -242,7 +288,7 @@ public class PlaylistService {
                 }
 
                 if (changed) {
-                    databaseService.savePlaylist(playlist);
+                    playlistRepository.save(playlist);
                     logger.info("Metadata updated from sync for playlist: {}", playlist.getName());
                 }
             }
@@ -252,7 +298,19 @@ public class PlaylistService {
     }
 
     public List<Playlist> getAllPlaylists() {
-        return databaseService.getAllPlaylists();
+        return playlistRepository.findAll();
+    }
+
+    public List<PlaylistSummary> getPlaylistSummaries() {
+        return playlistRepository.findSummaries();
+    }
+
+    public java.util.Optional<Playlist> findPlaylistById(String playlistId) {
+        return playlistRepository.findById(playlistId);
+    }
+
+    public java.util.Optional<Playlist> findPlaylistByName(String name) {
+        return playlistRepository.findByName(name);
     }
 
     public com.ztype.zemmision.services.TorrentService.ClientStatus getTransferStatus(String playlistId) {
@@ -270,6 +328,7 @@ public class PlaylistService {
 
         logger.info("Playing playlist {}: Mode={}", playlist.getName(),
                 (!isImported || isComplete) ? "Local/Seeding" : "Streaming/Downloading");
+        torrentService.setPlayingPlaylist(playlist.getId());
 
         if (!isImported || isComplete) {
             // Owner or fully downloaded: Seed normally
@@ -283,10 +342,7 @@ public class PlaylistService {
     public void restartSeeding(String playlistId) {
         logger.info("Restarting seeding for playlist ID: {}", playlistId);
         // Find playlist details
-        Playlist playlist = databaseService.getAllPlaylists().stream()
-                .filter(p -> p.getId().equals(playlistId))
-                .findFirst()
-                .orElse(null);
+        Playlist playlist = playlistRepository.findById(playlistId).orElse(null);
 
         if (playlist != null) {
             torrentService.startSeeding(playlist);
@@ -296,10 +352,10 @@ public class PlaylistService {
     }
 
     public void exportTorrent(String playlistId, File destination) throws IOException {
-        Playlist playlist = databaseService.getAllPlaylists().stream()
-                .filter(p -> p.getId().equals(playlistId))
-                .findFirst()
-                .orElseThrow(() -> new IOException("Playlist not found: " + playlistId));
+        Playlist playlist = playlistRepository.findById(playlistId).orElse(null);
+        if (playlist == null) {
+            throw new IOException("Playlist not found: " + playlistId);
+        }
 
         File sourceFile = new File(playlist.getTorrentFilePath());
         if (!sourceFile.exists()) {
@@ -314,9 +370,9 @@ public class PlaylistService {
     public void enforceSeedingPolicy() {
         logger.info("Enforcing seeding policy...");
         long threeDaysAgo = System.currentTimeMillis() - (3L * 24 * 60 * 60 * 1000);
-        List<Playlist> allPlaylists = databaseService.getAllPlaylists();
+        List<PlaylistSummary> summaries = playlistRepository.findSummaries();
 
-        for (Playlist playlist : allPlaylists) {
+        for (PlaylistSummary playlist : summaries) {
             boolean shouldSeed = playlist.isPermanentlySeeded() || playlist.getLastPlayed() > threeDaysAgo;
             com.ztype.zemmision.services.TorrentService.ClientStatus status = torrentService
                     .getClientStatus(playlist.getId());
@@ -326,7 +382,8 @@ public class PlaylistService {
                 logger.info("Starting seeding for playlist '{}' (Last Played: {}, Permanent: {})",
                         playlist.getName(), new java.util.Date(playlist.getLastPlayed()),
                         playlist.isPermanentlySeeded());
-                torrentService.startSeeding(playlist);
+                // Only playlists that actually start seeding need their tracks
+                playlistRepository.findById(playlist.getId()).ifPresent(torrentService::startSeeding);
             } else if (!shouldSeed && isSeeding) {
                 logger.info("Stopping seeding for playlist '{}' (Last Played: {}, Permanent: {})",
                         playlist.getName(), new java.util.Date(playlist.getLastPlayed()),
@@ -337,49 +394,102 @@ public class PlaylistService {
     }
 
     public void updateLastPlayed(String playlistId) {
-        Playlist playlist = databaseService.getAllPlaylists().stream()
-                .filter(p -> p.getId().equals(playlistId))
-                .findFirst()
-                .orElse(null);
-
-        if (playlist != null) {
-            playlist.setLastPlayed(System.currentTimeMillis());
-            databaseService.savePlaylist(playlist);
-            // Ensure it is seeding since it is now active
-            if (torrentService.getClientStatus(playlistId).getState().equals("Stopped")) {
+        playlistRepository.updateLastPlayed(playlistId, System.currentTimeMillis());
+        // Ensure it is seeding since it is now active
+        if (torrentService.getClientStatus(playlistId).getState().equals("Stopped")) {
+            Playlist playlist = playlistRepository.findById(playlistId).orElse(null);
+            if (playlist != null) {
                 torrentService.startSeeding(playlist);
             }
         }
     }
 
     public void setPermanentSeeding(String playlistId, boolean isPermanent) {
-        Playlist playlist = databaseService.getAllPlaylists().stream()
-                .filter(p -> p.getId().equals(playlistId))
-                .findFirst()
-                .orElse(null);
+        playlistRepository.updatePermanentlySeeded(playlistId, isPermanent);
+    }
 
-        if (playlist != null) {
-            playlist.setPermanentlySeeded(isPermanent);
-            databaseService.savePlaylist(playlist);
+    public void updatePlaylist(Playlist playlist) {
+        playlistRepository.save(playlist);
+    }
+
+    /**
+     * Persists an edit to a single track of {@code playlist} without
+     * rewriting the rest of the playlist.
+     */
+    public void updateTrack(Playlist playlist, Track track) {
+        int position = playlist.getTracks().indexOf(track);
+        if (position < 0) {
+            logger.warn("Track '{}' is not part of playlist {}; saving whole playlist", track.getTitle(), playlist.getId());
+            playlistRepository.save(playlist);
+            return;
         }
+        playlistRepository.updateTrack(playlist, position, track);
     }
 
-    public void updatePlaylist(Playlist playlist) {
-        databaseService.savePlaylist(playlist);
+    /**
+     * Stores the download priority of {@code track} and applies it to the
+     * playlist's torrent if it is running.
+     */
+    public void setTrackPriority(Playlist playlist, Track track, TrackPriority priority) {
+        track.setPriority(priority);
+        updateTrack(playlist, track);
+        torrentService.setTrackPriority(playlist.getId(), new File(track.getFilePath()).getName(), priority);
+    }
+
+    /**
+     * Reads every track from the database. Edits still in the write-behind
+     * queue (at most a flush delay old) may not be visible yet.
+     */
+    public List<Track> getAllTracks() {
+        return databaseService.getAllTracks();
+    }
+
+    /**
+     * Returns one page of tracks whose title, artist or album words start with
+     * the words of {@code query}. If nothing matches that way the query is
+     * retried as a fuzzy match, so typos still find something. A blank query
+     * pages through the whole library. Like {@link #getAllTracks()}, this may
+     * miss edits still in the write-behind queue.
+     */
+    public List<Track> searchTracks(String query, int offset, int limit) {
+        List<Track> page = databaseService.searchTracks(query, offset, limit);
+        if (page.isEmpty() && query != null && !query.isBlank()
+                && (offset == 0 || databaseService.searchTracks(query, 0, 1).isEmpty())) {
+            return databaseService.fuzzySearchTracks(query, offset, limit);
+        }
+        return page;
+    }
+
+    /**
+     * Runs {@link #searchTracks(String, int, int)} on a background thread, so
+     * searching as the user types never blocks the JavaFX thread.
+     */
+    public java.util.concurrent.CompletableFuture<List<Track>> searchTracksAsync(String query, int offset,
+            int limit) {
+        return java.util.concurrent.CompletableFuture.supplyAsync(() -> searchTracks(query, offset, limit),
+                searchExecutor);
+    }
+
+    /**
+     * Blocks until all deferred playlist writes are on disk.
+     */
+    public void flushPendingWrites() {
+        playlistRepository.flush();
+    }
+
+    public PlaylistWriteBehind.Metrics getWriteBehindMetrics() {
+        return playlistRepository.getWriteBehindMetrics();
     }
 
     public void deletePlaylist(String playlistId) {
         logger.info("Deleting playlist {}", playlistId);
         
-        Playlist playlist = databaseService.getAllPlaylists().stream()
-                .filter(p -> p.getId().equals(playlistId))
-                .findFirst()
-                .orElse(null);
+        Playlist playlist = playlistRepository.findById(playlistId).orElse(null);
 
         // Stop seeding
         torrentService.stop(playlistId);
         // Remove from DB
-        databaseService.deletePlaylist(playlistId);
+        playlistRepository.delete(playlistId);
 
         if (playlist != null) {
             boolean isImported = playlist.getDescription() != null && playlist.getDescription().startsWith("Imported from");
@@ -410,6 +520,54 @@ public class PlaylistService {
         file.delete();
     }
 
+    /**
+     * Reports the byte position of playback within {@code track} so a
+     * streaming torrent fetches the pieces just ahead of it first.
+     *
+     * @param seek whether {@code byteOffset} is a seek target rather than
+     *             the position the player is reading
+     */
+    public void updatePlayhead(String playlistId, Track track, long byteOffset, boolean seek) {
+        torrentService.updatePlayhead(playlistId, new File(track.getFilePath()).getName(), byteOffset, seek);
+    }
+
+    /**
+     * Queues the first {@link #PREFETCH_SECONDS} seconds of {@code next} for
+     * download once {@code current} is mostly played, so the change between
+     * them does not stall. Pass a {@code null} next track to cancel.
+     */
+    public void prefetchNextTrack(String playlistId, Track current, Track next) {
+        if (next == null) {
+            torrentService.setUpcomingTrack(playlistId, null, null, 0);
+            return;
+        }
+        long bytesPerSecond = next.getDurationSeconds() > 0 && next.getSizeBytes() > 0
+                ? next.getSizeBytes() / next.getDurationSeconds()
+                : FALLBACK_BYTES_PER_SECOND;
+        torrentService.setUpcomingTrack(playlistId, new File(current.getFilePath()).getName(),
+                new File(next.getFilePath()).getName(), bytesPerSecond * PREFETCH_SECONDS);
+    }
+
+    /**
+     * @see TorrentService#getVerifiedLength(String, String, long, long)
+     */
+    public long getVerifiedLength(String playlistId, Track track, long offset, long maxLength) {
+        return torrentService.getVerifiedLength(playlistId, new File(track.getFilePath()).getName(), offset,
+                maxLength);
+    }
+
+    /**
+     * Blocks until bytes {@code [offset, offset + length)} of the track are
+     * verified or {@code timeoutMillis} passes.
+     *
+     * @see TorrentService#awaitTrackRange(String, String, long, long, long)
+     */
+    public boolean awaitTrackRange(String playlistId, Track track, long offset, long length, long timeoutMillis)
+            throws InterruptedException {
+        return torrentService.awaitTrackRange(playlistId, new File(track.getFilePath()).getName(), offset, length,
+                timeoutMillis);
+    }
+
     public double getTrackProgress(String playlistId, Track track) {
         String safeName = new File(track.getFilePath()).getName();
         // First try live torrent client progress
@@ -475,11 +633,23 @@ public class PlaylistService {
 
     public void shutdown() {
         logger.info("Shutting down PlaylistService...");
+        searchExecutor.shutdownNow();
         try {
             torrentService.stopAll();
         } catch (Exception e) {
             logger.error("Error shutting down TorrentService: {}", e.getMessage());
         }
+        try {
+            // Flush deferred writes while the database is still open
+            playlistRepository.close();
+        } catch (Exception e) {
+            logger.error("Error flushing pending playlist writes: {}", e.getMessage());
+        }
+        try {
+            databaseService.close();
+        } catch (Exception e) {
+            logger.error("Error shutting down DatabaseService: {}", e.getMessage());
+        }
     }
 
     private String getExtension(String path) {
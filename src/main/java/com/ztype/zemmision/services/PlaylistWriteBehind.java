@@ -0,0 +1,370 @@
+package com.ztype.zemmision.services;
+
+import com.ztype.zemmision.models.Playlist;
+import com.ztype.zemmision.models.Track;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Write-behind stage for playlist mutations that happen on the JavaFX
+ * Application Thread.
+ * <p>
+ * Callers only record what changed; repeated changes to the same playlist
+ * are coalesced and flushed shortly afterwards in one SQLite transaction on
+ * a background thread. Deletes are run on the same thread so a pending write
+ * can never resurrect a deleted playlist. {@link #close()} flushes everything
+ * that is still queued.
+ * <p>
+ * A flush commits all or nothing. If any write fails the transaction rolls
+ * back, and the batch is put back in the queue, under any edits made since.
+ * It is retried by the next flush.
+ */
+public class PlaylistWriteBehind implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(PlaylistWriteBehind.class);
+    private static final long DEFAULT_FLUSH_DELAY_MS = 250;
+
+    private final DatabaseService databaseService;
+    private final long flushDelayMs;
+    private final Map<String, PendingWrite> pending = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService executor;
+    private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+    private volatile boolean closed = false;
+
+    // Metrics
+    private final AtomicLong enqueued = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong flushes = new AtomicLong();
+    private final AtomicLong failedFlushes = new AtomicLong();
+    private final AtomicLong maxQueueDepth = new AtomicLong();
+    private final AtomicLong lastFlushNanos = new AtomicLong();
+    private final AtomicLong maxFlushNanos = new AtomicLong();
+    private final AtomicLong totalFlushNanos = new AtomicLong();
+    private final AtomicLong maxEnqueueNanos = new AtomicLong();
+
+    public PlaylistWriteBehind(DatabaseService databaseService) {
+        this(databaseService, DEFAULT_FLUSH_DELAY_MS);
+    }
+
+    public PlaylistWriteBehind(DatabaseService databaseService, long flushDelayMs) {
+        this.databaseService = databaseService;
+        this.flushDelayMs = flushDelayMs;
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "playlist-write-behind");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Queues a full save of {@code playlist}; the state written is whatever the
+     * object holds at flush time. It replaces any track edits queued for the
+     * playlist, since the full row already carries them.
+     */
+    public void savePlaylist(Playlist playlist) {
+        enqueue(playlist.getId(), write -> {
+            write.playlist = playlist;
+            write.fullSave = true;
+        });
+    }
+
+    public void updateTrack(String playlistId, int position, Track track) {
+        enqueue(playlistId, write -> write.tracks.put(position, track));
+    }
+
+    public void updateLastPlayed(String playlistId, long timestamp) {
+        enqueue(playlistId, write -> write.lastPlayed = timestamp);
+    }
+
+    public void updatePermanentlySeeded(String playlistId, boolean permanentlySeeded) {
+        enqueue(playlistId, write -> write.permanentlySeeded = permanentlySeeded);
+    }
+
+    /**
+     * Drops any queued writes for {@code playlistId} and runs
+     * {@code deletion} on the writer thread, after any flush in progress.
+     */
+    public void delete(String playlistId, Runnable deletion) {
+        pending.remove(playlistId);
+        if (closed) {
+            deletion.run();
+            return;
+        }
+        try {
+            executor.submit(() -> {
+                // Again on the writer thread: a flush that failed meanwhile puts its writes back
+                pending.remove(playlistId);
+                deletion.run();
+            }).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            logger.error("Failed to delete playlist {}", playlistId, e.getCause());
+        }
+    }
+
+    /**
+     * Blocks until everything queued so far has been written.
+     */
+    public void flush() {
+        if (closed) {
+            flushPending();
+            return;
+        }
+        try {
+            executor.submit(this::flushPending).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            logger.error("Write-behind flush failed", e.getCause());
+        }
+    }
+
+    private void enqueue(String playlistId, java.util.function.Consumer<PendingWrite> change) {
+        long start = System.nanoTime();
+        pending.compute(playlistId, (id, write) -> {
+            PendingWrite w = write != null ? write : new PendingWrite(id);
+            change.accept(w);
+            return w;
+        });
+        enqueued.incrementAndGet();
+        maxQueueDepth.accumulateAndGet(pending.size(), Math::max);
+
+        if (closed) {
+            // Shutting down: write through so nothing is lost
+            flushPending();
+        } else if (flushScheduled.compareAndSet(false, true)) {
+            executor.schedule(() -> {
+                flushScheduled.set(false);
+                flushPending();
+            }, flushDelayMs, TimeUnit.MILLISECONDS);
+        }
+        maxEnqueueNanos.accumulateAndGet(System.nanoTime() - start, Math::max);
+    }
+
+    private synchronized void flushPending() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        List<PendingWrite> batch = new ArrayList<>();
+        for (String id : new ArrayList<>(pending.keySet())) {
+            PendingWrite write = pending.remove(id);
+            if (write != null) {
+                batch.add(write);
+            }
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        long start = System.nanoTime();
+        long[] operations = { 0 };
+        try {
+            databaseService.writeInTransaction(() -> {
+                for (PendingWrite write : batch) {
+                    operations[0] += write.apply(databaseService);
+                }
+            });
+        } catch (SQLException | RuntimeException e) {
+            // Rolled back: queue the batch again, under whatever was edited in the meantime
+            for (PendingWrite write : batch) {
+                pending.merge(write.playlistId, write, (newer, failed) -> failed.mergeNewer(newer));
+            }
+            failedFlushes.incrementAndGet();
+            logger.error("Write-behind flush of {} playlist(s) failed; kept queued for the next flush", batch.size(), e);
+            return;
+        }
+        long elapsed = System.nanoTime() - start;
+
+        written.addAndGet(operations[0]);
+        flushes.incrementAndGet();
+        lastFlushNanos.set(elapsed);
+        totalFlushNanos.addAndGet(elapsed);
+        maxFlushNanos.accumulateAndGet(elapsed, Math::max);
+        logger.debug("Flushed {} playlist(s), {} write(s) in {} ms", batch.size(), operations[0],
+                String.format("%.2f", elapsed / 1_000_000.0));
+    }
+
+    public int getQueueDepth() {
+        return pending.size();
+    }
+
+    public Metrics getMetrics() {
+        long flushCount = flushes.get();
+        return new Metrics(pending.size(), maxQueueDepth.get(), enqueued.get(), written.get(), flushCount,
+                failedFlushes.get(),
+                lastFlushNanos.get() / 1_000_000.0,
+                flushCount > 0 ? totalFlushNanos.get() / 1_000_000.0 / flushCount : 0.0,
+                maxFlushNanos.get() / 1_000_000.0,
+                maxEnqueueNanos.get() / 1_000_000.0);
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        flush();
+        closed = true;
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
+                logger.warn("Write-behind executor did not stop in time.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // Anything enqueued while the executor was draining
+        flushPending();
+        logger.info("Write-behind stopped: {}", getMetrics());
+    }
+
+    private static class PendingWrite {
+        private final String playlistId;
+        private Playlist playlist;
+        private boolean fullSave;
+        private final Map<Integer, Track> tracks = new TreeMap<>();
+        private long lastPlayed = -1;
+        private Boolean permanentlySeeded;
+
+        PendingWrite(String playlistId) {
+            this.playlistId = playlistId;
+        }
+
+        int apply(DatabaseService databaseService) throws SQLException {
+            if (fullSave) {
+                // The full row already carries the track edits, last-played time and flag
+                databaseService.writePlaylist(playlist);
+                return 1;
+            }
+            int count = 0;
+            for (Map.Entry<Integer, Track> entry : tracks.entrySet()) {
+                databaseService.writeTrack(playlistId, entry.getKey(), entry.getValue());
+                count++;
+            }
+            if (lastPlayed >= 0) {
+                databaseService.writeLastPlayed(playlistId, lastPlayed);
+                count++;
+            }
+            if (permanentlySeeded != null) {
+                databaseService.writePermanentlySeeded(playlistId, permanentlySeeded);
+                count++;
+            }
+            return count;
+        }
+
+        // Folds in a write queued after this one was taken for a flush that then failed
+        PendingWrite mergeNewer(PendingWrite newer) {
+            if (newer.fullSave) {
+                return newer;
+            }
+            if (!fullSave) {
+                tracks.putAll(newer.tracks);
+            }
+            if (newer.lastPlayed >= 0) {
+                lastPlayed = newer.lastPlayed;
+            }
+            if (newer.permanentlySeeded != null) {
+                permanentlySeeded = newer.permanentlySeeded;
+            }
+            return this;
+        }
+    }
+
+    /**
+     * Point-in-time view of the write-behind queue. Times are in milliseconds.
+     */
+    public static class Metrics {
+        private final int queueDepth;
+        private final long maxQueueDepth;
+        private final long enqueued;
+        private final long written;
+        private final long flushes;
+        private final long failedFlushes;
+        private final double lastFlushMs;
+        private final double averageFlushMs;
+        private final double maxFlushMs;
+        private final double maxEnqueueMs;
+
+        public Metrics(int queueDepth, long maxQueueDepth, long enqueued, long written, long flushes,
+                long failedFlushes, double lastFlushMs, double averageFlushMs, double maxFlushMs, double maxEnqueueMs) {
+            this.queueDepth = queueDepth;
+            this.maxQueueDepth = maxQueueDepth;
+            this.enqueued = enqueued;
+            this.written = written;
+            this.flushes = flushes;
+            this.failedFlushes = failedFlushes;
+            this.lastFlushMs = lastFlushMs;
+            this.averageFlushMs = averageFlushMs;
+            this.maxFlushMs = maxFlushMs;
+            this.maxEnqueueMs = maxEnqueueMs;
+        }
+
+        public int getQueueDepth() {
+            return queueDepth;
+        }
+
+        public long getMaxQueueDepth() {
+            return maxQueueDepth;
+        }
+
+        public long getEnqueued() {
+            return enqueued;
+        }
+
+        public long getWritten() {
+            return written;
+        }
+
+        public long getFlushes() {
+            return flushes;
+        }
+
+        /**
+         * Flushes that rolled back; their writes stayed queued.
+         */
+        public long getFailedFlushes() {
+            return failedFlushes;
+        }
+
+        public double getLastFlushMs() {
+            return lastFlushMs;
+        }
+
+        public double getAverageFlushMs() {
+            return averageFlushMs;
+        }
+
+        public double getMaxFlushMs() {
+            return maxFlushMs;
+        }
+
+        /**
+         * Longest time a caller spent queueing a change; this is all the
+         * JavaFX thread pays for a deferred write.
+         */
+        public double getMaxEnqueueMs() {
+            return maxEnqueueMs;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("depth=%d (max %d), enqueued=%d, written=%d, flushes=%d (failed %d), flush avg=%.2fms max=%.2fms, enqueue max=%.3fms",
+                    queueDepth, maxQueueDepth, enqueued, written, flushes, failedFlushes, averageFlushMs, maxFlushMs,
+                    maxEnqueueMs);
+        }
+    }
+}
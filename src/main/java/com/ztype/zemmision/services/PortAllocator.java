@@ -0,0 +1,151 @@
+package com.ztype.zemmision.services;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.IntPredicate;
+
+/**
+ * Hands out ports from a fixed, contiguous range.
+ * <p>
+ * Ownership is tracked in a bitmap updated with compare-and-set, so
+ * concurrent starts never receive the same port and never block each other.
+ * Whether the OS will actually let us bind a port is only checked for the
+ * candidate being handed out; a port taken by another process is skipped and
+ * retried on a later pass. Scans start where the previous allocation left
+ * off, so recently released ports are not reused straight away.
+ */
+public class PortAllocator {
+
+    private final int firstPort;
+    private final int portCount;
+    private final AtomicLongArray bitmap;
+    private final AtomicInteger nextHint = new AtomicInteger();
+    private final AtomicInteger allocated = new AtomicInteger();
+    private final IntPredicate availability;
+
+    /**
+     * Checks availability with {@link #isBindable(int)}.
+     */
+    public PortAllocator(int firstPort, int portCount) {
+        this(firstPort, portCount, PortAllocator::isBindable);
+    }
+
+    /**
+     * @param availability whether a port owned by nobody here can really be
+     *                     used, checked once per candidate
+     */
+    public PortAllocator(int firstPort, int portCount, IntPredicate availability) {
+        if (firstPort <= 0 || portCount <= 0 || firstPort + portCount - 1 > 65535) {
+            throw new IllegalArgumentException("Invalid port range: " + firstPort + " + " + portCount);
+        }
+        this.firstPort = firstPort;
+        this.portCount = portCount;
+        this.bitmap = new AtomicLongArray((portCount + 63) / 64);
+        this.availability = availability;
+    }
+
+    /**
+     * @return a port that is now owned by the caller, or -1 if every port in
+     *         the range is taken or unavailable
+     */
+    public int allocate() {
+        int start = Math.floorMod(nextHint.get(), portCount);
+        for (int i = 0; i < portCount; i++) {
+            int index = (start + i) % portCount;
+            if (!tryClaim(index)) {
+                continue;
+            }
+            int port = firstPort + index;
+            if (availability.test(port)) {
+                nextHint.set(index + 1);
+                allocated.incrementAndGet();
+                return port;
+            }
+            // In use outside this process; leave it for a later pass
+            clear(index);
+        }
+        return -1;
+    }
+
+    /**
+     * Returns {@code port} to the range. Ports outside the range, or not
+     * currently allocated, are ignored.
+     */
+    public void release(int port) {
+        int index = port - firstPort;
+        if (index < 0 || index >= portCount) {
+            return;
+        }
+        if (clear(index)) {
+            allocated.decrementAndGet();
+        }
+    }
+
+    public boolean isAllocated(int port) {
+        int index = port - firstPort;
+        return index >= 0 && index < portCount && (bitmap.get(index >>> 6) & (1L << index)) != 0;
+    }
+
+    public boolean contains(int port) {
+        return port >= firstPort && port < firstPort + portCount;
+    }
+
+    public int getAllocatedCount() {
+        return allocated.get();
+    }
+
+    public int getFirstPort() {
+        return firstPort;
+    }
+
+    public int getPortCount() {
+        return portCount;
+    }
+
+    private boolean tryClaim(int index) {
+        int word = index >>> 6;
+        long bit = 1L << index;
+        long current = bitmap.get(word);
+        while ((current & bit) == 0) {
+            if (bitmap.compareAndSet(word, current, current | bit)) {
+                return true;
+            }
+            current = bitmap.get(word);
+        }
+        return false;
+    }
+
+    private boolean clear(int index) {
+        int word = index >>> 6;
+        long bit = 1L << index;
+        long current = bitmap.get(word);
+        while ((current & bit) != 0) {
+            if (bitmap.compareAndSet(word, current, current & ~bit)) {
+                return true;
+            }
+            current = bitmap.get(word);
+        }
+        return false;
+    }
+
+    /**
+     * Whether both a TCP and a UDP socket can be bound to {@code port} right
+     * now.
+     */
+    public static boolean isBindable(int port) {
+        try (java.net.ServerSocket ss = new java.net.ServerSocket()) {
+            ss.setReuseAddress(true);
+            ss.bind(new java.net.InetSocketAddress(port));
+
+            try (java.net.DatagramSocket ds = new java.net.DatagramSocket(null)) {
+                ds.setReuseAddress(true);
+                ds.bind(new java.net.InetSocketAddress(port));
+                return true;
+            }
+        } catch (IOException e) {
+            // Port is in use on TCP or UDP
+            return false;
+        }
+    }
+}
@@ -0,0 +1,247 @@
+package com.ztype.zemmision.services;
+
+/**
+ * Download/upload rate of one torrent session, derived from the cumulative
+ * byte counters reported by the client.
+ * <p>
+ * Each {@link #sample} turns the counter deltas into an instantaneous rate,
+ * folds it into an exponentially weighted moving average and appends it to a
+ * fixed-size ring of recent samples.
+ * <p>
+ * Each peer connection is averaged the same way from its own counters, fed
+ * through {@link #samplePeer}, in a fixed number of slots. A slot is
+ * released once its connection has not been sampled for a while. All state
+ * lives in primitives and preallocated arrays, so sampling allocates nothing.
+ */
+public class RateEstimator {
+
+    private static final double NANOS_PER_SECOND = 1_000_000_000.0;
+    private static final int DEFAULT_PEER_SLOTS = 64;
+    // Peer counters are read on every messaging round; fold at most this often
+    private static final long PEER_SAMPLE_INTERVAL_NANOS = 250_000_000L;
+    // A connection not sampled for this long is gone; its slot is reused
+    private static final long PEER_IDLE_NANOS = 30_000_000_000L;
+
+    private final double timeConstantSeconds;
+    private final double[] downloadHistory;
+    private final double[] uploadHistory;
+    private int head = 0;
+    private int size = 0;
+
+    private boolean started = false;
+    private long lastDownloaded;
+    private long lastUploaded;
+    private long lastSampleNanos;
+    private double downloadRate;
+    private double uploadRate;
+    private double peakDownloadRate;
+    private double peakUploadRate;
+
+    private final Object[] peerKeys;
+    private final boolean[] peerRated;
+    private final long[] peerDownloaded;
+    private final long[] peerUploaded;
+    private final long[] peerSampleNanos;
+    private final long[] peerSeenNanos;
+    private final double[] peerDownloadRates;
+    private final double[] peerUploadRates;
+
+    public RateEstimator() {
+        this(5.0, 60);
+    }
+
+    public RateEstimator(double timeConstantSeconds, int historySize) {
+        this(timeConstantSeconds, historySize, DEFAULT_PEER_SLOTS);
+    }
+
+    /**
+     * @param timeConstantSeconds how quickly the averages follow changes; a
+     *                            step in rate is ~63% reflected after this long
+     * @param historySize         number of samples kept in the history ring
+     * @param peerSlots           number of connections rated at once; further
+     *                            connections are ignored until a slot frees up
+     */
+    public RateEstimator(double timeConstantSeconds, int historySize, int peerSlots) {
+        this.timeConstantSeconds = timeConstantSeconds;
+        this.downloadHistory = new double[historySize];
+        this.uploadHistory = new double[historySize];
+        this.peerKeys = new Object[peerSlots];
+        this.peerRated = new boolean[peerSlots];
+        this.peerDownloaded = new long[peerSlots];
+        this.peerUploaded = new long[peerSlots];
+        this.peerSampleNanos = new long[peerSlots];
+        this.peerSeenNanos = new long[peerSlots];
+        this.peerDownloadRates = new double[peerSlots];
+        this.peerUploadRates = new double[peerSlots];
+    }
+
+    /**
+     * Records the session's cumulative byte counters as of {@code nowNanos}
+     * ({@link System#nanoTime()} time base).
+     */
+    public synchronized void sample(long downloaded, long uploaded, long nowNanos) {
+        if (!started || downloaded < lastDownloaded || uploaded < lastUploaded) {
+            // First sample, or the counters were reset by a client restart
+            started = true;
+            lastDownloaded = downloaded;
+            lastUploaded = uploaded;
+            lastSampleNanos = nowNanos;
+            return;
+        }
+        double seconds = (nowNanos - lastSampleNanos) / NANOS_PER_SECOND;
+        if (seconds <= 0) {
+            return;
+        }
+        double download = (downloaded - lastDownloaded) / seconds;
+        double upload = (uploaded - lastUploaded) / seconds;
+        lastDownloaded = downloaded;
+        lastUploaded = uploaded;
+        lastSampleNanos = nowNanos;
+
+        // Weight by elapsed time so irregular callback intervals average correctly
+        double alpha = 1.0 - Math.exp(-seconds / timeConstantSeconds);
+        if (size == 0) {
+            downloadRate = download;
+            uploadRate = upload;
+        } else {
+            downloadRate += alpha * (download - downloadRate);
+            uploadRate += alpha * (upload - uploadRate);
+        }
+        peakDownloadRate = Math.max(peakDownloadRate, download);
+        peakUploadRate = Math.max(peakUploadRate, upload);
+
+        downloadHistory[head] = download;
+        uploadHistory[head] = upload;
+        head = (head + 1) % downloadHistory.length;
+        size = Math.min(size + 1, downloadHistory.length);
+    }
+
+    /**
+     * Smoothed download rate in bytes per second.
+     */
+    public synchronized double getDownloadRate() {
+        return downloadRate;
+    }
+
+    /**
+     * Smoothed upload rate in bytes per second.
+     */
+    public synchronized double getUploadRate() {
+        return uploadRate;
+    }
+
+    public synchronized double getPeakDownloadRate() {
+        return peakDownloadRate;
+    }
+
+    public synchronized double getPeakUploadRate() {
+        return peakUploadRate;
+    }
+
+    /**
+     * Records the cumulative byte counters of one peer connection, identified
+     * by {@code peer}, as of {@code nowNanos}. Cheap enough to call on every
+     * messaging round: samples closer together than a quarter second are
+     * skipped.
+     */
+    public synchronized void samplePeer(Object peer, long downloaded, long uploaded, long nowNanos) {
+        int slot = peerSlot(peer, nowNanos);
+        if (slot < 0) {
+            return;
+        }
+        if (peerKeys[slot] != peer || downloaded < peerDownloaded[slot] || uploaded < peerUploaded[slot]) {
+            // New connection in this slot, or its counters were reset
+            peerKeys[slot] = peer;
+            peerRated[slot] = false;
+            peerDownloaded[slot] = downloaded;
+            peerUploaded[slot] = uploaded;
+            peerSampleNanos[slot] = nowNanos;
+            peerSeenNanos[slot] = nowNanos;
+            peerDownloadRates[slot] = 0;
+            peerUploadRates[slot] = 0;
+            return;
+        }
+        peerSeenNanos[slot] = nowNanos;
+        long elapsed = nowNanos - peerSampleNanos[slot];
+        if (elapsed < PEER_SAMPLE_INTERVAL_NANOS) {
+            return;
+        }
+        double seconds = elapsed / NANOS_PER_SECOND;
+        double download = (downloaded - peerDownloaded[slot]) / seconds;
+        double upload = (uploaded - peerUploaded[slot]) / seconds;
+        peerDownloaded[slot] = downloaded;
+        peerUploaded[slot] = uploaded;
+        peerSampleNanos[slot] = nowNanos;
+
+        if (!peerRated[slot]) {
+            peerRated[slot] = true;
+            peerDownloadRates[slot] = download;
+            peerUploadRates[slot] = upload;
+        } else {
+            double alpha = 1.0 - Math.exp(-seconds / timeConstantSeconds);
+            peerDownloadRates[slot] += alpha * (download - peerDownloadRates[slot]);
+            peerUploadRates[slot] += alpha * (upload - peerUploadRates[slot]);
+        }
+    }
+
+    // The slot holding peer, else a free or idle one; -1 if every slot is in use
+    private int peerSlot(Object peer, long nowNanos) {
+        int free = -1;
+        for (int i = 0; i < peerKeys.length; i++) {
+            if (peerKeys[i] == peer) {
+                return i;
+            }
+            if (peerKeys[i] != null && nowNanos - peerSeenNanos[i] > PEER_IDLE_NANOS) {
+                // Drop the reference so a closed connection can be collected
+                peerKeys[i] = null;
+            }
+            if (peerKeys[i] == null && free < 0) {
+                free = i;
+            }
+        }
+        return free;
+    }
+
+    public int getPeerCapacity() {
+        return peerKeys.length;
+    }
+
+    /**
+     * Copies the smoothed rates, in bytes per second, of every connection
+     * that has been rated and sampled recently into the given arrays, which
+     * must hold at least {@link #getPeerCapacity()} values.
+     *
+     * @return the number of connections copied
+     */
+    public synchronized int copyPeerRates(double[] download, double[] upload, long nowNanos) {
+        int count = 0;
+        for (int i = 0; i < peerKeys.length; i++) {
+            if (peerKeys[i] != null && peerRated[i] && nowNanos - peerSeenNanos[i] <= PEER_IDLE_NANOS) {
+                download[count] = peerDownloadRates[i];
+                upload[count] = peerUploadRates[i];
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public int getHistoryCapacity() {
+        return downloadHistory.length;
+    }
+
+    /**
+     * Copies the recorded per-sample rates, oldest first, into the given
+     * arrays, which must hold at least {@link #getHistoryCapacity()} values.
+     *
+     * @return the number of samples copied
+     */
+    public synchronized int copyHistory(double[] download, double[] upload) {
+        int start = (head - size + downloadHistory.length) % downloadHistory.length;
+        for (int i = 0; i < size; i++) {
+            int index = (start + i) % downloadHistory.length;
+            download[i] = downloadHistory[index];
+            upload[i] = uploadHistory[index];
+        }
+        return size;
+    }
+}
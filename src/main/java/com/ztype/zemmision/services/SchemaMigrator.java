@@ -0,0 +1,84 @@
+package com.ztype.zemmision.services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Applies numbered schema migrations in order, recording progress in
+ * SQLite's {@code PRAGMA user_version}. Each migration runs in its own
+ * transaction together with the version bump, so a failed step leaves the
+ * database at the previous version.
+ */
+public class SchemaMigrator {
+
+    private static final Logger logger = LoggerFactory.getLogger(SchemaMigrator.class);
+
+    private final SqliteConnectionPool pool;
+    private final Map<Integer, Migration> migrations = new TreeMap<>();
+
+    public SchemaMigrator(SqliteConnectionPool pool) {
+        this.pool = pool;
+    }
+
+    public SchemaMigrator register(int version, String description, SqliteConnectionPool.SqlWork<?> step) {
+        if (version <= 0) {
+            throw new IllegalArgumentException("Migration versions start at 1: " + version);
+        }
+        if (migrations.putIfAbsent(version, new Migration(description, step)) != null) {
+            throw new IllegalArgumentException("Duplicate migration version: " + version);
+        }
+        return this;
+    }
+
+    /**
+     * Brings the database up to the latest registered version.
+     *
+     * @return the schema version after migrating
+     */
+    public int migrate() throws SQLException {
+        int current = currentVersion();
+        for (Map.Entry<Integer, Migration> entry : migrations.entrySet()) {
+            int version = entry.getKey();
+            if (version <= current) {
+                continue;
+            }
+            Migration migration = entry.getValue();
+            logger.info("Migrating database schema to v{}: {}", version, migration.description);
+            pool.transaction(session -> {
+                migration.step.run(session);
+                try (Statement stmt = session.connection().createStatement()) {
+                    // PRAGMA does not accept bound parameters
+                    stmt.execute("PRAGMA user_version = " + version);
+                }
+                return null;
+            });
+            current = version;
+        }
+        return current;
+    }
+
+    public int currentVersion() throws SQLException {
+        return pool.read(session -> {
+            try (Statement stmt = session.connection().createStatement();
+                    ResultSet rs = stmt.executeQuery("PRAGMA user_version")) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        });
+    }
+
+    private static class Migration {
+        private final String description;
+        private final SqliteConnectionPool.SqlWork<?> step;
+
+        Migration(String description, SqliteConnectionPool.SqlWork<?> step) {
+            this.description = description;
+            this.step = step;
+        }
+    }
+}
@@ -0,0 +1,235 @@
+package com.ztype.zemmision.services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Long-lived SQLite connections shared by {@link DatabaseService}.
+ * <p>
+ * SQLite allows a single writer at a time, so the pool keeps one writer
+ * connection guarded by a lock plus a small set of reader connections. The
+ * database runs in WAL mode so readers never block on the writer. Each
+ * connection caches its prepared statements; callers must close the
+ * {@link java.sql.ResultSet}s they open but never the statements themselves.
+ * <p>
+ * All work runs under the shared side of a lifecycle lock, which
+ * {@link #close()} takes exclusively: closing waits for running work to hand
+ * its connection back, and work arriving afterwards fails instead of picking
+ * up a closed connection.
+ */
+public class SqliteConnectionPool implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(SqliteConnectionPool.class);
+
+    private final String url;
+    private final int readerCount;
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final ReentrantReadWriteLock lifecycleLock = new ReentrantReadWriteLock();
+    private final BlockingQueue<Session> readers;
+    private final List<Session> openSessions = new ArrayList<>();
+    private Session writer;
+    private boolean initialized = false;
+    private volatile boolean closed = false;
+
+    public SqliteConnectionPool(String url, int readerCount) {
+        this.url = url;
+        this.readerCount = Math.max(1, readerCount);
+        this.readers = new ArrayBlockingQueue<>(this.readerCount);
+    }
+
+    /**
+     * Runs {@code work} on one of the reader connections.
+     */
+    public <T> T read(SqlWork<T> work) throws SQLException {
+        lifecycleLock.readLock().lock();
+        try {
+            ensureOpen();
+            Session session;
+            try {
+                // Sessions are only taken out by readers, which hold the lifecycle lock, so one always comes back
+                session = readers.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Interrupted waiting for a database connection", e);
+            }
+            try {
+                return work.run(session);
+            } finally {
+                readers.offer(session);
+            }
+        } finally {
+            lifecycleLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Runs {@code work} on the writer connection in auto-commit mode.
+     */
+    public <T> T write(SqlWork<T> work) throws SQLException {
+        lifecycleLock.readLock().lock();
+        try {
+            ensureOpen();
+            writeLock.lock();
+            try {
+                return work.run(writer);
+            } finally {
+                writeLock.unlock();
+            }
+        } finally {
+            lifecycleLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Runs {@code work} on the writer connection inside a single transaction,
+     * rolling back if it throws. A transaction started while the calling
+     * thread already holds one joins the outer transaction.
+     */
+    public <T> T transaction(SqlWork<T> work) throws SQLException {
+        lifecycleLock.readLock().lock();
+        try {
+            ensureOpen();
+            writeLock.lock();
+            Connection conn = writer.connection();
+            try {
+                if (!conn.getAutoCommit()) {
+                    return work.run(writer);
+                }
+                conn.setAutoCommit(false);
+                try {
+                    T result = work.run(writer);
+                    conn.commit();
+                    return result;
+                } catch (SQLException | RuntimeException e) {
+                    conn.rollback();
+                    throw e;
+                } finally {
+                    conn.setAutoCommit(true);
+                }
+            } finally {
+                writeLock.unlock();
+            }
+        } finally {
+            lifecycleLock.readLock().unlock();
+        }
+    }
+
+    private synchronized void ensureOpen() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool is closed: " + url);
+        }
+        if (initialized) {
+            return;
+        }
+        writer = openSession(false);
+        for (int i = 0; i < readerCount; i++) {
+            readers.add(openSession(true));
+        }
+        initialized = true;
+        logger.info("Opened SQLite pool for {} (1 writer, {} readers, WAL)", url, readerCount);
+    }
+
+    private Session openSession(boolean readOnly) throws SQLException {
+        Connection conn = DriverManager.getConnection(url);
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("PRAGMA journal_mode=WAL");
+            stmt.execute("PRAGMA synchronous=NORMAL");
+            stmt.execute("PRAGMA busy_timeout=5000");
+            if (readOnly) {
+                stmt.execute("PRAGMA query_only=1");
+            }
+        }
+        Session session = new Session(conn);
+        openSessions.add(session);
+        return session;
+    }
+
+    /**
+     * Waits for running reads and writes to finish, then closes every
+     * connection. Must not be called from inside pool work.
+     */
+    @Override
+    public void close() {
+        lifecycleLock.writeLock().lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            for (Session session : openSessions) {
+                session.close();
+            }
+            openSessions.clear();
+            readers.clear();
+            writer = null;
+        } finally {
+            lifecycleLock.writeLock().unlock();
+        }
+        logger.info("Closed SQLite pool for {}", url);
+    }
+
+    @FunctionalInterface
+    public interface SqlWork<T> {
+        T run(Session session) throws SQLException;
+    }
+
+    /**
+     * A pooled connection together with its prepared statement cache.
+     */
+    public static class Session {
+        private final Connection connection;
+        private final Map<String, PreparedStatement> statements = new HashMap<>();
+
+        Session(Connection connection) {
+            this.connection = connection;
+        }
+
+        public Connection connection() {
+            return connection;
+        }
+
+        /**
+         * Returns a cached statement for {@code sql} with its parameters cleared.
+         * The statement is owned by the pool and must not be closed.
+         */
+        public PreparedStatement prepare(String sql) throws SQLException {
+            PreparedStatement pstmt = statements.get(sql);
+            if (pstmt == null || pstmt.isClosed()) {
+                pstmt = connection.prepareStatement(sql);
+                statements.put(sql, pstmt);
+            } else {
+                pstmt.clearParameters();
+            }
+            return pstmt;
+        }
+
+        void close() {
+            for (PreparedStatement pstmt : statements.values()) {
+                try {
+                    pstmt.close();
+                } catch (SQLException ignored) {
+                }
+            }
+            statements.clear();
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                logger.warn("Failed to close SQLite connection: {}", e.getMessage());
+            }
+        }
+    }
+}
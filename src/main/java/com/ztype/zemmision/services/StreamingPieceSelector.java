@@ -0,0 +1,130 @@
+package com.ztype.zemmision.services;
+
+import bt.torrent.PieceStatistics;
+import bt.torrent.selector.PieceSelector;
+import bt.torrent.selector.RarestFirstSelector;
+
+import java.util.BitSet;
+import java.util.stream.IntStream;
+
+/**
+ * Piece selector for playback: the pieces in a sliding window starting at
+ * the playhead are requested first, in playback order, and everything else
+ * is left to a rarest-first fallback.
+ * <p>
+ * The playhead is moved with {@link #setPlayhead(int)} as the player reads.
+ * A seek sets a second window at the seek target with
+ * {@link #setSeekTarget(int)}; it ranks right after the playhead window
+ * (which is usually already complete) and is dropped once the playhead
+ * reaches it. The wait before audio starts therefore depends on the window
+ * size, not on where the track sits in the torrent.
+ * <p>
+ * A third, lowest-ranked window set with {@link #setPrefetch(int, int)}
+ * covers the start of the track expected to play next.
+ */
+public class StreamingPieceSelector implements PieceSelector {
+
+    public static final int DEFAULT_WINDOW_PIECES = 16;
+
+    private final PieceSelector fallback;
+    private volatile int playhead = 0;
+    private volatile int seekTarget = -1;
+    private volatile long prefetch = -1; // first piece in the high half, count in the low half
+    private volatile int windowPieces;
+
+    public StreamingPieceSelector() {
+        this(DEFAULT_WINDOW_PIECES, RarestFirstSelector.randomizedRarest());
+    }
+
+    public StreamingPieceSelector(int windowPieces, PieceSelector fallback) {
+        this.windowPieces = Math.max(1, windowPieces);
+        this.fallback = fallback;
+    }
+
+    /**
+     * Moves the start of the priority window to {@code piece}.
+     */
+    public void setPlayhead(int piece) {
+        this.playhead = Math.max(0, piece);
+        if (seekTarget >= 0 && playhead >= seekTarget) {
+            seekTarget = -1;
+        }
+    }
+
+    public int getPlayhead() {
+        return playhead;
+    }
+
+    /**
+     * Prioritizes a window at {@code piece}, where playback will continue
+     * once the player has caught up with a seek.
+     */
+    public void setSeekTarget(int piece) {
+        this.seekTarget = piece > playhead ? piece : -1;
+    }
+
+    /**
+     * @return the pending seek target piece, or -1 if there is none
+     */
+    public int getSeekTarget() {
+        return seekTarget;
+    }
+
+    /**
+     * Prioritizes {@code pieceCount} pieces from {@code firstPiece}, below the
+     * playhead and seek windows.
+     */
+    public void setPrefetch(int firstPiece, int pieceCount) {
+        this.prefetch = firstPiece >= 0 && pieceCount > 0 ? ((long) firstPiece << 32) | pieceCount : -1;
+    }
+
+    public void clearPrefetch() {
+        this.prefetch = -1;
+    }
+
+    /**
+     * @return the first prefetched piece, or -1 if there is no prefetch
+     */
+    public int getPrefetchStart() {
+        long current = prefetch;
+        return current >= 0 ? (int) (current >>> 32) : -1;
+    }
+
+    public void setWindowPieces(int windowPieces) {
+        this.windowPieces = Math.max(1, windowPieces);
+    }
+
+    public int getWindowPieces() {
+        return windowPieces;
+    }
+
+    @Override
+    public IntStream getNextPieces(BitSet relevantChunks, PieceStatistics pieceStatistics) {
+        int total = pieceStatistics.getPiecesTotal();
+        int window = windowPieces;
+        int start = Math.min(playhead, total);
+        int end = (int) Math.min((long) start + window, total);
+        int target = seekTarget;
+        int targetStart = target >= 0 ? Math.max(Math.min(target, total), end) : total;
+        int targetEnd = target >= 0 ? (int) Math.min((long) target + window, total) : total;
+
+        long next = prefetch;
+        int prefetchStart = next >= 0 ? Math.min((int) (next >>> 32), total) : total;
+        int prefetchEnd = next >= 0 ? (int) Math.min(prefetchStart + (next & 0xFFFFFFFFL), total) : total;
+
+        IntStream prioritized = IntStream.concat(
+                        IntStream.concat(IntStream.range(start, end), IntStream.range(targetStart, targetEnd)),
+                        IntStream.range(prefetchStart, prefetchEnd)
+                                .filter(piece -> outside(piece, start, end) && outside(piece, targetStart, targetEnd)))
+                .filter(relevantChunks::get)
+                .filter(piece -> pieceStatistics.getCount(piece) > 0);
+        IntStream rest = fallback.getNextPieces(relevantChunks, pieceStatistics)
+                .filter(piece -> outside(piece, start, end) && outside(piece, targetStart, targetEnd)
+                        && outside(piece, prefetchStart, prefetchEnd));
+        return IntStream.concat(prioritized, rest);
+    }
+
+    private static boolean outside(int piece, int from, int to) {
+        return piece < from || piece >= to;
+    }
+}
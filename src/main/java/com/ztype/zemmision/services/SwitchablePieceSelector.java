@@ -0,0 +1,52 @@
+package com.ztype.zemmision.services;
+
+import bt.torrent.PieceStatistics;
+import bt.torrent.selector.PieceSelector;
+
+import java.util.BitSet;
+import java.util.function.BooleanSupplier;
+import java.util.stream.IntStream;
+
+/**
+ * Piece selector whose strategy can be replaced while the client runs.
+ * <p>
+ * The client asks its selector for the next pieces on every scheduling round,
+ * so swapping the delegate changes what is requested next without touching
+ * peer connections or announces. The same round is where downloads are
+ * held to a bandwidth allowance: while the {@link #setGate(BooleanSupplier)
+ * gate} is closed no new pieces are selected, so nothing more is requested
+ * and blocks already asked for still arrive.
+ */
+public class SwitchablePieceSelector implements PieceSelector {
+
+    private volatile PieceSelector delegate;
+    private volatile BooleanSupplier gate = () -> true;
+
+    public SwitchablePieceSelector(PieceSelector delegate) {
+        this.delegate = delegate;
+    }
+
+    public void setDelegate(PieceSelector delegate) {
+        this.delegate = delegate;
+    }
+
+    public PieceSelector getDelegate() {
+        return delegate;
+    }
+
+    /**
+     * @param gate asked on every selection round; {@code false} selects no
+     *             pieces for that round
+     */
+    public void setGate(BooleanSupplier gate) {
+        this.gate = gate;
+    }
+
+    @Override
+    public IntStream getNextPieces(BitSet relevantChunks, PieceStatistics pieceStatistics) {
+        if (!gate.getAsBoolean()) {
+            return IntStream.empty();
+        }
+        return delegate.getNextPieces(relevantChunks, pieceStatistics);
+    }
+}
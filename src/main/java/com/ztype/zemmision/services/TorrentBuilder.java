@@ -0,0 +1,686 @@
+package com.ztype.zemmision.services;
+
+import com.ztype.zemmision.utils.Bencoder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Builds a multi-file torrent for a directory of files: v1, or with
+ * {@link #hybrid(boolean)} a hybrid v1+v2 torrent (BEP 52).
+ * <p>
+ * Pieces are hashed in parallel: the piece range is cut into runs of
+ * {@link #PIECES_PER_TASK} pieces, each run is read through memory-mapped
+ * file regions and hashed on its own worker thread. Progress is reported as
+ * runs complete and {@link #cancel()} stops the workers between pieces. With
+ * a {@link PieceHashCache}, pieces inside files that are unchanged since an
+ * earlier build are copied instead of rehashed, and each file's hashes are
+ * cached as soon as they are done, so a cancelled build resumes where it
+ * stopped.
+ * <p>
+ * Unless set explicitly, the piece length is chosen from the payload size
+ * and the audio bitrate by {@link #pieceLengthFor(long, long)}.
+ * <p>
+ * In a hybrid torrent every file starts on a piece boundary, with BEP 47 pad
+ * files filling the gaps in the v1 file list, and carries a SHA-256 merkle
+ * tree of its 16 KiB blocks. A file's pieces then hold only its own data, so
+ * each track is verified on its own, and identical tracks get the same
+ * pieces root whatever playlist they are in.
+ */
+public class TorrentBuilder {
+
+    public static final long DEFAULT_PIECE_LENGTH = 512 * 1024;
+    // 16 KiB is the BitTorrent block size, so smaller pieces gain nothing
+    public static final long MIN_PIECE_LENGTH = 16 * 1024;
+    public static final long MAX_PIECE_LENGTH = 16 * 1024 * 1024;
+    // Seconds of audio a piece should hold, so a verified piece is soon playable
+    static final int TARGET_PIECE_SECONDS = 4;
+    // Enough pieces for a streaming window to move through
+    static final long MIN_PIECES = 64;
+    // Caps the .torrent at ~160 KB of hashes and the bitfield at 1 KB
+    static final long MAX_PIECES = 8192;
+    // 320 kbps, used when the caller does not know the bitrate
+    public static final long DEFAULT_BYTES_PER_SECOND = 40_000;
+    static final int PIECES_PER_TASK = 16;
+    private static final int HASH_LENGTH = 20;
+    private static final int V2_HASH_LENGTH = 32;
+    // Merkle tree leaves cover 16 KiB blocks
+    private static final int BLOCK_LENGTH = 16 * 1024;
+    // Cache alignment marking hybrid entries, whose files always start a piece
+    private static final long HYBRID_ALIGNMENT = -1;
+
+    /**
+     * Receives the number of bytes hashed (or taken from the cache) so far.
+     * Called from worker threads.
+     */
+    public interface ProgressListener {
+        void onProgress(long bytesDone, long totalBytes);
+    }
+
+    private final Path root;
+    private List<Path> files;
+    private String announce;
+    private String createdBy = "zemmision";
+    private long pieceLength = 0; // 0 until chosen or set
+    private long bytesPerSecond = DEFAULT_BYTES_PER_SECOND;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private PieceHashCache hashCache;
+    private ProgressListener progressListener;
+    private BooleanSupplier cancellation;
+    private boolean hybrid = false;
+    private volatile boolean cancelled = false;
+    // Set by hashPieces
+    private Layout layout;
+    private byte[] pieceLayer;
+    private byte[][] piecesRoots;
+
+    /**
+     * @param root  directory the torrent is named after; file paths are stored
+     *              relative to it
+     * @param files files under {@code root}, in torrent order
+     */
+    public TorrentBuilder(Path root, List<Path> files) {
+        this.root = root;
+        this.files = List.copyOf(files);
+    }
+
+    public TorrentBuilder announce(String announce) {
+        this.announce = announce;
+        return this;
+    }
+
+    public TorrentBuilder createdBy(String createdBy) {
+        this.createdBy = createdBy;
+        return this;
+    }
+
+    public TorrentBuilder pieceLength(long pieceLength) {
+        if (pieceLength <= 0) {
+            throw new IllegalArgumentException("Piece length must be positive: " + pieceLength);
+        }
+        this.pieceLength = pieceLength;
+        return this;
+    }
+
+    /**
+     * Average audio bitrate of the payload in bytes per second, used to pick
+     * the piece length when none is set.
+     */
+    public TorrentBuilder bytesPerSecond(long bytesPerSecond) {
+        this.bytesPerSecond = bytesPerSecond > 0 ? bytesPerSecond : DEFAULT_BYTES_PER_SECOND;
+        return this;
+    }
+
+    /**
+     * Builds a hybrid v1+v2 torrent. The piece length must then be a power of
+     * two of at least 16 KiB, and the files are put in v2 file tree order
+     * (sorted by path).
+     */
+    public TorrentBuilder hybrid(boolean hybrid) {
+        this.hybrid = hybrid;
+        if (hybrid) {
+            List<Path> sorted = new ArrayList<>(files);
+            sorted.sort((a, b) -> compareTreeOrder(root.relativize(a), root.relativize(b)));
+            files = List.copyOf(sorted);
+        }
+        return this;
+    }
+
+    public TorrentBuilder threads(int threads) {
+        this.threads = Math.max(1, threads);
+        return this;
+    }
+
+    public TorrentBuilder hashCache(PieceHashCache hashCache) {
+        this.hashCache = hashCache;
+        return this;
+    }
+
+    public TorrentBuilder progressListener(ProgressListener progressListener) {
+        this.progressListener = progressListener;
+        return this;
+    }
+
+    /**
+     * Also stops the build once {@code cancellation} returns {@code true}.
+     */
+    public TorrentBuilder cancellation(BooleanSupplier cancellation) {
+        this.cancellation = cancellation;
+        return this;
+    }
+
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled || (cancellation != null && cancellation.getAsBoolean());
+    }
+
+    /**
+     * @return the piece length set, or the one chosen by the last build (0
+     *         before it)
+     */
+    public long getPieceLength() {
+        return pieceLength;
+    }
+
+    /**
+     * @return the v2 pieces root of {@code file} after a hybrid build, or
+     *         {@code null} for an empty file or a v1 build
+     */
+    public byte[] getPiecesRoot(Path file) {
+        int index = files.indexOf(file);
+        return piecesRoots == null || index < 0 ? null : piecesRoots[index];
+    }
+
+    /**
+     * @return the pad files listed in the last hybrid build, relative to the
+     *         torrent root, with their lengths. Clients without BEP 47 support
+     *         expect them on disk, filled with zeros.
+     */
+    public Map<Path, Long> getPadFiles() {
+        Map<Path, Long> pads = new LinkedHashMap<>();
+        if (hybrid && layout != null) {
+            long position = 0;
+            for (int i = 0; i < files.size(); i++) {
+                if (layout.offsets[i] > position) {
+                    long length = layout.offsets[i] - position;
+                    pads.put(Path.of(".pad", Long.toString(length)), length);
+                }
+                position = layout.offsets[i] + layout.sizes[i];
+            }
+        }
+        return pads;
+    }
+
+    /**
+     * Piece length for {@code totalBytes} of audio at {@code bytesPerSecond}:
+     * the power of two nearest to {@link #TARGET_PIECE_SECONDS} of audio,
+     * halved while that leaves fewer than {@link #MIN_PIECES} pieces and
+     * doubled while it leaves more than {@link #MAX_PIECES}, within
+     * {@link #MIN_PIECE_LENGTH} and {@link #MAX_PIECE_LENGTH}.
+     */
+    public static long pieceLengthFor(long totalBytes, long bytesPerSecond) {
+        long target = Math.max(1, bytesPerSecond) * TARGET_PIECE_SECONDS;
+        long length = Long.highestOneBit(target);
+        if (target - length > length / 2) {
+            length <<= 1;
+        }
+        length = Math.max(MIN_PIECE_LENGTH, Math.min(MAX_PIECE_LENGTH, length));
+        while (length > MIN_PIECE_LENGTH && totalBytes / length < MIN_PIECES) {
+            length >>= 1;
+        }
+        while (length < MAX_PIECE_LENGTH && totalBytes / length > MAX_PIECES) {
+            length <<= 1;
+        }
+        return length;
+    }
+
+    /**
+     * Hashes the files and writes the bencoded metainfo to {@code torrentFile}.
+     *
+     * @throws CancellationException if the build was cancelled
+     */
+    public void build(Path torrentFile) throws IOException {
+        byte[] metainfo = build();
+        Path temp = torrentFile.resolveSibling(torrentFile.getFileName() + ".tmp");
+        Files.write(temp, metainfo);
+        Files.move(temp, torrentFile, java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * @return the bencoded metainfo
+     * @throws CancellationException if the build was cancelled
+     */
+    public byte[] build() throws IOException {
+        if (files.isEmpty()) {
+            throw new IOException("No files to build a torrent from");
+        }
+        byte[] pieces = hashPieces();
+
+        List<Object> fileList = new ArrayList<>();
+        Map<String, Object> fileTree = new LinkedHashMap<>();
+        Map<Object, Object> pieceLayers = new LinkedHashMap<>();
+        java.util.Set<String> layeredRoots = new java.util.HashSet<>();
+        long position = 0;
+        for (int i = 0; i < files.size(); i++) {
+            if (layout.offsets[i] > position) {
+                Map<String, Object> pad = new LinkedHashMap<>();
+                pad.put("attr", "p");
+                pad.put("length", layout.offsets[i] - position);
+                pad.put("path", List.of(".pad", Long.toString(layout.offsets[i] - position)));
+                fileList.add(pad);
+            }
+            position = layout.offsets[i] + layout.sizes[i];
+
+            List<Object> pathElements = new ArrayList<>();
+            for (Path element : root.relativize(files.get(i))) {
+                pathElements.add(element.toString());
+            }
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("length", layout.sizes[i]);
+            entry.put("path", pathElements);
+            fileList.add(entry);
+
+            if (hybrid) {
+                Map<String, Object> node = fileTree;
+                for (Object element : pathElements) {
+                    @SuppressWarnings("unchecked")
+                    Map<String, Object> child = (Map<String, Object>) node.computeIfAbsent((String) element,
+                            key -> new LinkedHashMap<String, Object>());
+                    node = child;
+                }
+                Map<String, Object> v2Entry = new LinkedHashMap<>();
+                v2Entry.put("length", layout.sizes[i]);
+                if (piecesRoots[i] != null) {
+                    v2Entry.put("pieces root", piecesRoots[i]);
+                }
+                node.put("", v2Entry);
+                // Single-piece files are checked against their root alone; identical files share a layer
+                if (layout.sizes[i] > pieceLength && layeredRoots.add(java.util.HexFormat.of().formatHex(piecesRoots[i]))) {
+                    int first = layout.firstInterior(i);
+                    pieceLayers.put(piecesRoots[i], java.util.Arrays.copyOfRange(pieceLayer,
+                            first * V2_HASH_LENGTH, (first + layout.interiorCount(i)) * V2_HASH_LENGTH));
+                }
+            }
+        }
+
+        Map<String, Object> info = new LinkedHashMap<>();
+        if (hybrid) {
+            info.put("file tree", fileTree);
+            info.put("meta version", 2);
+        }
+        info.put("files", fileList);
+        info.put("name", root.getFileName().toString());
+        info.put("piece length", pieceLength);
+        info.put("pieces", pieces);
+
+        Map<String, Object> metainfo = new LinkedHashMap<>();
+        if (announce != null) {
+            metainfo.put("announce", announce);
+        }
+        metainfo.put("created by", createdBy);
+        metainfo.put("creation date", System.currentTimeMillis() / 1000);
+        metainfo.put("info", info);
+        if (hybrid) {
+            metainfo.put("piece layers", pieceLayers);
+        }
+        return Bencoder.encode(metainfo);
+    }
+
+    /**
+     * @return the concatenated SHA-1 hashes of all pieces; a hybrid build also
+     *         computes the v2 piece layers and pieces roots
+     * @throws CancellationException if the build was cancelled
+     */
+    public byte[] hashPieces() throws IOException {
+        if (pieceLength == 0) {
+            long total = 0;
+            for (Path file : files) {
+                total += Files.size(file);
+            }
+            pieceLength = pieceLengthFor(total, bytesPerSecond);
+        }
+        if (hybrid && (Long.bitCount(pieceLength) != 1 || pieceLength < BLOCK_LENGTH)) {
+            throw new IllegalArgumentException(
+                    "Hybrid torrents need a power of two piece length of at least 16 KiB: " + pieceLength);
+        }
+        Layout layout = new Layout();
+        byte[] pieces = new byte[Math.multiplyExact(layout.pieceCount, HASH_LENGTH)];
+        pieceLayer = hybrid ? new byte[Math.multiplyExact(layout.pieceCount, V2_HASH_LENGTH)] : null;
+        boolean[] cached = new boolean[layout.pieceCount];
+        AtomicIntegerArray remaining = new AtomicIntegerArray(files.size());
+        AtomicLong bytesDone = new AtomicLong();
+
+        for (int i = 0; i < files.size(); i++) {
+            int count = layout.interiorCount(i);
+            // The v1 hash of a hybrid file's last piece depends on whether padding follows, so it is never cached
+            int cacheable = hybrid ? count - 1 : count;
+            byte[] hashes = count > 0 && hashCache != null
+                    ? hashCache.get(files.get(i), layout.sizes[i], layout.lastModified[i], pieceLength,
+                            hybrid ? HYBRID_ALIGNMENT : layout.offsets[i] % pieceLength)
+                    : null;
+            int expected = cacheable * HASH_LENGTH + (hybrid ? count * V2_HASH_LENGTH : 0);
+            if (hashes != null && hashes.length == expected) {
+                int first = layout.firstInterior(i);
+                System.arraycopy(hashes, 0, pieces, first * HASH_LENGTH, cacheable * HASH_LENGTH);
+                if (hybrid) {
+                    System.arraycopy(hashes, cacheable * HASH_LENGTH, pieceLayer, first * V2_HASH_LENGTH,
+                            count * V2_HASH_LENGTH);
+                }
+                java.util.Arrays.fill(cached, first, first + cacheable, true);
+                bytesDone.addAndGet(layout.bytesOf(first, first + cacheable));
+                remaining.set(i, count - cacheable);
+            } else {
+                remaining.set(i, count);
+            }
+        }
+        reportProgress(bytesDone.get(), layout.total);
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads, new java.util.concurrent.ThreadFactory() {
+            private final AtomicInteger counter = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "torrent-hash-" + counter.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        try {
+            List<Future<?>> tasks = new ArrayList<>();
+            int piece = 0;
+            while (piece < layout.pieceCount) {
+                if (cached[piece]) {
+                    piece++;
+                    continue;
+                }
+                int start = piece;
+                while (piece < layout.pieceCount && !cached[piece] && piece - start < PIECES_PER_TASK
+                        && (!hybrid || layout.interiorFileOf(piece) == layout.interiorFileOf(start))) {
+                    piece++;
+                }
+                int end = piece;
+                tasks.add(executor.submit(() -> {
+                    if (hybrid) {
+                        hashFileRun(layout, start, end, pieces, remaining);
+                    } else {
+                        hashRun(layout, start, end, pieces, remaining);
+                    }
+                    reportProgress(bytesDone.addAndGet(layout.bytesOf(start, end)), layout.total);
+                    return null;
+                }));
+            }
+            for (Future<?> task : tasks) {
+                task.get();
+            }
+        } catch (ExecutionException e) {
+            cancelled = true;
+            if (e.getCause() instanceof IOException io) {
+                throw io;
+            }
+            throw new IOException("Failed to hash pieces", e.getCause());
+        } catch (InterruptedException e) {
+            cancelled = true;
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Interrupted while hashing pieces");
+        } finally {
+            executor.shutdownNow();
+        }
+        if (isCancelled()) {
+            throw new CancellationException("Torrent build cancelled");
+        }
+        this.layout = layout;
+        piecesRoots = hybrid ? computePiecesRoots(layout) : null;
+        return pieces;
+    }
+
+    private byte[][] computePiecesRoots(Layout layout) {
+        MessageDigest sha256 = newSha256();
+        byte[] padHash = merkleRoot(sha256, new byte[(int) (pieceLength / BLOCK_LENGTH) * V2_HASH_LENGTH],
+                (int) (pieceLength / BLOCK_LENGTH));
+        byte[][] roots = new byte[files.size()][];
+        for (int i = 0; i < files.size(); i++) {
+            int count = layout.interiorCount(i);
+            int first = layout.firstInterior(i);
+            if (count == 1) {
+                // Already the root: a single piece is hashed with its leaves padded to a power of two only
+                roots[i] = java.util.Arrays.copyOfRange(pieceLayer, first * V2_HASH_LENGTH,
+                        (first + 1) * V2_HASH_LENGTH);
+            } else if (count > 1) {
+                int width = Integer.highestOneBit(count - 1) << 1;
+                byte[] nodes = new byte[width * V2_HASH_LENGTH];
+                System.arraycopy(pieceLayer, first * V2_HASH_LENGTH, nodes, 0, count * V2_HASH_LENGTH);
+                for (int n = count; n < width; n++) {
+                    System.arraycopy(padHash, 0, nodes, n * V2_HASH_LENGTH, V2_HASH_LENGTH);
+                }
+                roots[i] = merkleRoot(sha256, nodes, width);
+            }
+        }
+        return roots;
+    }
+
+    // Reduces count (a power of two) consecutive hashes in place to their merkle root
+    private static byte[] merkleRoot(MessageDigest sha256, byte[] nodes, int count) {
+        for (; count > 1; count /= 2) {
+            for (int i = 0; i < count / 2; i++) {
+                sha256.update(nodes, 2 * i * V2_HASH_LENGTH, 2 * V2_HASH_LENGTH);
+                System.arraycopy(sha256.digest(), 0, nodes, i * V2_HASH_LENGTH, V2_HASH_LENGTH);
+            }
+        }
+        return java.util.Arrays.copyOf(nodes, V2_HASH_LENGTH);
+    }
+
+    private void reportProgress(long done, long total) {
+        if (progressListener != null) {
+            progressListener.onProgress(done, total);
+        }
+    }
+
+    // Hashes pieces [start, end), which may span several files
+    private void hashRun(Layout layout, int start, int end, byte[] pieces, AtomicIntegerArray remaining)
+            throws IOException {
+        MessageDigest sha1 = newSha1();
+        long position = start * pieceLength;
+        long runEnd = Math.min(end * pieceLength, layout.total);
+        int piece = start;
+        long filled = 0;
+
+        for (int file = layout.fileAt(position); position < runEnd; file++) {
+            long fileEnd = layout.offsets[file] + layout.sizes[file];
+            if (position >= fileEnd) {
+                continue;
+            }
+            long chunkEnd = Math.min(runEnd, fileEnd);
+            try (FileChannel channel = FileChannel.open(files.get(file), StandardOpenOption.READ)) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY,
+                        position - layout.offsets[file], chunkEnd - position);
+                while (buffer.hasRemaining()) {
+                    if (isCancelled()) {
+                        return;
+                    }
+                    int take = (int) Math.min(buffer.remaining(), pieceLength - filled);
+                    ByteBuffer slice = buffer.slice(buffer.position(), take);
+                    sha1.update(slice);
+                    buffer.position(buffer.position() + take);
+                    filled += take;
+                    if (filled == pieceLength) {
+                        finishPiece(layout, piece++, sha1, pieces, remaining);
+                        filled = 0;
+                    }
+                }
+            }
+            position = chunkEnd;
+        }
+        if (filled > 0) {
+            // Short last piece of the torrent
+            finishPiece(layout, piece, sha1, pieces, remaining);
+        }
+    }
+
+    // Hashes pieces [start, end) of one file of a hybrid torrent, for v1 and v2
+    private void hashFileRun(Layout layout, int start, int end, byte[] pieces, AtomicIntegerArray remaining)
+            throws IOException {
+        int file = layout.interiorFileOf(start);
+        long fileStart = layout.offsets[file];
+        long size = layout.sizes[file];
+        // Every file but the last is padded to a piece boundary, and the padding is hashed as zeros
+        boolean padded = fileStart + size < layout.total;
+        MessageDigest sha1 = newSha1();
+        MessageDigest sha256 = newSha256();
+        int blocksPerPiece = (int) (pieceLength / BLOCK_LENGTH);
+        long blocks = (size + BLOCK_LENGTH - 1) / BLOCK_LENGTH;
+        // BEP 52 pads a single-piece file's tree to a power of two leaves, any other piece to a full piece
+        int width = size <= pieceLength ? Math.max(1, Integer.highestOneBit((int) blocks - 1) << 1) : blocksPerPiece;
+        byte[] leaves = new byte[width * V2_HASH_LENGTH];
+        byte[] zeros = new byte[BLOCK_LENGTH];
+
+        long position = start * pieceLength - fileStart;
+        long runEnd = Math.min(end * pieceLength - fileStart, size);
+        try (FileChannel channel = FileChannel.open(files.get(file), StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, runEnd - position);
+            for (int piece = start; piece < end; piece++) {
+                if (isCancelled()) {
+                    return;
+                }
+                int length = (int) Math.min(pieceLength, buffer.remaining());
+                java.util.Arrays.fill(leaves, (byte) 0);
+                for (int offset = 0, leaf = 0; offset < length; offset += BLOCK_LENGTH, leaf++) {
+                    int take = Math.min(BLOCK_LENGTH, length - offset);
+                    sha1.update(buffer.slice(buffer.position() + offset, take));
+                    sha256.update(buffer.slice(buffer.position() + offset, take));
+                    System.arraycopy(sha256.digest(), 0, leaves, leaf * V2_HASH_LENGTH, V2_HASH_LENGTH);
+                }
+                for (long pad = padded ? pieceLength - length : 0; pad > 0; pad -= zeros.length) {
+                    sha1.update(zeros, 0, (int) Math.min(zeros.length, pad));
+                }
+                buffer.position(buffer.position() + length);
+                System.arraycopy(merkleRoot(sha256, leaves, width), 0, pieceLayer, piece * V2_HASH_LENGTH,
+                        V2_HASH_LENGTH);
+                finishPiece(layout, piece, sha1, pieces, remaining);
+            }
+        }
+    }
+
+    private void finishPiece(Layout layout, int piece, MessageDigest sha1, byte[] pieces,
+            AtomicIntegerArray remaining) {
+        System.arraycopy(sha1.digest(), 0, pieces, piece * HASH_LENGTH, HASH_LENGTH);
+        int file = layout.interiorFileOf(piece);
+        if (file >= 0 && remaining.decrementAndGet(file) == 0 && hashCache != null) {
+            // Every interior piece of this file is hashed: remember them
+            int first = layout.firstInterior(file);
+            int count = layout.interiorCount(file);
+            byte[] hashes;
+            if (hybrid) {
+                int cacheable = count - 1;
+                hashes = new byte[cacheable * HASH_LENGTH + count * V2_HASH_LENGTH];
+                System.arraycopy(pieces, first * HASH_LENGTH, hashes, 0, cacheable * HASH_LENGTH);
+                System.arraycopy(pieceLayer, first * V2_HASH_LENGTH, hashes, cacheable * HASH_LENGTH,
+                        count * V2_HASH_LENGTH);
+            } else {
+                hashes = java.util.Arrays.copyOfRange(pieces, first * HASH_LENGTH, (first + count) * HASH_LENGTH);
+            }
+            hashCache.put(files.get(file), layout.sizes[file], layout.lastModified[file], pieceLength,
+                    hybrid ? HYBRID_ALIGNMENT : layout.offsets[file] % pieceLength, hashes);
+        }
+    }
+
+    private static MessageDigest newSha1() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 is not available", e);
+        }
+    }
+
+    private static MessageDigest newSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    // Compares relative paths element by element in UTF-8 byte order, as bencoded dictionaries sort
+    private static int compareTreeOrder(Path a, Path b) {
+        int common = Math.min(a.getNameCount(), b.getNameCount());
+        for (int i = 0; i < common; i++) {
+            int order = java.util.Arrays.compareUnsigned(
+                    a.getName(i).toString().getBytes(java.nio.charset.StandardCharsets.UTF_8),
+                    b.getName(i).toString().getBytes(java.nio.charset.StandardCharsets.UTF_8));
+            if (order != 0) {
+                return order;
+            }
+        }
+        return Integer.compare(a.getNameCount(), b.getNameCount());
+    }
+
+    // Offsets, sizes and modification times of the files, read once per build.
+    // In a hybrid torrent each non-empty file starts on a piece boundary.
+    private class Layout {
+        final long[] offsets = new long[files.size()];
+        final long[] sizes = new long[files.size()];
+        final long[] lastModified = new long[files.size()];
+        final long total;
+        final int pieceCount;
+
+        Layout() throws IOException {
+            long offset = 0;
+            for (int i = 0; i < files.size(); i++) {
+                Path file = files.get(i);
+                sizes[i] = Files.size(file);
+                if (hybrid && sizes[i] > 0) {
+                    offset = (offset + pieceLength - 1) / pieceLength * pieceLength;
+                }
+                offsets[i] = offset;
+                lastModified[i] = Files.getLastModifiedTime(file).toMillis();
+                offset += sizes[i];
+            }
+            total = offset;
+            pieceCount = Math.toIntExact((total + pieceLength - 1) / pieceLength);
+        }
+
+        // First piece that starts inside file i
+        int firstInterior(int i) {
+            return (int) ((offsets[i] + pieceLength - 1) / pieceLength);
+        }
+
+        // Pieces lying entirely inside file i; the torrent's short last piece counts if it ends the file.
+        // A hybrid file owns every piece it touches, its last one completed by padding.
+        int interiorCount(int i) {
+            if (hybrid) {
+                return (int) ((sizes[i] + pieceLength - 1) / pieceLength);
+            }
+            long fileEnd = offsets[i] + sizes[i];
+            int end = fileEnd == total ? pieceCount : (int) (fileEnd / pieceLength);
+            return Math.max(0, end - firstInterior(i));
+        }
+
+        // File whose interior holds piece, or -1 if the piece spans files
+        int interiorFileOf(int piece) {
+            int file = fileAt(piece * pieceLength);
+            int first = firstInterior(file);
+            return piece >= first && piece < first + interiorCount(file) ? file : -1;
+        }
+
+        // First non-empty file containing byte position
+        int fileAt(long position) {
+            int low = 0;
+            int high = offsets.length - 1;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (offsets[mid] + sizes[mid] <= position) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        long bytesOf(int startPiece, int endPiece) {
+            return Math.min(endPiece * pieceLength, total) - startPiece * pieceLength;
+        }
+    }
+}
@@ -2,6 +2,7 @@ package com.ztype.zemmision.services;
 
 import com.ztype.zemmision.models.Playlist;
 import com.ztype.zemmision.models.Track;
+import com.ztype.zemmision.models.TrackPriority;
 import bt.Bt;
 import bt.data.Storage;
 import bt.data.file.FileSystemStorage;
@@ -10,11 +11,9 @@ import bt.dht.DHTModule;
 import bt.runtime.BtClient;
 import bt.torrent.TorrentSessionState;
 import bt.metainfo.Torrent;
-import bt.metainfo.TorrentFile;
 import bt.data.DataDescriptor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import bt.torrent.selector.SequentialSelector;
 import bt.torrent.selector.RarestFirstSelector;
 import bt.torrent.selector.PieceSelector;
 
@@ -23,7 +22,6 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 
@@ -35,36 +33,92 @@ public class TorrentService {
     private final Path torrentsDir;
     private final Map<String, BtClient> activeClients;
     private final java.util.Map<String, TorrentSessionState> clientStates;
-    private final java.util.Set<Integer> allocatedPorts;
+    // Acceptor (TCP) and DHT (UDP) ports, each from its own reserved range
+    private final PortAllocator acceptorPorts = new PortAllocator(6891, 512);
+    private final PortAllocator dhtPorts = new PortAllocator(49001, 512);
+    private static final String PIECE_HASH_CACHE_FILE = "piece-hashes.cache";
+    private PieceHashCache pieceHashCache;
     private final java.util.Map<String, java.util.List<Integer>> playlistPorts;
     private final java.util.Map<String, Integer> playlistAcceptorPorts;
     private final java.util.Map<String, Playlist> activePlaylists;
     private final java.util.Map<String, Boolean> activeModes;
-    private final java.util.Map<String, Long> frozenStartTime;
     private final java.util.concurrent.ScheduledExecutorService monitorService;
     private final java.util.Map<String, Long> lastLogTime;
+    private final java.util.Map<String, PieceMap> pieceMaps = new java.util.concurrent.ConcurrentHashMap<>();
+    private final java.util.Map<String, RateEstimator> rateEstimators = new java.util.concurrent.ConcurrentHashMap<>();
+    private final java.util.Map<String, StreamingPieceSelector> streamingSelectors = new java.util.concurrent.ConcurrentHashMap<>();
+    private final java.util.Map<String, SwitchablePieceSelector> clientSelectors = new java.util.concurrent.ConcurrentHashMap<>();
+    // Per-track priorities, applied below the streaming windows in both modes
+    private final java.util.Map<String, FilePriorityPieceSelector> prioritySelectors = new java.util.concurrent.ConcurrentHashMap<>();
+    private final java.util.Map<String, java.util.Map<String, TrackPriority>> trackPriorities = new java.util.concurrent.ConcurrentHashMap<>();
+    // Runtimes owned by a single client; shared-runtime clients are not listed
+    private final java.util.Map<String, bt.runtime.BtRuntime> clientRuntimes = new java.util.concurrent.ConcurrentHashMap<>();
+    private final PeerHealthMonitor peerHealth = new PeerHealthMonitor(this::requestPeerRecovery);
+    // Bytes of playback the streaming selector keeps ahead of the playhead
+    private static final long STREAMING_WINDOW_BYTES = 4L * 1024 * 1024;
+    // Fraction of the current track played before the next one is prefetched
+    private static final double PREFETCH_THRESHOLD = 0.7;
+    private static final long METADATA_POLL_MILLIS = 250;
+    private final java.util.Map<String, PrefetchPlan> prefetchPlans = new java.util.concurrent.ConcurrentHashMap<>();
+    private final java.util.Map<Path, String> torrentPlaylistIds = new java.util.concurrent.ConcurrentHashMap<>();
     private final java.util.Map<String, com.offbynull.portmapper.mapper.MappedPort> activePortMappings = new java.util.concurrent.ConcurrentHashMap<>();
     private final java.util.Map<String, com.offbynull.portmapper.mapper.PortMapper> activePortMappers = new java.util.concurrent.ConcurrentHashMap<>();
     protected boolean enablePortMapping = true;
 
+    /**
+     * Runs every torrent on one shared {@link bt.runtime.BtRuntime} with a
+     * single DHT node, acceptor port and port mapping, instead of a runtime
+     * per playlist. Enabled with {@code -Dzemmision.bt.sharedRuntime=true}.
+     */
+    protected boolean useSharedRuntime = Boolean.getBoolean("zemmision.bt.sharedRuntime");
+    private static final String SHARED_RUNTIME_KEY = "shared-runtime";
+
+    /**
+     * Creates hybrid v1+v2 torrents, where every track starts on a piece
+     * boundary and has its own merkle tree. Enabled with
+     * {@code -Dzemmision.torrent.hybrid=true}.
+     */
+    protected boolean hybridTorrents = Boolean.getBoolean("zemmision.torrent.hybrid");
+    private volatile bt.runtime.BtRuntime sharedRuntime;
+    private final java.util.List<Integer> sharedRuntimePorts = new java.util.ArrayList<>();
+    private final java.util.Set<String> sharedRuntimeClients = java.util.concurrent.ConcurrentHashMap.newKeySet();
+    // Torrents whose verified pieces the shared runtime already reports; it has no way to unsubscribe
+    private final java.util.Set<bt.metainfo.TorrentId> sharedPieceSubscriptions = java.util.concurrent.ConcurrentHashMap.newKeySet();
+
+    /**
+     * Global and per-torrent bandwidth limits in bytes per second, 0 for
+     * unlimited. Set with {@code -Dzemmision.bandwidth.download},
+     * {@code .upload}, {@code .torrentDownload} and {@code .torrentUpload}.
+     */
+    private final BandwidthScheduler bandwidth = new BandwidthScheduler();
+    // Downloaded and uploaded totals at the last state callback, charged to the scheduler as deltas
+    private final java.util.Map<String, long[]> chargedTotals = new java.util.concurrent.ConcurrentHashMap<>();
+    // The playlist of each fetched torrent, for the agents shared by all torrents of a runtime
+    private final java.util.Map<bt.metainfo.TorrentId, String> torrentIdPlaylists = new java.util.concurrent.ConcurrentHashMap<>();
+    private final UploadChokingAgent uploadChoking = new UploadChokingAgent(torrentIdPlaylists, bandwidth,
+            rateEstimators);
+
     public TorrentService() {
         this.stagingRoot = Paths.get("data", "staging");
         this.torrentsDir = Paths.get("data", "torrents");
-        this.activeClients = new HashMap<>();
+        this.activeClients = new java.util.concurrent.ConcurrentHashMap<>();
         this.clientStates = new java.util.concurrent.ConcurrentHashMap<>();
-        this.allocatedPorts = java.util.concurrent.ConcurrentHashMap.newKeySet();
         this.playlistPorts = new java.util.concurrent.ConcurrentHashMap<>();
         this.playlistAcceptorPorts = new java.util.concurrent.ConcurrentHashMap<>();
         this.activePlaylists = new java.util.concurrent.ConcurrentHashMap<>();
         this.activeModes = new java.util.concurrent.ConcurrentHashMap<>();
-        this.frozenStartTime = new java.util.concurrent.ConcurrentHashMap<>();
         this.lastLogTime = new java.util.concurrent.ConcurrentHashMap<>();
         this.monitorService = java.util.concurrent.Executors.newSingleThreadScheduledExecutor(r -> {
             Thread t = new Thread(r, "torrent-monitor");
             t.setDaemon(true);
             return t;
         });
-        this.monitorService.scheduleAtFixedRate(this::checkFrozenTorrents, 5, 5, java.util.concurrent.TimeUnit.SECONDS);
+        bandwidth.setGlobalLimit(BandwidthScheduler.Direction.DOWNLOAD, Long.getLong("zemmision.bandwidth.download", 0));
+        bandwidth.setGlobalLimit(BandwidthScheduler.Direction.UPLOAD, Long.getLong("zemmision.bandwidth.upload", 0));
+        bandwidth.setPerTorrentLimit(BandwidthScheduler.Direction.DOWNLOAD,
+                Long.getLong("zemmision.bandwidth.torrentDownload", 0));
+        bandwidth.setPerTorrentLimit(BandwidthScheduler.Direction.UPLOAD,
+                Long.getLong("zemmision.bandwidth.torrentUpload", 0));
         try {
             Files.createDirectories(stagingRoot);
             Files.createDirectories(torrentsDir);
@@ -83,6 +137,17 @@ public class TorrentService {
      * @return Path to the generated .torrent file
      */
     public Path createPlaylistTorrent(Playlist playlist) throws IOException {
+        return createPlaylistTorrent(playlist, null, null);
+    }
+
+    /**
+     * Same as {@link #createPlaylistTorrent(Playlist)}, reporting hashing
+     * progress to {@code progressListener} and giving up with a
+     * {@link java.util.concurrent.CancellationException} once
+     * {@code cancellation} returns {@code true}. Either may be {@code null}.
+     */
+    public Path createPlaylistTorrent(Playlist playlist, TorrentBuilder.ProgressListener progressListener,
+            java.util.function.BooleanSupplier cancellation) throws IOException {
         logger.debug("Creating torrent for playlist: {}", playlist.getName());
         if (!Files.exists(getStagingRoot())) {
             Files.createDirectories(getStagingRoot());
@@ -112,35 +177,92 @@ public class TorrentService {
         }
 
         Path torrentFile = torrentsDir.resolve(playlist.getId() + ".torrent");
-        try {
-            // TTorrent creation
-            // TTorrent creation
-            java.util.List<File> files = new java.util.ArrayList<>();
-            File[] dirFiles = playlistDir.toFile().listFiles();
-            if (dirFiles != null) {
-                for (File f : dirFiles) {
-                    if (f.isFile() && !f.isHidden()) {
-                        files.add(f);
-                    }
+        java.util.List<Path> files = new java.util.ArrayList<>();
+        File[] dirFiles = playlistDir.toFile().listFiles();
+        if (dirFiles != null) {
+            for (File f : dirFiles) {
+                if (f.isFile() && !f.isHidden()) {
+                    files.add(f.toPath());
                 }
             }
+        }
 
-            if (files.isEmpty()) {
-                throw new IOException("No files found in playlist directory to create torrent");
-            }
+        if (files.isEmpty()) {
+            throw new IOException("No files found in playlist directory to create torrent");
+        }
+        // Stable order, so unchanged files keep their piece alignment across edits
+        files.sort(java.util.Comparator.comparing(path -> path.getFileName().toString()));
 
-            com.turn.ttorrent.common.Torrent.create(
-                    playlistDir.toFile(),
-                    files,
-                    new java.net.URI("udp://tracker.opentrackr.org:1337/announce"),
-                    "antigravity-creator").save(new java.io.FileOutputStream(torrentFile.toFile()));
-        } catch (Exception e) {
-            throw new IOException("Failed to create torrent", e);
+        PieceHashCache cache = getPieceHashCache();
+        try {
+            TorrentBuilder builder = new TorrentBuilder(playlistDir, files)
+                    .announce("udp://tracker.opentrackr.org:1337/announce")
+                    .createdBy("antigravity-creator")
+                    .hashCache(cache)
+                    .bytesPerSecond(estimateBytesPerSecond(playlist))
+                    .hybrid(hybridTorrents)
+                    .progressListener(progressListener)
+                    .cancellation(cancellation);
+            builder.build(torrentFile);
+            writePadFiles(playlistDir, builder.getPadFiles());
+        } finally {
+            // Also after a cancel, so the files hashed so far are not hashed again
+            savePieceHashCache(cache);
         }
 
         return torrentFile;
     }
 
+    // bt does not know BEP 47 pad files and seeds them from disk like any other file
+    private void writePadFiles(Path playlistDir, java.util.Map<Path, Long> padFiles) throws IOException {
+        for (java.util.Map.Entry<Path, Long> pad : padFiles.entrySet()) {
+            Path file = playlistDir.resolve(pad.getKey());
+            if (Files.exists(file) && Files.size(file) == pad.getValue()) {
+                continue;
+            }
+            Files.createDirectories(file.getParent());
+            Files.write(file, new byte[Math.toIntExact(pad.getValue())]);
+        }
+    }
+
+    /**
+     * Average bitrate of the playlist's tracks, from their sizes and durations
+     * where known, otherwise guessed from the file types.
+     */
+    static long estimateBytesPerSecond(Playlist playlist) {
+        long bytes = 0;
+        long seconds = 0;
+        boolean lossless = false;
+        for (Track track : playlist.getTracks()) {
+            if (track.getDurationSeconds() > 0 && track.getSizeBytes() > 0) {
+                bytes += track.getSizeBytes();
+                seconds += track.getDurationSeconds();
+            }
+            String name = track.getFilePath() == null ? "" : track.getFilePath().toLowerCase();
+            lossless |= name.endsWith(".flac") || name.endsWith(".wav");
+        }
+        if (seconds > 0) {
+            return bytes / seconds;
+        }
+        // CD audio for lossless files; FLAC is smaller, so its pieces just hold more seconds
+        return lossless ? 176_400 : TorrentBuilder.DEFAULT_BYTES_PER_SECOND;
+    }
+
+    private synchronized PieceHashCache getPieceHashCache() {
+        if (pieceHashCache == null) {
+            pieceHashCache = PieceHashCache.load(torrentsDir.resolve(PIECE_HASH_CACHE_FILE));
+        }
+        return pieceHashCache;
+    }
+
+    private synchronized void savePieceHashCache(PieceHashCache cache) {
+        try {
+            cache.save(torrentsDir.resolve(PIECE_HASH_CACHE_FILE));
+        } catch (IOException e) {
+            logger.warn("Failed to save piece hash cache: {}", e.getMessage());
+        }
+    }
+
     public void startSeeding(Playlist playlist) {
         startTorrent(playlist, false);
     }
@@ -156,6 +278,15 @@ public class TorrentService {
                 logger.info("Playlist {} is already active in the requested mode.", playlist.getName());
                 return;
             }
+            SwitchablePieceSelector selector = clientSelectors.get(playlist.getId());
+            if (selector != null) {
+                // Same session, new piece policy: peers and announces are kept
+                logger.info("Playlist {} is active in a different mode. Switching to sequential={} in place.", playlist.getName(), sequential);
+                activePlaylists.put(playlist.getId(), playlist);
+                activeModes.put(playlist.getId(), sequential);
+                selector.setDelegate(createSelector(playlist.getId(), sequential));
+                return;
+            }
             logger.info("Playlist {} is active in a different mode. Restarting in new mode (sequential={})...", playlist.getName(), sequential);
             stop(playlist.getId());
             try {
@@ -165,45 +296,69 @@ public class TorrentService {
 
         activePlaylists.put(playlist.getId(), playlist);
         activeModes.put(playlist.getId(), sequential);
+        java.util.Map<String, TrackPriority> priorities = new java.util.concurrent.ConcurrentHashMap<>();
+        for (Track track : playlist.getTracks()) {
+            priorities.put(new File(track.getFilePath()).getName(), track.getPriority());
+        }
+        if (playlist.getTracks().isEmpty()) {
+            // Imported playlists learn their tracks from metadata.json; fetch it first so priorities can be chosen
+            priorities.put("metadata.json", TrackPriority.HIGH);
+        }
+        trackPriorities.put(playlist.getId(), priorities);
 
         logger.info("Starting to {} playlist: {}", sequential ? "stream" : "seed", playlist.getName());
         Path torrentFile = Paths.get(playlist.getTorrentFilePath());
         Path dataDir = getStagingRoot().resolve(playlist.getName().replaceAll("\\s+", "_") + "_" + playlist.getId());
 
         Storage storage = getStorage(dataDir.getParent());
+        bandwidth.add(playlist.getId());
 
+        DHTModule dhtModule = null;
         java.util.List<Integer> ports = new java.util.ArrayList<>();
-        int dhtPort = findFreePort(49001, ports);
-        DHTModule dhtModule = new DHTModule(new DHTConfig() {
-            @Override
-            public boolean shouldUseRouterBootstrap() {
-                return true;
-            }
+        try {
+            if (useSharedRuntime) {
+                // DHT, acceptor and port mapping belong to the shared runtime
+                acquireSharedRuntime(playlist.getId());
+            } else {
+                dhtModule = createDhtModule(allocatePort(dhtPorts, ports));
 
-            @Override
-            public int getListeningPort() {
-                return dhtPort;
+                int acceptorPort = allocatePort(acceptorPorts, ports);
+                playlistPorts.put(playlist.getId(), ports);
+                playlistAcceptorPorts.put(playlist.getId(), acceptorPort);
+                if (enablePortMapping) {
+                    mapPortAsync(playlist.getId(), acceptorPort);
+                }
             }
-        });
-
-        int acceptorPort = findFreePort(6891, ports);
-        playlistPorts.put(playlist.getId(), ports);
-        playlistAcceptorPorts.put(playlist.getId(), acceptorPort);
-        if (enablePortMapping) {
-            mapPortAsync(playlist.getId(), acceptorPort);
+        } catch (IOException e) {
+            logger.error("Failed to start torrent client for playlist '{}': {}", playlist.getName(), e.getMessage());
+            releasePorts(ports);
+            stop(playlist.getId());
+            return;
         }
 
+        torrentPlaylistIds.put(torrentFile, playlist.getId());
         try {
-            BtClient client = buildClient(storage, dhtModule, torrentFile,
-                    sequential ? SequentialSelector.sequential() : RarestFirstSelector.randomizedRarest());
+            SwitchablePieceSelector selector = new SwitchablePieceSelector(createSelector(playlist.getId(), sequential));
+            selector.setGate(() -> bandwidth.hasAllowance(playlist.getId(),
+                    BandwidthScheduler.Direction.DOWNLOAD, System.nanoTime()));
+            clientSelectors.put(playlist.getId(), selector);
+            BtClient client = buildClient(storage, dhtModule, torrentFile, selector);
 
             activeClients.put(playlist.getId(), client);
+            RateEstimator rateEstimator = new RateEstimator();
+            rateEstimators.put(playlist.getId(), rateEstimator);
 
             CompletableFuture.runAsync(() -> {
                 try {
                     logger.info("Client started for: {}", playlist.getName());
                     client.startAsync(state -> {
                         clientStates.put(playlist.getId(), state);
+                        rateEstimator.sample(state.getDownloaded(), state.getUploaded(), System.nanoTime());
+                        chargeBandwidth(playlist.getId(), state);
+                        syncPieceMap(playlist.getId(), client, state);
+                        peerHealth.onState(playlist.getId(),
+                                state.getPiecesTotal() > 0 && state.getPiecesComplete() == state.getPiecesTotal(),
+                                state.getConnectedPeers().size(), System.currentTimeMillis());
                         java.util.Set<bt.net.ConnectionKey> peers = state.getConnectedPeers();
                         if (peers != null && !peers.isEmpty()) {
                             long now = System.currentTimeMillis();
@@ -242,10 +397,26 @@ public class TorrentService {
         return buildClient(storage, dhtModule, torrentFile, RarestFirstSelector.randomizedRarest());
     }
 
+    /**
+     * Builds the client for one torrent. {@code dhtModule} is {@code null} in
+     * shared-runtime mode, where the client attaches to the shared runtime.
+     */
     protected BtClient buildClient(Storage storage, DHTModule dhtModule, Path torrentFile, PieceSelector selector)
             throws java.net.MalformedURLException {
         String filename = torrentFile.getFileName().toString();
-        String playlistId = filename.endsWith(".torrent") ? filename.substring(0, filename.length() - 8) : filename;
+        // Imported torrents keep their original file name, so prefer the id recorded at start
+        String playlistId = torrentPlaylistIds.getOrDefault(torrentFile,
+                filename.endsWith(".torrent") ? filename.substring(0, filename.length() - 8) : filename);
+
+        bt.runtime.BtRuntime runtime = dhtModule == null ? sharedRuntime : null;
+        if (runtime != null) {
+            return Bt.client(runtime)
+                    .torrent(torrentFile.toUri().toURL())
+                    .storage(storage)
+                    .selector(selector)
+                    .afterTorrentFetched(t -> onTorrentFetched(playlistId, t))
+                    .build();
+        }
 
         int freePort = playlistAcceptorPorts.getOrDefault(playlistId, 6891);
         logger.info("Selected free acceptor port: {} for torrent client", freePort);
@@ -257,43 +428,281 @@ public class TorrentService {
             }
         };
 
-        return Bt.client()
-                .config(config)
+        // Built explicitly so the DHT and peer registry stay reachable for peer recovery
+        bt.runtime.BtRuntime ownRuntime = bt.runtime.BtRuntime.builder(config)
+                .module(dhtModule)
+                .module(this::bindUploadChoking)
+                .autoLoadModules()
+                .build();
+        clientRuntimes.put(playlistId, ownRuntime);
+        return Bt.client(ownRuntime)
                 .torrent(torrentFile.toUri().toURL())
                 .storage(storage)
-                .autoLoadModules()
-                .module(dhtModule)
                 .selector(selector)
-                .afterTorrentFetched(t -> {
-                    logger.info("Torrent metadata fetched: {}", t.getName());
-                })
+                .afterTorrentFetched(t -> onTorrentFetched(playlistId, t))
                 .build();
     }
 
+    private void bindUploadChoking(com.google.inject.Binder binder) {
+        bt.module.ProtocolModule.extend(binder).addMessagingAgent(uploadChoking);
+    }
+
+    // Charges what the session moved since the last callback: bt's own network counters tell uploads apart from verification reads
+    private void chargeBandwidth(String playlistId, TorrentSessionState state) {
+        long[] totals = { state.getDownloaded(), state.getUploaded() };
+        long[] previous = chargedTotals.put(playlistId, totals);
+        long now = System.nanoTime();
+        if (previous != null) {
+            bandwidth.reserve(playlistId, BandwidthScheduler.Direction.DOWNLOAD, Math.max(0, totals[0] - previous[0]), now);
+            bandwidth.reserve(playlistId, BandwidthScheduler.Direction.UPLOAD, Math.max(0, totals[1] - previous[1]), now);
+        }
+    }
+
+    private void onTorrentFetched(String playlistId, Torrent torrent) {
+        logger.info("Torrent metadata fetched: {}", torrent.getName());
+        torrentIdPlaylists.put(torrent.getTorrentId(), playlistId);
+        pieceMaps.put(playlistId, PieceMap.of(torrent));
+        subscribePieceVerified(playlistId, torrent);
+        StreamingPieceSelector selector = streamingSelectors.get(playlistId);
+        if (selector != null) {
+            selector.setWindowPieces(streamingWindowPieces(torrent.getChunkSize()));
+        }
+        applyTrackPriorities(playlistId);
+    }
+
+    // Publishes each verified piece to the PieceMap as it happens, instead of on the next one-second state callback
+    private void subscribePieceVerified(String playlistId, Torrent torrent) {
+        bt.metainfo.TorrentId torrentId = torrent.getTorrentId();
+        bt.runtime.BtRuntime runtime = clientRuntimes.get(playlistId);
+        if (runtime == null) {
+            // The shared runtime keeps its listeners across restarts; subscribe once per torrent
+            runtime = sharedRuntime;
+            if (runtime == null || !sharedPieceSubscriptions.add(torrentId)) {
+                return;
+            }
+        }
+        // Resolved per event, so a stopped torrent (no longer in torrentIdPlaylists) is dropped
+        runtime.getEventSource().onPieceVerified(torrentId, event -> {
+            String id = torrentIdPlaylists.get(torrentId);
+            PieceMap pieceMap = id != null ? pieceMaps.get(id) : null;
+            if (pieceMap != null) {
+                pieceMap.markComplete(event.getPieceIndex());
+            }
+        });
+    }
+
+    private PieceSelector createSelector(String playlistId, boolean sequential) {
+        FilePriorityPieceSelector prioritized = prioritySelectors.computeIfAbsent(playlistId,
+                id -> new FilePriorityPieceSelector(RarestFirstSelector.randomizedRarest()));
+        if (!sequential) {
+            streamingSelectors.remove(playlistId);
+            prefetchPlans.remove(playlistId);
+            return prioritized;
+        }
+        // A track being played is fetched whatever its priority
+        StreamingPieceSelector selector = new StreamingPieceSelector(StreamingPieceSelector.DEFAULT_WINDOW_PIECES,
+                prioritized);
+        PieceMap pieceMap = pieceMaps.get(playlistId);
+        if (pieceMap != null) {
+            // Metadata already known: switching modes on a running session
+            selector.setWindowPieces(streamingWindowPieces(pieceMap.getPieceLength()));
+        }
+        streamingSelectors.put(playlistId, selector);
+        return selector;
+    }
+
+    /**
+     * Gives the playlist being played the larger share of the bandwidth
+     * limits, or no playlist for {@code null}.
+     */
+    public void setPlayingPlaylist(String playlistId) {
+        bandwidth.setPlaying(playlistId);
+    }
+
+    /**
+     * @param bytesPerSecond total for all playlists, 0 for unlimited
+     */
+    public void setBandwidthLimit(BandwidthScheduler.Direction direction, long bytesPerSecond) {
+        bandwidth.setGlobalLimit(direction, bytesPerSecond);
+    }
+
+    /**
+     * @param bytesPerSecond cap for any one playlist, 0 for unlimited
+     */
+    public void setPerPlaylistBandwidthLimit(BandwidthScheduler.Direction direction, long bytesPerSecond) {
+        bandwidth.setPerTorrentLimit(direction, bytesPerSecond);
+    }
+
+    /**
+     * Sets the download priority of {@code trackFileName} in an active
+     * playlist. Takes effect on the client's next piece selection round;
+     * skipped tracks are no longer requested, high ones are requested before
+     * the rest.
+     */
+    public void setTrackPriority(String playlistId, String trackFileName, TrackPriority priority) {
+        trackPriorities.computeIfAbsent(playlistId, id -> new java.util.concurrent.ConcurrentHashMap<>())
+                .put(trackFileName, priority);
+        applyTrackPriorities(playlistId);
+    }
+
+    public TrackPriority getTrackPriority(String playlistId, String trackFileName) {
+        java.util.Map<String, TrackPriority> priorities = trackPriorities.get(playlistId);
+        return priorities != null ? priorities.getOrDefault(trackFileName, TrackPriority.NORMAL) : TrackPriority.NORMAL;
+    }
+
+    // Needs the piece layout, so this is repeated once the metadata arrives
+    private void applyTrackPriorities(String playlistId) {
+        PieceMap pieceMap = pieceMaps.get(playlistId);
+        FilePriorityPieceSelector selector = prioritySelectors.get(playlistId);
+        java.util.Map<String, TrackPriority> priorities = trackPriorities.get(playlistId);
+        if (pieceMap != null && selector != null && priorities != null) {
+            selector.setPriorities(pieceMap, priorities);
+        }
+    }
+
+    private static int streamingWindowPieces(long pieceLength) {
+        return (int) Math.max(4, STREAMING_WINDOW_BYTES / pieceLength);
+    }
+
+    /**
+     * Tells the streaming selector of {@code playlistId} where playback is
+     * within {@code trackFileName}, so the pieces right after it are fetched
+     * first. With {@code seek} set the offset is a seek target the player has
+     * not reached yet. Has no effect unless the playlist is streaming and its
+     * metadata is known.
+     */
+    public void updatePlayhead(String playlistId, String trackFileName, long byteOffset, boolean seek) {
+        StreamingPieceSelector selector = streamingSelectors.get(playlistId);
+        PieceMap pieceMap = pieceMaps.get(playlistId);
+        if (selector == null || pieceMap == null) {
+            return;
+        }
+        int file = pieceMap.indexOf(trackFileName);
+        if (file < 0) {
+            return;
+        }
+        long offset = Math.max(0, Math.min(byteOffset, pieceMap.getFileSize(file) - 1));
+        int piece = (int) ((pieceMap.getFileOffset(file) + offset) / pieceMap.getPieceLength());
+        if (seek) {
+            selector.setSeekTarget(piece);
+        } else if (piece != selector.getPlayhead()) {
+            selector.setPlayhead(piece);
+        }
+        if (!seek) {
+            schedulePrefetch(playlistId, selector, pieceMap, file, offset);
+        }
+    }
+
+    /**
+     * Names the track expected to play after {@code currentFileName}. Once
+     * playback passes {@link #PREFETCH_THRESHOLD} of the current track, the
+     * first {@code prefetchBytes} of {@code nextFileName} are fetched ahead of
+     * everything but the playhead, so the next track can start without
+     * buffering. A {@code null} next file cancels any pending prefetch.
+     */
+    public void setUpcomingTrack(String playlistId, String currentFileName, String nextFileName, long prefetchBytes) {
+        StreamingPieceSelector selector = streamingSelectors.get(playlistId);
+        if (selector != null) {
+            selector.clearPrefetch();
+        }
+        if (nextFileName == null || prefetchBytes <= 0) {
+            prefetchPlans.remove(playlistId);
+            return;
+        }
+        prefetchPlans.put(playlistId, new PrefetchPlan(currentFileName, nextFileName, prefetchBytes));
+    }
+
+    private void schedulePrefetch(String playlistId, StreamingPieceSelector selector, PieceMap pieceMap,
+            int file, long offset) {
+        PrefetchPlan plan = prefetchPlans.get(playlistId);
+        if (plan == null) {
+            return;
+        }
+        int current = pieceMap.indexOf(plan.currentFileName);
+        int next = pieceMap.indexOf(plan.nextFileName);
+        if (file == next || next < 0) {
+            // The next track is playing (or unknown), so its own playhead window takes over
+            prefetchPlans.remove(playlistId, plan);
+            selector.clearPrefetch();
+            return;
+        }
+        if (plan.scheduled || file != current
+                || offset < PREFETCH_THRESHOLD * pieceMap.getFileSize(current)) {
+            return;
+        }
+        plan.scheduled = true;
+        long bytes = Math.min(plan.prefetchBytes, pieceMap.getFileSize(next));
+        int first = pieceMap.getFirstPiece(next);
+        int last = (int) ((pieceMap.getFileOffset(next) + Math.max(bytes, 1) - 1) / pieceMap.getPieceLength());
+        int count = Math.min(last, pieceMap.getLastPiece(next)) - first + 1;
+        selector.setPrefetch(first, count);
+        logger.info("Prefetching {} pieces of {} for playlist {}", count, plan.nextFileName, playlistId);
+    }
+
+    private static class PrefetchPlan {
+        final String currentFileName;
+        final String nextFileName;
+        final long prefetchBytes;
+        volatile boolean scheduled = false;
+
+        PrefetchPlan(String currentFileName, String nextFileName, long prefetchBytes) {
+            this.currentFileName = currentFileName;
+            this.nextFileName = nextFileName;
+            this.prefetchBytes = prefetchBytes;
+        }
+    }
+
     public void stop(String playlistId) {
         BtClient client = activeClients.remove(playlistId);
         clientStates.remove(playlistId);
         activePlaylists.remove(playlistId);
         activeModes.remove(playlistId);
-        frozenStartTime.remove(playlistId);
+        peerHealth.remove(playlistId);
         lastLogTime.remove(playlistId);
+        pieceMaps.remove(playlistId);
+        rateEstimators.remove(playlistId);
+        streamingSelectors.remove(playlistId);
+        clientSelectors.remove(playlistId);
+        prioritySelectors.remove(playlistId);
+        trackPriorities.remove(playlistId);
+        bandwidth.remove(playlistId);
+        chargedTotals.remove(playlistId);
+        torrentIdPlaylists.values().remove(playlistId);
+        prefetchPlans.remove(playlistId);
+        torrentPlaylistIds.values().remove(playlistId);
         if (client != null) {
             client.stop();
         }
+        bt.runtime.BtRuntime ownRuntime = clientRuntimes.remove(playlistId);
+        if (ownRuntime != null) {
+            try {
+                ownRuntime.shutdown();
+            } catch (Exception e) {
+                logger.warn("Failed to shut down runtime for playlist {}: {}", playlistId, e.getMessage());
+            }
+        }
         playlistAcceptorPorts.remove(playlistId);
         java.util.List<Integer> ports = playlistPorts.remove(playlistId);
         if (ports != null) {
-            allocatedPorts.removeAll(ports);
+            releasePorts(ports);
             logger.info("Released ports {} for playlist ID: {}", ports, playlistId);
         }
 
+        releasePortMapping(playlistId);
+
+        if (sharedRuntimeClients.contains(playlistId)) {
+            releaseSharedRuntime(playlistId);
+        }
+    }
+
+    private void releasePortMapping(String key) {
         // Release UPnP port mapping if active
-        com.offbynull.portmapper.mapper.MappedPort mappedPort = activePortMappings.remove(playlistId);
-        com.offbynull.portmapper.mapper.PortMapper mapper = activePortMappers.remove(playlistId);
+        com.offbynull.portmapper.mapper.MappedPort mappedPort = activePortMappings.remove(key);
+        com.offbynull.portmapper.mapper.PortMapper mapper = activePortMappers.remove(key);
         if (mappedPort != null && mapper != null) {
             CompletableFuture.runAsync(() -> {
                 try {
-                    logger.info("Releasing UPnP/NAT-PMP port mapping for playlist {}...", playlistId);
+                    logger.info("Releasing UPnP/NAT-PMP port mapping for {}...", key);
                     mapper.unmapPort(mappedPort);
                     logger.info("UPnP/NAT-PMP port mapping released successfully.");
                 } catch (Exception e) {
@@ -303,6 +712,75 @@ public class TorrentService {
         }
     }
 
+    private DHTModule createDhtModule(int dhtPort) {
+        return new DHTModule(new DHTConfig() {
+            @Override
+            public boolean shouldUseRouterBootstrap() {
+                return true;
+            }
+
+            @Override
+            public int getListeningPort() {
+                return dhtPort;
+            }
+        });
+    }
+
+    private synchronized bt.runtime.BtRuntime acquireSharedRuntime(String playlistId) throws IOException {
+        sharedRuntimeClients.add(playlistId);
+        if (sharedRuntime != null) {
+            return sharedRuntime;
+        }
+        int dhtPort;
+        int acceptorPort;
+        try {
+            dhtPort = allocatePort(dhtPorts, sharedRuntimePorts);
+            acceptorPort = allocatePort(acceptorPorts, sharedRuntimePorts);
+        } catch (IOException e) {
+            releasePorts(sharedRuntimePorts);
+            sharedRuntimePorts.clear();
+            throw e;
+        }
+        bt.runtime.Config config = new bt.runtime.Config() {
+            @Override
+            public int getAcceptorPort() {
+                return acceptorPort;
+            }
+        };
+        // releaseSharedRuntime owns its lifetime: bt would otherwise shut it down whenever
+        // its last client stops, under a torrent that is about to attach
+        sharedRuntime = bt.runtime.BtRuntime.builder(config)
+                .module(createDhtModule(dhtPort))
+                .module(this::bindUploadChoking)
+                .autoLoadModules()
+                .disableAutomaticShutdown()
+                .build();
+        logger.info("Created shared BitTorrent runtime (DHT port {}, acceptor port {})", dhtPort, acceptorPort);
+        if (enablePortMapping) {
+            mapPortAsync(SHARED_RUNTIME_KEY, acceptorPort);
+        }
+        return sharedRuntime;
+    }
+
+    // Shuts the shared runtime down once its last torrent has stopped
+    private synchronized void releaseSharedRuntime(String playlistId) {
+        sharedRuntimeClients.remove(playlistId);
+        if (sharedRuntime == null || !sharedRuntimeClients.isEmpty()) {
+            return;
+        }
+        try {
+            sharedRuntime.shutdown();
+        } catch (Exception e) {
+            logger.warn("Failed to shut down shared BitTorrent runtime: {}", e.getMessage());
+        }
+        sharedRuntime = null;
+        sharedPieceSubscriptions.clear();
+        releasePorts(sharedRuntimePorts);
+        logger.info("Released shared runtime ports {}", sharedRuntimePorts);
+        sharedRuntimePorts.clear();
+        releasePortMapping(SHARED_RUNTIME_KEY);
+    }
+
     public void stopAll() {
         logger.info("Stopping all active torrent clients...");
         java.util.List<String> activeIds = new java.util.ArrayList<>(activeClients.keySet());
@@ -335,19 +813,38 @@ public class TorrentService {
 
         int peers = state.getConnectedPeers().size();
 
-        return new ClientStatus(progress, peers, 0, (complete == total && total > 0) ? "Seeding" : "Downloading");
+        RateEstimator rates = rateEstimators.get(playlistId);
+        double downloadSpeed = rates != null ? rates.getDownloadRate() : 0;
+        double uploadSpeed = rates != null ? rates.getUploadRate() : 0;
+
+        return new ClientStatus(progress, peers, downloadSpeed, uploadSpeed,
+                (complete == total && total > 0) ? "Seeding" : "Downloading");
+    }
+
+    /**
+     * @return the transfer-rate history of an active playlist, or {@code null}
+     *         if it is not running
+     */
+    public RateEstimator getRateEstimator(String playlistId) {
+        return rateEstimators.get(playlistId);
     }
 
     public static class ClientStatus {
         private final double progress;
         private final int peers;
         private final double downloadSpeed; // bytes/sec
+        private final double uploadSpeed; // bytes/sec
         private final String state;
 
         public ClientStatus(double progress, int peers, double downloadSpeed, String state) {
+            this(progress, peers, downloadSpeed, 0, state);
+        }
+
+        public ClientStatus(double progress, int peers, double downloadSpeed, double uploadSpeed, String state) {
             this.progress = progress;
             this.peers = peers;
             this.downloadSpeed = downloadSpeed;
+            this.uploadSpeed = uploadSpeed;
             this.state = state;
         }
 
@@ -363,6 +860,10 @@ public class TorrentService {
             return downloadSpeed;
         }
 
+        public double getUploadSpeed() {
+            return uploadSpeed;
+        }
+
         public String getState() {
             return state;
         }
@@ -407,100 +908,113 @@ public class TorrentService {
         return (i > 0) ? path.substring(i) : "";
     }
 
-    private int findFreePort(int startPort) {
-        return findFreePort(startPort, null);
+    // Never hands out a port owned by another client: an exhausted range fails the start instead
+    private int allocatePort(PortAllocator allocator, java.util.List<Integer> owned) throws IOException {
+        int port = allocator.allocate();
+        if (port < 0) {
+            throw new IOException("No free port left in " + allocator.getFirstPort() + "-"
+                    + (allocator.getFirstPort() + allocator.getPortCount() - 1));
+        }
+        owned.add(port);
+        return port;
     }
 
-    private int findFreePort(int startPort, java.util.List<Integer> reservedList) {
-        int port = startPort;
-        while (port < 65535) {
-            if (!allocatedPorts.contains(port) && (reservedList == null || !reservedList.contains(port))) {
-                boolean free = false;
-                try (java.net.ServerSocket ss = new java.net.ServerSocket()) {
-                    ss.setReuseAddress(true);
-                    ss.bind(new java.net.InetSocketAddress(port));
-                    
-                    try (java.net.DatagramSocket ds = new java.net.DatagramSocket(null)) {
-                        ds.setReuseAddress(true);
-                        ds.bind(new java.net.InetSocketAddress(port));
-                        free = true;
-                    }
-                } catch (IOException e) {
-                    // Port is in use on TCP or UDP
-                }
-                
-                if (free) {
-                    allocatedPorts.add(port);
-                    if (reservedList != null) {
-                        reservedList.add(port);
-                    }
-                    return port;
-                }
-            }
-            port++;
+    private void releasePorts(java.util.List<Integer> ports) {
+        for (int port : ports) {
+            acceptorPorts.release(port);
+            dhtPorts.release(port);
         }
-        return startPort;
     }
 
+    /**
+     * @return the ports held by an active playlist's own runtime; empty in
+     *         shared-runtime mode or when it is not running
+     */
+    public java.util.List<Integer> getPorts(String playlistId) {
+        java.util.List<Integer> ports = playlistPorts.get(playlistId);
+        return ports != null ? java.util.List.copyOf(ports) : java.util.List.of();
+    }
+
+    // Ports currently handed out across both ranges
+    int getAllocatedPortCount() {
+        return acceptorPorts.getAllocatedCount() + dhtPorts.getAllocatedCount();
+    }
+
+    /**
+     * Fraction of the pieces of {@code trackFileName} that are complete. Reads
+     * the playlist's {@link PieceMap}, so this is cheap enough to call per
+     * table cell.
+     */
     public double getTrackProgress(String playlistId, String trackFileName) {
-        BtClient client = activeClients.get(playlistId);
-        if (client == null) {
-            return 0.0;
-        }
+        PieceMap pieceMap = pieceMaps.get(playlistId);
+        return pieceMap != null ? pieceMap.getProgress(trackFileName) : 0.0;
+    }
 
-        bt.processor.torrent.TorrentContext context = getTorrentContext(client);
-        if (context == null) {
-            return 0.0;
+    /**
+     * How many bytes of {@code trackFileName} from {@code offset} on, up to
+     * {@code maxLength}, are in pieces that passed their hash check. While the
+     * playlist's client is starting or still fetching metadata nothing is
+     * verified yet, so this is 0 and readers wait in
+     * {@link #awaitTrackRange(String, String, long, long, long)}. The file on
+     * disk is only trusted, all of {@code maxLength}, for a playlist with no
+     * torrent session or a file its torrent does not have.
+     */
+    public long getVerifiedLength(String playlistId, String trackFileName, long offset, long maxLength) {
+        PieceMap pieceMap = pieceMaps.get(playlistId);
+        if (pieceMap == null) {
+            // Started but not fetched yet: the file may be sparse or preallocated
+            return activePlaylists.containsKey(playlistId) ? 0 : maxLength;
         }
+        int file = pieceMap.indexOf(trackFileName);
+        return file >= 0 ? pieceMap.verifiedLength(file, offset, maxLength) : maxLength;
+    }
 
-        Torrent torrent = context.getTorrent().orElse(null);
-        bt.data.LocalBitfield bitfield = context.getBitfield();
-        if (torrent == null || bitfield == null) {
-            return 0.0;
+    /**
+     * Blocks until bytes {@code [offset, offset + length)} of
+     * {@code trackFileName} are downloaded and verified, or
+     * {@code timeoutMillis} passes. Wakes as soon as the covering pieces are
+     * verified.
+     *
+     * @return {@code true} if the range is available; {@code false} on
+     *         timeout, before the metadata is known, or for a file the
+     *         playlist's torrent does not have
+     */
+    public boolean awaitTrackRange(String playlistId, String trackFileName, long offset, long length,
+            long timeoutMillis) throws InterruptedException {
+        PieceMap pieceMap = pieceMaps.get(playlistId);
+        int file = pieceMap != null ? pieceMap.indexOf(trackFileName) : -1;
+        if (file < 0) {
+            // Nothing to wait on yet; come back after a while
+            Thread.sleep(Math.min(timeoutMillis, METADATA_POLL_MILLIS));
+            return false;
         }
+        return pieceMap.awaitRange(file, offset, length, timeoutMillis);
+    }
 
-        TorrentFile targetFile = null;
-        for (TorrentFile f : torrent.getFiles()) {
-            java.util.List<String> pathElements = f.getPathElements();
-            String name = pathElements.isEmpty() ? "" : pathElements.get(pathElements.size() - 1);
-            if (name.equals(trackFileName)) {
-                targetFile = f;
-                break;
-            }
-        }
+    /**
+     * @return the piece layout of an active playlist's torrent, or
+     *         {@code null} until its metadata has been fetched
+     */
+    public PieceMap getPieceMap(String playlistId) {
+        return pieceMaps.get(playlistId);
+    }
 
-        if (targetFile == null) {
-            return 0.0;
+    // Runs on the client's state callback, once per second at most
+    private void syncPieceMap(String playlistId, BtClient client, TorrentSessionState state) {
+        PieceMap pieceMap = pieceMaps.get(playlistId);
+        if (pieceMap == null) {
+            return;
         }
-
-        try {
-            long chunkSize = torrent.getChunkSize();
-            long fileLength = targetFile.getSize();
-            
-            long startOffset = 0;
-            for (TorrentFile f : torrent.getFiles()) {
-                if (f == targetFile) {
-                    break;
-                }
-                startOffset += f.getSize();
-            }
-            long endOffset = startOffset + fileLength;
-            
-            int firstPiece = (int) (startOffset / chunkSize);
-            int lastPiece = (int) ((endOffset - 1) / chunkSize);
-            
-            int totalPieces = 0;
-            int completedPieces = 0;
-            for (int i = firstPiece; i <= lastPiece; i++) {
-                totalPieces++;
-                if (bitfield.isComplete(i)) {
-                    completedPieces++;
-                }
+        if (!pieceMap.isAttached()) {
+            // The bitfield is only reachable through the client internals; look it up once
+            bt.processor.torrent.TorrentContext context = getTorrentContext(client);
+            bt.data.LocalBitfield bitfield = context != null ? context.getBitfield() : null;
+            if (bitfield == null) {
+                return;
             }
-            return (totalPieces > 0) ? (double) completedPieces / totalPieces : 0.0;
-        } catch (Exception e) {
-            return 0.0;
+            pieceMap.attach(bitfield::isComplete);
         }
+        pieceMap.sync(state.getPiecesComplete());
     }
 
     private bt.processor.torrent.TorrentContext getTorrentContext(BtClient client) {
@@ -541,40 +1055,50 @@ public class TorrentService {
         return null;
     }
 
-    private void checkFrozenTorrents() {
-        for (String playlistId : activeClients.keySet()) {
-            ClientStatus status = getClientStatus(playlistId);
-            if (status == null) continue;
-
-            if ("Downloading".equals(status.getState()) && status.getProgress() < 1.0 && status.getPeers() == 0) {
-                long now = System.currentTimeMillis();
-                frozenStartTime.putIfAbsent(playlistId, now);
-                long durationSec = (now - frozenStartTime.get(playlistId)) / 1000;
-
-                logger.warn("Playlist ID: {} download is frozen (0 seeders). Frozen duration: {} seconds.", playlistId, durationSec);
+    /**
+     * @return stall statistics of {@code playlistId} since it was started
+     */
+    public PeerHealthMonitor.StallStats getStallStats(String playlistId) {
+        return peerHealth.getStats(playlistId, System.currentTimeMillis());
+    }
 
-                if (durationSec >= 15) {
-                    logger.info("Restarting frozen torrent for playlist ID: {} to re-bootstrap peer/seeder discovery.", playlistId);
-                    frozenStartTime.remove(playlistId);
-                    restartTorrent(playlistId);
-                }
-            } else {
-                frozenStartTime.remove(playlistId);
-            }
+    // Called from session callbacks; the lookup itself blocks, so run it on the monitor thread
+    private void requestPeerRecovery(String playlistId) {
+        try {
+            monitorService.execute(() -> requeryPeers(playlistId));
+        } catch (java.util.concurrent.RejectedExecutionException ignored) {
+            // Shutting down
         }
     }
 
-    private void restartTorrent(String playlistId) {
-        Playlist playlist = activePlaylists.get(playlistId);
-        Boolean sequential = activeModes.get(playlistId);
-        if (playlist != null && sequential != null) {
-            CompletableFuture.runAsync(() -> {
-                stop(playlistId);
-                try {
-                    Thread.sleep(1000);
-                } catch (InterruptedException ignored) {}
-                startTorrent(playlist, sequential);
-            });
+    /**
+     * Asks the DHT for fresh peers of a stalled torrent and hands them to the
+     * running client, instead of tearing the client down and re-announcing.
+     */
+    private void requeryPeers(String playlistId) {
+        BtClient client = activeClients.get(playlistId);
+        bt.runtime.BtRuntime runtime = clientRuntimes.get(playlistId);
+        if (runtime == null && sharedRuntimeClients.contains(playlistId)) {
+            runtime = sharedRuntime;
+        }
+        bt.processor.torrent.TorrentContext context = client != null ? getTorrentContext(client) : null;
+        if (runtime == null || context == null || !context.getTorrentId().isPresent()) {
+            return;
+        }
+        bt.metainfo.TorrentId torrentId = context.getTorrentId().get();
+        try {
+            bt.dht.DHTService dht = runtime.service(bt.dht.DHTService.class);
+            bt.peer.IPeerRegistry peerRegistry = runtime.service(bt.peer.IPeerRegistry.class);
+            java.util.concurrent.atomic.AtomicInteger found = new java.util.concurrent.atomic.AtomicInteger();
+            dht.getPeers(torrentId)
+                    .limit(50)
+                    .forEach(peer -> {
+                        peerRegistry.addPeer(torrentId, peer);
+                        found.incrementAndGet();
+                    });
+            logger.info("DHT re-query found {} peers for playlist ID: {}", found, playlistId);
+        } catch (Exception e) {
+            logger.warn("Peer re-query failed for playlist ID: {}: {}", playlistId, e.getMessage());
         }
     }
 
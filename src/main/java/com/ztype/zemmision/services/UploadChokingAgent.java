@@ -0,0 +1,73 @@
+package com.ztype.zemmision.services;
+
+import bt.metainfo.TorrentId;
+import bt.net.ConnectionState;
+import bt.protocol.Message;
+import bt.torrent.annotation.Produces;
+import bt.torrent.messaging.MessageContext;
+import com.ztype.zemmision.services.BandwidthScheduler.Direction;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Holds uploads to a playlist's upload allowance at the protocol level.
+ * <p>
+ * bt has no rate limiting of its own. This messaging agent runs on every
+ * peer connection's produce round and chokes the peers of a playlist whose
+ * {@link BandwidthScheduler} bucket is out of upload allowance, so they stop
+ * sending requests; once there is allowance again only the peers it choked
+ * are unchoked and bt's own choking takes over. Nothing blocks: bt's disk and
+ * message threads keep serving every other torrent.
+ * <p>
+ * The same round feeds each connection's byte counters to the playlist's
+ * {@link RateEstimator}, which keeps the per-peer rates.
+ */
+public class UploadChokingAgent {
+
+    private final Map<TorrentId, String> playlistIds;
+    private final BandwidthScheduler scheduler;
+    private final Map<String, RateEstimator> rateEstimators;
+    // Connections choked here, so unchoking never overrides bt's own choice
+    private final Set<ConnectionState> choked = Collections.synchronizedSet(
+            Collections.newSetFromMap(new WeakHashMap<>()));
+
+    /**
+     * @param playlistIds the playlist of each fetched torrent, kept up to date
+     *                    by the caller
+     * @param rateEstimators  the rate estimator of each running playlist, kept
+     *                        up to date by the caller
+     */
+    public UploadChokingAgent(Map<TorrentId, String> playlistIds, BandwidthScheduler scheduler,
+            Map<String, RateEstimator> rateEstimators) {
+        this.playlistIds = playlistIds;
+        this.scheduler = scheduler;
+        this.rateEstimators = rateEstimators;
+    }
+
+    @Produces
+    public void produce(Consumer<Message> messageConsumer, MessageContext context) {
+        String playlistId = context.getTorrentId().map(playlistIds::get).orElse(null);
+        if (playlistId == null) {
+            return;
+        }
+        ConnectionState connection = context.getConnectionState();
+        long now = System.nanoTime();
+        RateEstimator rates = rateEstimators.get(playlistId);
+        if (rates != null) {
+            rates.samplePeer(connection, connection.getDownloaded(), connection.getUploaded(), now);
+        }
+        if (!scheduler.hasAllowance(playlistId, Direction.UPLOAD, now)) {
+            if (!connection.isChoking()) {
+                choked.add(connection);
+                connection.setShouldChoke(Optional.of(Boolean.TRUE));
+            }
+        } else if (choked.remove(connection)) {
+            connection.setShouldChoke(Optional.of(Boolean.FALSE));
+        }
+    }
+}
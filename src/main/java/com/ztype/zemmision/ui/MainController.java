@@ -1,7 +1,10 @@
 package com.ztype.zemmision.ui;
 
 import com.ztype.zemmision.models.Playlist;
+import com.ztype.zemmision.models.PlaylistSummary;
 import com.ztype.zemmision.models.Track;
+import com.ztype.zemmision.models.TrackPriority;
+import com.ztype.zemmision.services.PlaylistRepository;
 import com.ztype.zemmision.services.PlaylistService;
 import com.ztype.zemmision.services.TorrentService;
 import javafx.beans.property.SimpleStringProperty;
@@ -13,6 +16,7 @@ import javafx.scene.control.*;
 import javafx.scene.control.cell.PropertyValueFactory;
 
 import javafx.scene.layout.VBox;
+import com.ztype.zemmision.utils.GrowingFileInputStream;
 import com.ztype.zemmision.utils.StandaloneMediaPlayer;
 import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
@@ -78,6 +82,14 @@ public class MainController {
     private TableColumn<Track, String> allTracksArtistColumn;
     @FXML
     private TableColumn<Track, String> allTracksAlbumColumn;
+    @FXML
+    private TextField songSearchField;
+    @FXML
+    private Label songsPageLabel;
+    @FXML
+    private Button previousSongsPageButton;
+    @FXML
+    private Button nextSongsPageButton;
 
     // Seeding Status Components
     @FXML
@@ -99,6 +111,8 @@ public class MainController {
     @FXML
     private Label nowPlayingArtist;
     @FXML
+    private Label nowPlayingBuffer;
+    @FXML
     private Button prevTrackButton;
     @FXML
     private Button nextTrackButton;
@@ -128,6 +142,14 @@ public class MainController {
     private boolean isMuted = false;
     private double previousVolume = 70;
 
+    // All Songs paging
+    private static final int SONGS_PAGE_SIZE = 200;
+    private int songsPageOffset = 0;
+    // Bumped per query so a slow, superseded search cannot overwrite a newer page
+    private long songsPageRequest = 0;
+    private final javafx.animation.PauseTransition songSearchDelay = new javafx.animation.PauseTransition(
+            Duration.millis(150));
+
     public void initialize() {
         logger.info("Initializing MainController...");
         playlistService = new PlaylistService();
@@ -140,6 +162,7 @@ public class MainController {
         setupIcons();
 
         refreshPlaylistList();
+        subscribeToPlaylistChanges();
         startStatusPoller();
 
         // Show generic welcome or status by default
@@ -269,7 +292,6 @@ public class MainController {
                         currentPlaylist = null;
                         playlistView.setVisible(false);
                     }
-                    refreshPlaylistList();
                 });
             }
         });
@@ -287,7 +309,7 @@ public class MainController {
             track.setTitle(event.getNewValue());
             // Save changes
             if (currentPlaylist != null) {
-                playlistService.updatePlaylist(currentPlaylist);
+                playlistService.updateTrack(currentPlaylist, track);
             }
         });
 
@@ -297,7 +319,7 @@ public class MainController {
             Track track = event.getRowValue();
             track.setArtist(event.getNewValue());
             if (currentPlaylist != null) {
-                playlistService.updatePlaylist(currentPlaylist);
+                playlistService.updateTrack(currentPlaylist, track);
             }
         });
 
@@ -307,7 +329,7 @@ public class MainController {
             Track track = event.getRowValue();
             track.setAlbum(event.getNewValue());
             if (currentPlaylist != null) {
-                playlistService.updatePlaylist(currentPlaylist);
+                playlistService.updateTrack(currentPlaylist, track);
             }
         });
 
@@ -331,6 +353,31 @@ public class MainController {
                     playTrack(rowData);
                 }
             });
+
+            Menu priorityMenu = new Menu("Download Priority");
+            ToggleGroup priorityGroup = new ToggleGroup();
+            for (TrackPriority priority : TrackPriority.values()) {
+                RadioMenuItem item = new RadioMenuItem(formatPriority(priority));
+                item.setToggleGroup(priorityGroup);
+                item.setUserData(priority);
+                item.setOnAction(e -> {
+                    Track track = row.getItem();
+                    if (track != null && currentPlaylist != null) {
+                        playlistService.setTrackPriority(currentPlaylist, track, priority);
+                        tracksTableView.refresh();
+                    }
+                });
+                priorityMenu.getItems().add(item);
+            }
+            ContextMenu contextMenu = new ContextMenu(priorityMenu);
+            contextMenu.setOnShowing(e -> {
+                Track track = row.getItem();
+                for (Toggle toggle : priorityGroup.getToggles()) {
+                    toggle.setSelected(track != null && toggle.getUserData() == track.getPriority());
+                }
+            });
+            row.contextMenuProperty().bind(javafx.beans.binding.Bindings.when(row.emptyProperty())
+                    .then((ContextMenu) null).otherwise(contextMenu));
             return row;
         });
     }
@@ -401,6 +448,13 @@ public class MainController {
             });
             return row;
         });
+
+        // Search as the user types, once typing pauses
+        songSearchDelay.setOnFinished(e -> {
+            songsPageOffset = 0;
+            loadSongsPage();
+        });
+        songSearchField.textProperty().addListener((obs, old, newVal) -> songSearchDelay.playFromStart());
     }
 
     @FXML
@@ -410,12 +464,54 @@ public class MainController {
         allSongsView.setVisible(true);
         playlistListView.getSelectionModel().clearSelection();
 
-        List<Playlist> allPlaylists = playlistService.getAllPlaylists();
-        ObservableList<Track> allTracks = FXCollections.observableArrayList();
-        for (Playlist p : allPlaylists) {
-            allTracks.addAll(p.getTracks());
+        songsPageOffset = 0;
+        loadSongsPage();
+    }
+
+    @FXML
+    private void showPreviousSongsPage() {
+        songsPageOffset = Math.max(0, songsPageOffset - SONGS_PAGE_SIZE);
+        loadSongsPage();
+    }
+
+    @FXML
+    private void showNextSongsPage() {
+        songsPageOffset += SONGS_PAGE_SIZE;
+        loadSongsPage();
+    }
+
+    private void loadSongsPage() {
+        long request = ++songsPageRequest;
+        int offset = songsPageOffset;
+        // Fetch one extra row to know whether there is a next page
+        playlistService.searchTracksAsync(songSearchField.getText(), offset, SONGS_PAGE_SIZE + 1)
+                .whenComplete((page, error) -> javafx.application.Platform.runLater(() -> {
+                    if (request != songsPageRequest) {
+                        return;
+                    }
+                    if (error != null) {
+                        logger.error("Song search failed", error);
+                        showSongsPage(offset, List.of());
+                    } else {
+                        showSongsPage(offset, page);
+                    }
+                }));
+    }
+
+    private void showSongsPage(int offset, List<Track> page) {
+        boolean hasNext = page.size() > SONGS_PAGE_SIZE;
+        if (hasNext) {
+            page = page.subList(0, SONGS_PAGE_SIZE);
+        }
+        allTracksTableView.setItems(FXCollections.observableArrayList(page));
+
+        previousSongsPageButton.setDisable(offset == 0);
+        nextSongsPageButton.setDisable(!hasNext);
+        if (page.isEmpty()) {
+            songsPageLabel.setText("No songs");
+        } else {
+            songsPageLabel.setText((offset + 1) + "-" + (offset + page.size()));
         }
-        allTracksTableView.setItems(allTracks);
     }
 
     @FXML
@@ -450,8 +546,6 @@ public class MainController {
                 }
             } catch (Exception ignored) {
             }
-
-            refreshPlaylistList();
         });
     }
 
@@ -460,9 +554,7 @@ public class MainController {
         playlistView.setVisible(true);
         allSongsView.setVisible(false);
 
-        Optional<Playlist> pOpt = playlistService.getAllPlaylists().stream()
-                .filter(p -> p.getName().equals(playlistName))
-                .findFirst();
+        Optional<Playlist> pOpt = playlistService.findPlaylistByName(playlistName);
 
         if (pOpt.isPresent()) {
             currentPlaylist = pOpt.get(); // Update VIEWED state
@@ -542,9 +634,7 @@ public class MainController {
 
         // Identify playlist and index
         // Try viewed playlist first, then playing playlist as fallback
-        Optional<Playlist> pOpt = playlistService.getAllPlaylists().stream()
-                .filter(p -> p.getName().equals(playlistTitleLabel.getText().replace(" (∞)", "")))
-                .findFirst();
+        Optional<Playlist> pOpt = playlistService.findPlaylistByName(playlistTitleLabel.getText().replace(" (∞)", ""));
 
         Playlist resolvedPlaylist = pOpt.orElse(currentPlaylist != null ? currentPlaylist : playingPlaylist);
         if (resolvedPlaylist == null) return;
@@ -603,6 +693,17 @@ public class MainController {
                 }
             });
 
+            // While the track streams, show how much is buffered; a complete track needs no indicator
+            nowPlayingBuffer.setText("");
+            mediaPlayer.bufferedSecondsProperty().addListener((obs, old, seconds) -> {
+                double buffered = seconds.doubleValue();
+                if (Double.isInfinite(buffered)) {
+                    nowPlayingBuffer.setText("");
+                    return;
+                }
+                nowPlayingBuffer.setText(buffered < 1 ? "Buffering..." : String.format("%.0fs buffered", buffered));
+            });
+
             mediaPlayer.totalDurationProperty().addListener((obs, old, duration) -> {
                 seekSlider.setMax(duration.toSeconds());
                 totalTimeLabel.setText(formatTime(duration));
@@ -610,6 +711,36 @@ public class MainController {
 
             mediaPlayer.setOnEndOfMedia(this::handleNext);
 
+            // Steer a streaming download towards what the player needs next
+            mediaPlayer.setPositionListener(new StandaloneMediaPlayer.PositionListener() {
+                @Override
+                public void positionRead(long byteOffset) {
+                    playlistService.updatePlayhead(playlistId, refreshedTrack, byteOffset, false);
+                }
+
+                @Override
+                public void seekRequested(long byteOffset) {
+                    playlistService.updatePlayhead(playlistId, refreshedTrack, byteOffset, true);
+                }
+            }, refreshedTrack.getSizeBytes());
+            // Only hand the decoder verified bytes, and wake it as soon as the piece it is waiting for verifies
+            mediaPlayer.setRangeWaiter(new GrowingFileInputStream.RangeWaiter() {
+                @Override
+                public long verifiedLength(long offset, long maxLength) {
+                    return playlistService.getVerifiedLength(playlistId, refreshedTrack, offset, maxLength);
+                }
+
+                @Override
+                public boolean await(long offset, long length, long timeoutMillis) throws InterruptedException {
+                    return playlistService.awaitTrackRange(playlistId, refreshedTrack, offset, length, timeoutMillis);
+                }
+            });
+            // Fetch the start of the next track while this one plays
+            List<Track> playingTracks = currentPlaylist.getTracks();
+            Track nextTrack = currentTrackIndex >= 0 && currentTrackIndex < playingTracks.size() - 1
+                    ? playingTracks.get(currentTrackIndex + 1) : null;
+            playlistService.prefetchNextTrack(playlistId, refreshedTrack, nextTrack);
+
             mediaPlayer.setVolume(volumeSlider.getValue() / 100.0);
             mediaPlayer.setMute(isMuted); // Apply mute state
             mediaPlayer.play();
@@ -793,14 +924,34 @@ public class MainController {
             List<File> files = fileChooser.showOpenMultipleDialog(playlistListView.getScene().getWindow());
 
             if (files != null && !files.isEmpty()) {
-                try {
-                    playlistService.createPlaylist(name, "User created playlist", files);
-                    refreshPlaylistList();
-                    showAlert("Success", "Playlist created!");
-                } catch (Exception e) {
-                    logger.error("Failed create playlist", e);
-                    showAlert("Error", e.getMessage());
-                }
+                // Hash on a worker so large playlists don't freeze the window
+                ProgressBar progressBar = new ProgressBar(0);
+                progressBar.setPrefWidth(300);
+                Alert progressAlert = new Alert(Alert.AlertType.NONE, null, ButtonType.CANCEL);
+                progressAlert.setTitle("New Playlist");
+                progressAlert.setHeaderText("Hashing tracks for '" + name + "'...");
+                progressAlert.getDialogPane().setContent(progressBar);
+
+                java.util.concurrent.CompletableFuture<Playlist> creation = playlistService.createPlaylistAsync(
+                        name, "User created playlist", files,
+                        (done, total) -> javafx.application.Platform.runLater(
+                                () -> progressBar.setProgress(total > 0 ? (double) done / total : 1.0)));
+                progressAlert.setOnHidden(e -> creation.cancel(false));
+                progressAlert.show();
+
+                creation.whenComplete((playlist, error) -> javafx.application.Platform.runLater(() -> {
+                    progressAlert.setOnHidden(null);
+                    progressAlert.close();
+                    if (creation.isCancelled()) {
+                        return;
+                    }
+                    if (error != null) {
+                        logger.error("Failed create playlist", error);
+                        showAlert("Error", error.getMessage());
+                    } else {
+                        showAlert("Success", "Playlist created!");
+                    }
+                }));
             }
         });
     }
@@ -814,7 +965,6 @@ public class MainController {
         if (f != null) {
             try {
                 playlistService.importPlaylist(f);
-                refreshPlaylistList();
                 showSeedingStatus(); // Switch to status view to show download
             } catch (Exception e) {
                 showAlert("Error", e.getMessage());
@@ -854,32 +1004,66 @@ public class MainController {
             String status = newState ? "enabled" : "disabled";
             showAlert("Success", "Permanent seeding " + status + " for " + playlistName);
 
-            // Re-enforce policy
+            // Re-enforce policy; the sidebar and header refresh from the change event
             playlistService.enforceSeedingPolicy();
-
-            // Refresh UI
-            refreshPlaylistList();
-            if (currentPlaylist != null && currentPlaylist.getId().equals(p.getId())) {
-                showPlaylist(p.getName());
-            }
         });
     }
 
     private Optional<Playlist> findPlaylist(String name) {
-        return playlistService.getAllPlaylists().stream()
-                .filter(p -> p.getName().equals(name))
-                .findFirst();
+        return playlistService.findPlaylistByName(name);
     }
 
     private void refreshPlaylistList() {
         String selectedName = playlistListView.getSelectionModel().getSelectedItem();
         playlistListView.getItems().clear();
-        playlistService.getAllPlaylists().forEach(p -> playlistListView.getItems().add(p.getName()));
+        playlistService.getPlaylistSummaries().forEach(p -> playlistListView.getItems().add(p.getName()));
         if (selectedName != null && playlistListView.getItems().contains(selectedName)) {
             playlistListView.getSelectionModel().select(selectedName);
         }
     }
 
+    private void subscribeToPlaylistChanges() {
+        playlistService.addPlaylistListener(new PlaylistRepository.PlaylistListener() {
+            @Override
+            public void playlistChanged(Playlist playlist) {
+                runOnFxThread(() -> onPlaylistChanged(playlist));
+            }
+
+            @Override
+            public void playlistRemoved(String playlistId) {
+                runOnFxThread(() -> refreshPlaylistList());
+            }
+        });
+    }
+
+    private void onPlaylistChanged(Playlist playlist) {
+        if (playlistListView.getItems().contains(playlist.getName())) {
+            playlistListView.refresh();
+        } else {
+            refreshPlaylistList(); // New or renamed playlist
+        }
+
+        if (currentPlaylist != null && currentPlaylist.getId().equals(playlist.getId())
+                && playlistView.isVisible()) {
+            String expectedTitle = playlist.isPermanentlySeeded() ? playlist.getName() + " (∞)" : playlist.getName();
+            int trackCount = playlist.getTracks() != null ? playlist.getTracks().size() : 0;
+            if (trackCount != tracksTableView.getItems().size()
+                    || !expectedTitle.equals(playlistTitleLabel.getText())) {
+                showPlaylist(playlist.getName());
+            } else {
+                tracksTableView.refresh();
+            }
+        }
+    }
+
+    private void runOnFxThread(Runnable action) {
+        if (javafx.application.Platform.isFxApplicationThread()) {
+            action.run();
+        } else {
+            javafx.application.Platform.runLater(action);
+        }
+    }
+
     private void startStatusPoller() {
         javafx.animation.Timeline timeline = new javafx.animation.Timeline(
                 new javafx.animation.KeyFrame(javafx.util.Duration.seconds(1), event -> updateStatusTable()));
@@ -889,25 +1073,14 @@ public class MainController {
 
     private void updateStatusTable() {
         ObservableList<StatusModel> data = FXCollections.observableArrayList();
-        boolean playlistListChanged = false;
-        for (Playlist p : playlistService.getAllPlaylists()) {
+        // Summaries only; served from the playlist cache once it is warm
+        for (PlaylistSummary p : playlistService.getPlaylistSummaries()) {
             TorrentService.ClientStatus status = playlistService.getTransferStatus(p.getId());
 
-            // Check if metadata needs to be refreshed (for imported playlists)
-            if (p.getTracks() == null || p.getTracks().isEmpty()) {
+            // Check if metadata needs to be refreshed (for imported playlists).
+            // A successful refresh publishes a change event that updates the views.
+            if (p.getTrackCount() == 0) {
                 playlistService.refreshMetadata(p.getId());
-                // Reload playlist from DB to see if it now has tracks
-                Playlist updated = playlistService.getAllPlaylists().stream()
-                        .filter(pl -> pl.getId().equals(p.getId()))
-                        .findFirst()
-                        .orElse(p);
-                if (updated.getTracks() != null && !updated.getTracks().isEmpty()) {
-                    playlistListChanged = true;
-                    // If this is the current playlist in view, refresh the view reference
-                    if (currentPlaylist != null && currentPlaylist.getId().equals(p.getId())) {
-                        currentPlaylist = updated;
-                    }
-                }
             }
 
             data.add(new StatusModel(
@@ -915,17 +1088,11 @@ public class MainController {
                     status.getState(),
                     String.format("%.1f%%", status.getProgress() * 100),
                     String.valueOf(status.getPeers()),
-                    String.format("%.2f KB/s", status.getDownloadSpeed() / 1024.0)));
+                    String.format("↓ %.2f / ↑ %.2f KB/s", status.getDownloadSpeed() / 1024.0,
+                            status.getUploadSpeed() / 1024.0)));
         }
         statusTable.setItems(data);
 
-        if (playlistListChanged) {
-            refreshPlaylistList();
-            if (currentPlaylist != null) {
-                showPlaylist(currentPlaylist.getName());
-            }
-        }
-
         if (playlistView.isVisible()) {
             tracksTableView.refresh();
             updatePlaylistHeaderState();
@@ -976,6 +1143,17 @@ public class MainController {
         }
     }
 
+    private static String formatPriority(TrackPriority priority) {
+        switch (priority) {
+            case SKIP:
+                return "Don't Download";
+            case HIGH:
+                return "High";
+            default:
+                return "Normal";
+        }
+    }
+
     private String formatTrackStatus(double progress, Track track) {
         if (currentPlaylist == null) return "";
         boolean isLocal = !track.getFilePath().contains("data/staging") && !track.getFilePath().contains("data\\staging");
@@ -986,6 +1164,8 @@ public class MainController {
         String state = status.getState();
         if (progress >= 1.0) {
             return "Complete (100%)";
+        } else if (track.getPriority() == TrackPriority.SKIP) {
+            return String.format("Skipped (%.1f%%)", progress * 100);
         } else if ("Stopped".equals(state)) {
             return "Stopped";
         } else {
@@ -67,16 +67,16 @@ public class PlaylistCreatorController {
 
         statusLabel.setText("Creating playlist and torrent... please wait.");
 
-        new Thread(() -> {
-            Playlist playlist = playlistService.createPlaylist(name, description, selectedFiles);
-            javafx.application.Platform.runLater(() -> {
-                if (playlist != null) {
-                    statusLabel.setText("Playlist '" + playlist.getName() + "' created and seeding!");
-                    // Ideally, refresh the player/playlist list
-                } else {
-                    statusLabel.setText("Error creating playlist.");
-                }
-            });
-        }).start();
+        playlistService.createPlaylistAsync(name, description, selectedFiles,
+                (done, total) -> javafx.application.Platform.runLater(() -> statusLabel.setText(
+                        String.format("Creating playlist and torrent... %.0f%%", total > 0 ? 100.0 * done / total : 100.0))))
+                .whenComplete((playlist, error) -> javafx.application.Platform.runLater(() -> {
+                    if (error == null && playlist != null) {
+                        statusLabel.setText("Playlist '" + playlist.getName() + "' created and seeding!");
+                        // Ideally, refresh the player/playlist list
+                    } else {
+                        statusLabel.setText("Error creating playlist.");
+                    }
+                }));
     }
 }
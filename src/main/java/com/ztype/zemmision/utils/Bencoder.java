@@ -0,0 +1,79 @@
+package com.ztype.zemmision.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Minimal bencode writer for torrent metainfo.
+ * <p>
+ * Supports {@link String} (UTF-8), {@code byte[]}, integral {@link Number}s,
+ * {@link List}s and {@link Map}s with {@link String} or {@code byte[]} keys
+ * (the latter for binary keys such as v2 piece layers). Dictionary keys are
+ * written in raw byte order, as the format requires, whatever the map's own
+ * iteration order.
+ */
+public class Bencoder {
+
+    public static byte[] encode(Object value) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        write(out, value);
+        return out.toByteArray();
+    }
+
+    private static void write(ByteArrayOutputStream out, Object value) {
+        if (value instanceof String s) {
+            writeBytes(out, s.getBytes(StandardCharsets.UTF_8));
+        } else if (value instanceof byte[] bytes) {
+            writeBytes(out, bytes);
+        } else if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            writeAscii(out, "i" + ((Number) value).longValue() + "e");
+        } else if (value instanceof List<?> list) {
+            out.write('l');
+            for (Object item : list) {
+                write(out, item);
+            }
+            out.write('e');
+        } else if (value instanceof Map<?, ?> map) {
+            byte[][] keys = new byte[map.size()][];
+            Object[] values = new Object[map.size()];
+            int i = 0;
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                if (entry.getKey() instanceof String key) {
+                    keys[i] = key.getBytes(StandardCharsets.UTF_8);
+                } else if (entry.getKey() instanceof byte[] key) {
+                    keys[i] = key;
+                } else {
+                    throw new IllegalArgumentException("Dictionary keys must be strings: " + entry.getKey());
+                }
+                values[i] = entry.getValue();
+                i++;
+            }
+            Integer[] order = new Integer[keys.length];
+            for (int k = 0; k < order.length; k++) {
+                order[k] = k;
+            }
+            Arrays.sort(order, (a, b) -> Arrays.compareUnsigned(keys[a], keys[b]));
+            out.write('d');
+            for (int k : order) {
+                writeBytes(out, keys[k]);
+                write(out, values[k]);
+            }
+            out.write('e');
+        } else {
+            throw new IllegalArgumentException("Cannot bencode " + (value == null ? "null" : value.getClass().getName()));
+        }
+    }
+
+    private static void writeBytes(ByteArrayOutputStream out, byte[] bytes) {
+        writeAscii(out, bytes.length + ":");
+        out.write(bytes, 0, bytes.length);
+    }
+
+    private static void writeAscii(ByteArrayOutputStream out, String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.US_ASCII);
+        out.write(bytes, 0, bytes.length);
+    }
+}
@@ -4,18 +4,83 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.function.LongConsumer;
 import java.util.function.Supplier;
 
-public class GrowingFileInputStream extends InputStream {
+/**
+ * Reads a file that a torrent client is still writing. Only bytes the
+ * {@link RangeWaiter} reports as verified are returned, since a preallocated
+ * or sparse file holds zeros or partly written blocks where pieces are
+ * missing. At the first unverified byte the stream blocks until the piece
+ * holding it verifies, and it reports end of stream only at the end of the
+ * complete file.
+ */
+public class GrowingFileInputStream extends InputStream implements ReadAheadInputStream.Source {
+    // Longest single wait before checking again whether the download finished
+    static final long WAIT_TIMEOUT_MILLIS = 1000;
+    // Without a waiter, how often the file is checked for more data
+    static final long POLL_MILLIS = 100;
+
+    /**
+     * Knows which bytes of the file have been downloaded and verified.
+     */
+    @FunctionalInterface
+    public interface RangeWaiter {
+        /**
+         * @return how many bytes from {@code offset} on, up to
+         *         {@code maxLength}, are verified. By default whatever is on
+         *         disk is trusted.
+         */
+        default long verifiedLength(long offset, long maxLength) {
+            return maxLength;
+        }
+
+        /**
+         * Blocks until bytes {@code [offset, offset + length)} are available
+         * or {@code timeoutMillis} passes.
+         *
+         * @return {@code true} if the range is available
+         */
+        boolean await(long offset, long length, long timeoutMillis) throws InterruptedException;
+    }
+
     private final File file;
     private final Supplier<Boolean> downloadCompleteSupplier;
+    private final LongConsumer positionListener;
+    private final RangeWaiter rangeWaiter;
     private long readOffset = 0;
     private long markOffset = 0;
     private RandomAccessFile raf;
+    private final byte[] singleByte = new byte[1];
 
     public GrowingFileInputStream(File file, Supplier<Boolean> downloadCompleteSupplier) throws IOException {
+        this(file, downloadCompleteSupplier, null);
+    }
+
+    /**
+     * @param positionListener told the file offset after every read, or
+     *                         {@code null}
+     */
+    public GrowingFileInputStream(File file, Supplier<Boolean> downloadCompleteSupplier,
+            LongConsumer positionListener) throws IOException {
+        this(file, downloadCompleteSupplier, positionListener, null);
+    }
+
+    /**
+     * @param rangeWaiter woken when more of the file is downloaded, or
+     *                    {@code null} to poll the file every
+     *                    {@link #POLL_MILLIS}
+     */
+    public GrowingFileInputStream(File file, Supplier<Boolean> downloadCompleteSupplier,
+            LongConsumer positionListener, RangeWaiter rangeWaiter) throws IOException {
         this.file = file;
         this.downloadCompleteSupplier = downloadCompleteSupplier;
+        this.positionListener = positionListener;
+        this.rangeWaiter = rangeWaiter != null ? rangeWaiter : (offset, length, timeoutMillis) -> {
+            Thread.sleep(Math.min(timeoutMillis, POLL_MILLIS));
+            return false;
+        };
         long start = System.currentTimeMillis();
         while (!file.exists()) {
             if (System.currentTimeMillis() - start > 10000) { // 10s timeout
@@ -33,34 +98,69 @@ public class GrowingFileInputStream extends InputStream {
 
     @Override
     public int read() throws IOException {
-        byte[] b = new byte[1];
-        int n = read(b, 0, 1);
+        int n = read(singleByte, 0, 1);
         if (n == -1) return -1;
-        return b[0] & 0xFF;
+        return singleByte[0] & 0xFF;
     }
 
     @Override
     public int read(byte[] b, int off, int len) throws IOException {
-        while (true) {
+        return readVerified(len, max -> {
             raf.seek(readOffset);
-            int n = raf.read(b, off, len);
-            if (n != -1) {
-                readOffset += n;
-                return n;
+            return raf.read(b, off, max);
+        });
+    }
+
+    /**
+     * Reads into {@code dst} with a positional channel read, so a direct
+     * buffer is filled without an intermediate copy. Blocks like
+     * {@link #read(byte[], int, int)}.
+     */
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        return readVerified(dst.remaining(), max -> {
+            int limit = dst.limit();
+            dst.limit(dst.position() + max);
+            try {
+                return raf.getChannel().read(dst, readOffset);
+            } finally {
+                dst.limit(limit);
             }
-            
-            if (downloadCompleteSupplier.get()) {
-                raf.seek(readOffset);
-                n = raf.read(b, off, len);
+        });
+    }
+
+    @FunctionalInterface
+    private interface Transfer {
+        // Reads at most maxBytes at readOffset; -1 at the end of the file on disk
+        int read(int maxBytes) throws IOException;
+    }
+
+    private int readVerified(int len, Transfer transfer) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        boolean ready = false;
+        boolean timedOut = false;
+        while (true) {
+            long verified = rangeWaiter.verifiedLength(readOffset, len);
+            if (verified > 0) {
+                int n = transfer.read((int) verified);
                 if (n != -1) {
                     readOffset += n;
+                    notifyPosition();
                     return n;
                 }
-                return -1; // EOF
             }
-            
+            // Nothing to read although the range is complete: end of file. The download as a whole is only
+            // asked about after a wait ran out, which also covers a torrent that was stopped.
+            if (ready || (timedOut && downloadCompleteSupplier.get())) {
+                return -1;
+            }
+
             try {
-                Thread.sleep(100);
+                // Only the piece holding the next byte is needed to make progress
+                ready = rangeWaiter.await(readOffset, 1, WAIT_TIMEOUT_MILLIS);
+                timedOut = !ready;
             } catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
                 return -1;
@@ -68,24 +168,30 @@ public class GrowingFileInputStream extends InputStream {
         }
     }
 
+    private void notifyPosition() {
+        if (positionListener != null) {
+            positionListener.accept(readOffset);
+        }
+    }
+
     @Override
     public long skip(long n) throws IOException {
         if (n <= 0) return 0;
         long skipped = 0;
         while (skipped < n) {
             long remaining = n - skipped;
-            long fileLength = file.length();
-            long available = fileLength - readOffset;
+            long available = Math.min(file.length() - readOffset, rangeWaiter.verifiedLength(readOffset, remaining));
             if (available > 0) {
                 long toSkip = Math.min(available, remaining);
                 readOffset += toSkip;
                 skipped += toSkip;
             } else {
-                if (downloadCompleteSupplier.get()) {
-                    break;
-                }
                 try {
-                    Thread.sleep(100);
+                    if (rangeWaiter.await(readOffset, 1, WAIT_TIMEOUT_MILLIS)
+                            ? file.length() <= readOffset // at the end of the complete file
+                            : downloadCompleteSupplier.get()) {
+                        break;
+                    }
                 } catch (InterruptedException e) {
                     Thread.currentThread().interrupt();
                     break;
@@ -0,0 +1,137 @@
+package com.ztype.zemmision.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+import java.util.function.LongConsumer;
+
+/**
+ * Reads a complete file through read-only memory mappings. Reads copy
+ * straight from the page cache at an absolute position: no seek, no system
+ * call and no allocation per call.
+ * <p>
+ * Only for files that no longer change: a mapping does not grow with the
+ * file. The mapping is released when the stream is garbage collected, not on
+ * {@link #close()}.
+ */
+public class MappedFileInputStream extends InputStream {
+    // A single mapping is limited to 2 GB; larger files are mapped in segments of this size
+    static final long SEGMENT_BYTES = 1L << 30;
+
+    private final long segmentBytes;
+    private final long length;
+    private final LongConsumer positionListener;
+    private MappedByteBuffer[] segments;
+    private long position = 0;
+    private long markPosition = 0;
+
+    public MappedFileInputStream(File file) throws IOException {
+        this(file, null);
+    }
+
+    /**
+     * @param positionListener told the file offset after every read, or
+     *                         {@code null}
+     */
+    public MappedFileInputStream(File file, LongConsumer positionListener) throws IOException {
+        this(file, positionListener, SEGMENT_BYTES);
+    }
+
+    // Small segments let tests cross a segment boundary without a 1 GB file
+    MappedFileInputStream(File file, LongConsumer positionListener, long segmentBytes) throws IOException {
+        this.positionListener = positionListener;
+        this.segmentBytes = segmentBytes;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            this.length = channel.size();
+            int count = (int) ((length + segmentBytes - 1) / segmentBytes);
+            this.segments = new MappedByteBuffer[count];
+            for (int i = 0; i < count; i++) {
+                long start = i * segmentBytes;
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(segmentBytes, length - start));
+            }
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        ensureOpen();
+        if (position >= length) {
+            return -1;
+        }
+        int value = segments[(int) (position / segmentBytes)].get((int) (position % segmentBytes)) & 0xFF;
+        position++;
+        notifyPosition();
+        return value;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        Objects.checkFromIndexSize(off, len, b.length);
+        ensureOpen();
+        if (len == 0) {
+            return 0;
+        }
+        if (position >= length) {
+            return -1;
+        }
+        MappedByteBuffer segment = segments[(int) (position / segmentBytes)];
+        int index = (int) (position % segmentBytes);
+        // Stops at the segment end; callers loop for more
+        int n = Math.min(len, segment.limit() - index);
+        segment.get(index, b, off, n);
+        position += n;
+        notifyPosition();
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        ensureOpen();
+        long skipped = Math.max(0, Math.min(n, length - position));
+        position += skipped;
+        return skipped;
+    }
+
+    @Override
+    public int available() throws IOException {
+        ensureOpen();
+        return (int) Math.min(Integer.MAX_VALUE, length - position);
+    }
+
+    @Override
+    public boolean markSupported() {
+        return true;
+    }
+
+    @Override
+    public synchronized void mark(int readlimit) {
+        markPosition = position;
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+        ensureOpen();
+        position = markPosition;
+    }
+
+    @Override
+    public void close() {
+        segments = null;
+    }
+
+    private void notifyPosition() {
+        if (positionListener != null) {
+            positionListener.accept(position);
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (segments == null) {
+            throw new IOException("Stream closed");
+        }
+    }
+}
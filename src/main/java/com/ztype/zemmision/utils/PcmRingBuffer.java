@@ -0,0 +1,118 @@
+package com.ztype.zemmision.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free single-producer, single-consumer byte ring between the decoder
+ * and the audio output.
+ * <p>
+ * Neither side ever blocks in here: {@link #write(byte[], int, int)} and
+ * {@link #read(byte[], int, int)} move what fits or what is there and return
+ * at once, and the caller decides how to wait. The two positions only grow;
+ * each is written by one side and published with release semantics, so the
+ * other side sees the bytes before the position that covers them.
+ */
+public class PcmRingBuffer {
+
+    private final byte[] buffer;
+    private final int mask;
+    // Bytes ever read, written only by the consumer
+    private final AtomicLong head = new AtomicLong();
+    // Bytes ever written, written only by the producer
+    private final AtomicLong tail = new AtomicLong();
+    private volatile boolean finished;
+    // Consumer-side only
+    private volatile long underruns;
+    private boolean starved = true;
+
+    /**
+     * @param minCapacity rounded up to a power of two
+     */
+    public PcmRingBuffer(int minCapacity) {
+        int capacity = Integer.highestOneBit(Math.max(2, minCapacity) - 1) << 1;
+        this.buffer = new byte[capacity];
+        this.mask = capacity - 1;
+    }
+
+    public int capacity() {
+        return buffer.length;
+    }
+
+    /**
+     * @return bytes written but not yet read
+     */
+    public int available() {
+        return (int) (tail.getAcquire() - head.getAcquire());
+    }
+
+    /**
+     * Producer: copies as much of {@code b[off, off + len)} as fits.
+     *
+     * @return bytes written, 0 if the ring is full
+     */
+    public int write(byte[] b, int off, int len) {
+        long t = tail.get();
+        int free = buffer.length - (int) (t - head.getAcquire());
+        int n = Math.min(len, free);
+        if (n <= 0) {
+            return 0;
+        }
+        int index = (int) (t & mask);
+        int first = Math.min(n, buffer.length - index);
+        System.arraycopy(b, off, buffer, index, first);
+        System.arraycopy(b, off + first, buffer, 0, n - first);
+        tail.setRelease(t + n);
+        return n;
+    }
+
+    /**
+     * Producer: no more bytes will be written.
+     */
+    public void finish() {
+        finished = true;
+    }
+
+    /**
+     * @return {@code true} once the producer called {@link #finish()}
+     */
+    public boolean isFinished() {
+        return finished;
+    }
+
+    /**
+     * Consumer: copies up to {@code len} buffered bytes into {@code b}.
+     * Finding the ring empty before it is finished, after it had data,
+     * counts as one underrun until data arrives again.
+     *
+     * @return bytes read, 0 if the ring is empty
+     */
+    public int read(byte[] b, int off, int len) {
+        long h = head.get();
+        int buffered = (int) (tail.getAcquire() - h);
+        if (buffered == 0) {
+            if (!starved && !finished) {
+                starved = true;
+                underruns++;
+            }
+            return 0;
+        }
+        starved = false;
+        int n = Math.min(len, buffered);
+        if (n <= 0) {
+            return 0;
+        }
+        int index = (int) (h & mask);
+        int first = Math.min(n, buffer.length - index);
+        System.arraycopy(buffer, index, b, off, first);
+        System.arraycopy(buffer, 0, b, off + first, n - first);
+        head.setRelease(h + n);
+        return n;
+    }
+
+    /**
+     * @return how often the consumer found the ring empty mid-stream
+     */
+    public long getUnderruns() {
+        return underruns;
+    }
+}
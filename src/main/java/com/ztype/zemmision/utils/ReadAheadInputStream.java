@@ -0,0 +1,227 @@
+package com.ztype.zemmision.utils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reads ahead of the decoder. A virtual thread fills a bounded ring of direct
+ * buffers from the {@link Source} while the reader drains them, so a slow
+ * disk read or a piece still downloading only stalls playback once the ring
+ * runs dry. {@link #getBufferedBytes()} reports how far ahead the ring is.
+ * <p>
+ * Supports {@link #mark(int)} and {@link #reset()}, which audio format
+ * detection needs, by keeping a copy of the bytes read since the mark.
+ */
+public class ReadAheadInputStream extends InputStream {
+    public static final int DEFAULT_BUFFER_BYTES = 64 * 1024;
+    public static final int DEFAULT_BUFFER_COUNT = 16;
+
+    /**
+     * Where the buffers are filled from.
+     */
+    public interface Source extends Closeable {
+        /**
+         * Reads at least one byte into {@code dst}, blocking until there is
+         * one.
+         *
+         * @return the number of bytes read, or -1 at the end
+         */
+        int read(ByteBuffer dst) throws IOException;
+    }
+
+    // Queued after the last filled buffer
+    private static final ByteBuffer END = ByteBuffer.allocate(0);
+
+    private final Source source;
+    private final BlockingQueue<ByteBuffer> free;
+    private final BlockingQueue<ByteBuffer> filled;
+    private final AtomicLong bufferedBytes = new AtomicLong();
+    private final Thread filler;
+    private volatile IOException failure;
+    private volatile boolean closed;
+    private ByteBuffer current;
+    private boolean ended;
+    private final byte[] singleByte = new byte[1];
+
+    // Bytes read since the mark, replayed after a reset; null without a mark
+    private byte[] replay;
+    private int replayCount;
+    private int replayPosition;
+    private int markLimit;
+
+    public ReadAheadInputStream(Source source) {
+        this(source, DEFAULT_BUFFER_BYTES, DEFAULT_BUFFER_COUNT);
+    }
+
+    public ReadAheadInputStream(Source source, int bufferBytes, int bufferCount) {
+        this.source = source;
+        this.free = new ArrayBlockingQueue<>(bufferCount);
+        // One more slot, so END always fits behind a full ring
+        this.filled = new ArrayBlockingQueue<>(bufferCount + 1);
+        for (int i = 0; i < bufferCount; i++) {
+            free.add(ByteBuffer.allocateDirect(bufferBytes));
+        }
+        this.filler = Thread.ofVirtual().name("read-ahead").start(this::fill);
+    }
+
+    private void fill() {
+        try {
+            while (!closed) {
+                ByteBuffer buffer = free.take();
+                buffer.clear();
+                // Hand over whatever one read returns: holding back a partial buffer would starve the reader
+                int n = source.read(buffer);
+                if (n == -1) {
+                    break;
+                }
+                buffer.flip();
+                bufferedBytes.addAndGet(n);
+                filled.put(buffer);
+            }
+        } catch (InterruptedException e) {
+            // Closed
+        } catch (IOException e) {
+            if (!closed) {
+                failure = e;
+            }
+        } finally {
+            filled.offer(END);
+        }
+    }
+
+    /**
+     * @return bytes read from the source but not yet by the caller
+     */
+    public long getBufferedBytes() {
+        return bufferedBytes.get();
+    }
+
+    @Override
+    public int read() throws IOException {
+        int n = read(singleByte, 0, 1);
+        return n == -1 ? -1 : singleByte[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        Objects.checkFromIndexSize(off, len, b.length);
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+        if (len == 0) {
+            return 0;
+        }
+        if (replay != null && replayPosition < replayCount) {
+            int n = Math.min(len, replayCount - replayPosition);
+            System.arraycopy(replay, replayPosition, b, off, n);
+            replayPosition += n;
+            return n;
+        }
+        int n = readAhead(b, off, len);
+        if (n > 0 && replay != null) {
+            record(b, off, n);
+        }
+        return n;
+    }
+
+    private int readAhead(byte[] b, int off, int len) throws IOException {
+        while (current == null || !current.hasRemaining()) {
+            if (ended) {
+                return -1;
+            }
+            if (current != null) {
+                free.offer(current);
+                current = null;
+            }
+            ByteBuffer next;
+            try {
+                next = filled.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted waiting for read-ahead");
+            }
+            if (next == END) {
+                ended = true;
+                if (failure != null) {
+                    throw new IOException("Read-ahead failed", failure);
+                }
+                return -1;
+            }
+            current = next;
+        }
+        int n = Math.min(len, current.remaining());
+        current.get(b, off, n);
+        bufferedBytes.addAndGet(-n);
+        return n;
+    }
+
+    private void record(byte[] b, int off, int n) {
+        if (replayCount + n > markLimit) {
+            // Read past the limit: the mark is no longer valid
+            replay = null;
+            replayCount = 0;
+            replayPosition = 0;
+            return;
+        }
+        if (replayCount + n > replay.length) {
+            replay = Arrays.copyOf(replay, Math.min(markLimit, Math.max(replay.length * 2, replayCount + n)));
+        }
+        System.arraycopy(b, off, replay, replayCount, n);
+        replayCount += n;
+        replayPosition = replayCount;
+    }
+
+    @Override
+    public int available() {
+        int replayed = replay != null ? replayCount - replayPosition : 0;
+        return (int) Math.min(Integer.MAX_VALUE, replayed + bufferedBytes.get());
+    }
+
+    @Override
+    public boolean markSupported() {
+        return true;
+    }
+
+    @Override
+    public synchronized void mark(int readlimit) {
+        if (replay != null && replayPosition < replayCount) {
+            // Marking while replaying: keep the bytes not yet read again
+            int remaining = replayCount - replayPosition;
+            System.arraycopy(replay, replayPosition, replay, 0, remaining);
+            replayCount = remaining;
+        } else {
+            replayCount = 0;
+        }
+        replayPosition = 0;
+        markLimit = Math.max(readlimit, replayCount);
+        if (replay == null) {
+            replay = new byte[Math.max(1, Math.min(markLimit, 8192))];
+        }
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+        if (replay == null) {
+            throw new IOException("Resetting to invalid mark");
+        }
+        replayPosition = 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        filler.interrupt();
+        source.close();
+    }
+}
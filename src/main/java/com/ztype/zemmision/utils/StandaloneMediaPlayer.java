@@ -10,8 +10,8 @@ import org.slf4j.LoggerFactory;
 public class StandaloneMediaPlayer {
     private static final Logger logger = LoggerFactory.getLogger(StandaloneMediaPlayer.class);
 
-    private Thread playbackThread;
-    private SourceDataLine line;
+    private volatile Thread playbackThread;
+    private volatile SourceDataLine line;
     private AudioInputStream baseStream;
     private AudioInputStream decodedStream;
     
@@ -33,7 +33,36 @@ public class StandaloneMediaPlayer {
             new javafx.beans.property.SimpleObjectProperty<>(javafx.util.Duration.ZERO);
 
     private java.util.function.Supplier<Boolean> downloadCompleteSupplier;
+    // Where the next run starts; taken by startPlaybackThread()
     private double seekSeconds = 0;
+    private PositionListener positionListener;
+    private long expectedLength = 0;
+    private GrowingFileInputStream.RangeWaiter rangeWaiter;
+    // Set while a track that is still downloading plays
+    private volatile ReadAheadInputStream readAhead;
+    private final javafx.beans.property.DoubleProperty bufferedSeconds =
+            new javafx.beans.property.SimpleDoubleProperty(0);
+
+    // Decoded audio held between the decoder and the output thread
+    private static final double RING_SECONDS = 2.0;
+    private static final long RING_WAIT_NANOS = 2_000_000;
+    // How often the output thread publishes the position to the UI
+    private static final long UI_UPDATE_NANOS = 100_000_000;
+    private volatile PcmRingBuffer pcmRing;
+    private volatile long decoderUnderruns;
+    private volatile long outputUnderruns;
+
+    /**
+     * Receives the byte offsets of the source file that playback needs, so a
+     * download can fetch them first.
+     */
+    public interface PositionListener {
+        /** The decoder has read up to {@code byteOffset}. */
+        void positionRead(long byteOffset);
+
+        /** A seek will continue playback at about {@code byteOffset}. */
+        void seekRequested(long byteOffset);
+    }
 
     public StandaloneMediaPlayer(File file) {
         this(file, () -> true);
@@ -77,6 +106,27 @@ public class StandaloneMediaPlayer {
         return totalDuration;
     }
 
+    /**
+     * Seconds of the track read ahead of the decoder while it streams;
+     * {@link Double#POSITIVE_INFINITY} for a complete track, which never has
+     * to wait.
+     */
+    public javafx.beans.property.ReadOnlyDoubleProperty bufferedSecondsProperty() {
+        return bufferedSeconds;
+    }
+
+    private double getBufferedSeconds() {
+        ReadAheadInputStream stream = readAhead;
+        if (stream == null) {
+            return Double.POSITIVE_INFINITY;
+        }
+        long length = Math.max(expectedLength, currentFile.length());
+        if (durationSeconds <= 0 || length <= 0) {
+            return 0;
+        }
+        return stream.getBufferedBytes() / (length / durationSeconds);
+    }
+
     public javafx.util.Duration getCurrentTime() {
         return currentTime.get();
     }
@@ -85,6 +135,23 @@ public class StandaloneMediaPlayer {
         this.onEndOfMedia = onEndOfMedia;
     }
 
+    /**
+     * @param expectedLength full size of the file once downloaded, used to
+     *                       estimate where a seek lands; 0 if unknown
+     */
+    public void setPositionListener(PositionListener positionListener, long expectedLength) {
+        this.positionListener = positionListener;
+        this.expectedLength = expectedLength;
+    }
+
+    /**
+     * Sets what playback blocks on when it catches up with the download,
+     * instead of polling the file.
+     */
+    public void setRangeWaiter(GrowingFileInputStream.RangeWaiter rangeWaiter) {
+        this.rangeWaiter = rangeWaiter;
+    }
+
     public void setVolume(double vol) {
         this.volume = (float) Math.max(0.0, Math.min(1.0, vol));
         if (line != null && line.isControlSupported(FloatControl.Type.MASTER_GAIN)) {
@@ -129,13 +196,52 @@ public class StandaloneMediaPlayer {
         startPlaybackThread();
     }
 
+    // Fully downloaded and verified: nothing to wait for, so the file can be memory-mapped
+    private boolean isTrackComplete() {
+        long length = currentFile.length();
+        if (length == 0 || length < expectedLength) {
+            return false;
+        }
+        if (rangeWaiter != null) {
+            return rangeWaiter.verifiedLength(0, length) >= length;
+        }
+        return downloadCompleteSupplier.get();
+    }
+
+    // Each run owns its thread, streams and line; a run that outlived stopThread() is no longer current and leaves shared state alone
+    private boolean isCurrent(Thread runner) {
+        return playbackThread == runner;
+    }
+
+    private boolean isActive(Thread runner) {
+        return isPlaying && playbackThread == runner;
+    }
+
     private void startPlaybackThread() {
+        double startSeconds = seekSeconds;
+        seekSeconds = 0;
         playbackThread = new Thread(() -> {
+            Thread runner = Thread.currentThread();
+            AudioInputStream runBase = null;
+            AudioInputStream runDecoded = null;
+            ReadAheadInputStream runAhead = null;
+            SourceDataLine runLine = null;
             try {
-                baseStream = AudioSystem.getAudioInputStream(
-                    new GrowingFileInputStream(currentFile, downloadCompleteSupplier)
-                );
-                AudioFormat baseFormat = baseStream.getFormat();
+                PositionListener listener = positionListener;
+                java.util.function.LongConsumer positionRead = listener != null ? listener::positionRead : null;
+                java.io.InputStream source;
+                if (isTrackComplete()) {
+                    source = new MappedFileInputStream(currentFile, positionRead);
+                } else {
+                    runAhead = new ReadAheadInputStream(
+                            new GrowingFileInputStream(currentFile, downloadCompleteSupplier, positionRead, rangeWaiter));
+                    source = runAhead;
+                    if (isCurrent(runner)) {
+                        readAhead = runAhead;
+                    }
+                }
+                runBase = AudioSystem.getAudioInputStream(source);
+                AudioFormat baseFormat = runBase.getFormat();
                 AudioFormat decodedFormat = new AudioFormat(
                         AudioFormat.Encoding.PCM_SIGNED,
                         baseFormat.getSampleRate(),
@@ -144,75 +250,216 @@ public class StandaloneMediaPlayer {
                         baseFormat.getChannels() * 2,
                         baseFormat.getSampleRate(),
                         false);
-                decodedStream = AudioSystem.getAudioInputStream(decodedFormat, baseStream);
+                runDecoded = AudioSystem.getAudioInputStream(decodedFormat, runBase);
+                if (!isCurrent(runner)) {
+                    return;
+                }
+                // Published so stopThread() can close them and unblock a decoder waiting for pieces
+                baseStream = runBase;
+                decodedStream = runDecoded;
 
                 DataLine.Info info = new DataLine.Info(SourceDataLine.class, decodedFormat);
-                line = (SourceDataLine) AudioSystem.getLine(info);
-                line.open(decodedFormat);
-                line.start();
+                runLine = (SourceDataLine) AudioSystem.getLine(info);
+                runLine.open(decodedFormat);
+                runLine.start();
+                line = runLine;
+                if (!isCurrent(runner)) {
+                    return;
+                }
                 setVolume(volume);
 
-                if (seekSeconds > 0) {
-                    long byteOffset = (long) (seekSeconds * decodedFormat.getSampleRate() * decodedFormat.getFrameSize());
+                if (startSeconds > 0) {
+                    long byteOffset = (long) (startSeconds * decodedFormat.getSampleRate() * decodedFormat.getFrameSize());
                     byteOffset = (byteOffset / decodedFormat.getFrameSize()) * decodedFormat.getFrameSize();
 
                     // Must read-and-discard (not skip) for compressed formats like MP3,
                     // because skip() may return 0 when the decoder hasn't produced data yet.
                     long discarded = 0;
                     byte[] skipBuf = new byte[8192];
-                    while (discarded < byteOffset) {
+                    while (discarded < byteOffset && isActive(runner)) {
                         int toRead = (int) Math.min(skipBuf.length, byteOffset - discarded);
-                        int n = decodedStream.read(skipBuf, 0, toRead);
+                        int n = runDecoded.read(skipBuf, 0, toRead);
                         if (n <= 0) break;
                         discarded += n;
                     }
                     currentDecodedBytesRead = discarded;
-                    seekSeconds = 0;
                 }
 
-                byte[] buffer = new byte[4096];
-                int nBytesRead;
-                while (isPlaying) {
-                    synchronized (pauseLock) {
-                        while (isPaused && isPlaying) {
-                            line.stop();
-                            pauseLock.wait();
-                            if (isPlaying && !isPaused) {
-                                line.start();
+                // Decode into the ring; the output thread feeds the line from it
+                PcmRingBuffer ring = new PcmRingBuffer(
+                        (int) (decodedFormat.getSampleRate() * decodedFormat.getFrameSize() * RING_SECONDS));
+                pcmRing = ring;
+                SourceDataLine outputLine = runLine;
+                Thread output = new Thread(() -> feedLine(ring, decodedFormat, outputLine, runner),
+                        "standalone-player-output");
+                output.setDaemon(true);
+                output.setPriority(Thread.MAX_PRIORITY);
+                output.start();
+                boolean decodedAll = false;
+                try {
+                    byte[] buffer = new byte[4096];
+                    int nBytesRead;
+                    decode:
+                    while (isActive(runner) && (nBytesRead = runDecoded.read(buffer, 0, buffer.length)) != -1) {
+                        int written = 0;
+                        while (written < nBytesRead) {
+                            if (!isActive(runner)) {
+                                break decode;
+                            }
+                            int n = ring.write(buffer, written, nBytesRead - written);
+                            if (n == 0) {
+                                awaitRingSpace(runner);
                             }
+                            written += n;
+                        }
+                    }
+                    decodedAll = isActive(runner);
+                } finally {
+                    if (!decodedAll && isCurrent(runner)) {
+                        isPlaying = false;
+                    }
+                    ring.finish();
+                    output.join();
+                    decoderUnderruns += ring.getUnderruns();
+                    if (isCurrent(runner)) {
+                        pcmRing = null;
+                    }
+                }
+            } catch (Exception e) {
+                if (isCurrent(runner)) {
+                    logger.error("Error during playback", e);
+                    isPlaying = false;
+                }
+            } finally {
+                closeQuietly(runDecoded);
+                closeQuietly(runBase);
+                closeQuietly(runAhead);
+                if (isCurrent(runner)) {
+                    readAhead = null;
+                    currentDecodedBytesRead = 0;
+                } else if (runLine != null) {
+                    // Superseded: the new run has or opens its own line
+                    runLine.close();
+                }
+            }
+        }, "standalone-player-thread");
+        playbackThread.setDaemon(true);
+        playbackThread.start();
+    }
+
+    // Full ring: the output is at least RING_SECONDS behind, or paused, in which case wait for play() instead of polling
+    private void awaitRingSpace(Thread runner) throws InterruptedException {
+        synchronized (pauseLock) {
+            while (isPaused && isActive(runner)) {
+                pauseLock.wait();
+            }
+        }
+        java.util.concurrent.locks.LockSupport.parkNanos(RING_WAIT_NANOS);
+    }
+
+    private static void closeQuietly(java.io.Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    // Output stage: plays what the decoder has produced, so a slow decode only becomes audible once the ring is empty
+    private void feedLine(PcmRingBuffer ring, AudioFormat format, SourceDataLine line, Thread runner) {
+        int frameSize = format.getFrameSize();
+        double bytesPerSecond = format.getSampleRate() * frameSize;
+        byte[] buffer = new byte[4096];
+        long lastUpdate = 0;
+        boolean lineStarved = true;
+        try {
+            while (isActive(runner)) {
+                synchronized (pauseLock) {
+                    while (isPaused && isActive(runner)) {
+                        line.stop();
+                        pauseLock.wait();
+                        if (isActive(runner) && !isPaused) {
+                            line.start();
                         }
                     }
+                }
 
-                    if (!isPlaying) break;
+                if (!isActive(runner)) break;
 
-                    nBytesRead = decodedStream.read(buffer, 0, buffer.length);
-                    if (nBytesRead == -1) {
+                // Whole frames only: the decoder's chunk may be half in the ring
+                int n = ring.read(buffer, 0, Math.min(buffer.length, ring.available()) / frameSize * frameSize);
+                if (n == 0) {
+                    if (ring.isFinished() && ring.available() < frameSize) {
                         break;
                     }
+                    if (!lineStarved && line.available() >= line.getBufferSize()) {
+                        // The line played everything it had: this one is audible
+                        lineStarved = true;
+                        outputUnderruns++;
+                    }
+                    java.util.concurrent.locks.LockSupport.parkNanos(RING_WAIT_NANOS);
+                    continue;
+                }
 
-                    line.write(buffer, 0, nBytesRead);
-                    currentDecodedBytesRead += nBytesRead;
-
-                    double currentSec = (double) currentDecodedBytesRead / (decodedFormat.getSampleRate() * decodedFormat.getFrameSize());
-                    javafx.application.Platform.runLater(() -> currentTime.set(javafx.util.Duration.seconds(currentSec)));
+                line.write(buffer, 0, n);
+                lineStarved = false;
+                currentDecodedBytesRead += n;
+
+                long now = System.nanoTime();
+                if (now - lastUpdate >= UI_UPDATE_NANOS) {
+                    lastUpdate = now;
+                    double currentSec = currentDecodedBytesRead / bytesPerSecond;
+                    double buffered = getBufferedSeconds();
+                    javafx.application.Platform.runLater(() -> {
+                        currentTime.set(javafx.util.Duration.seconds(currentSec));
+                        bufferedSeconds.set(buffered);
+                    });
                 }
+            }
 
-                if (isPlaying) {
-                    line.drain();
-                    isPlaying = false;
-                    if (onEndOfMedia != null) {
-                        javafx.application.Platform.runLater(onEndOfMedia);
+            if (isActive(runner)) {
+                line.drain();
+                synchronized (this) {
+                    // A seek or stop during the drain started or ended another run: not the end of the track
+                    if (!isActive(runner)) {
+                        return;
                     }
+                    isPlaying = false;
                 }
-            } catch (Exception e) {
-                logger.error("Error during playback", e);
+                logger.debug("Finished {}: {} decoder underruns, {} audible underruns", currentFile.getName(),
+                        getDecoderUnderruns(), outputUnderruns);
+                if (onEndOfMedia != null) {
+                    javafx.application.Platform.runLater(onEndOfMedia);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            if (isCurrent(runner)) {
                 isPlaying = false;
-            } finally {
-                cleanup();
             }
-        }, "standalone-player-thread");
-        playbackThread.setDaemon(true);
-        playbackThread.start();
+        } catch (Exception e) {
+            if (isCurrent(runner)) {
+                logger.error("Error during audio output", e);
+                isPlaying = false;
+            }
+        }
+    }
+
+    /**
+     * @return how often playback found no decoded audio waiting, although the
+     *         line may still have had enough queued to cover it
+     */
+    public long getDecoderUnderruns() {
+        PcmRingBuffer ring = pcmRing;
+        return decoderUnderruns + (ring != null ? ring.getUnderruns() : 0);
+    }
+
+    /**
+     * @return how often the audio line ran dry mid-track: audible gaps
+     */
+    public long getOutputUnderruns() {
+        return outputUnderruns;
     }
 
     public void pause() {
@@ -240,26 +487,31 @@ public class StandaloneMediaPlayer {
 
     private void stopThread() {
         isPlaying = false;
+        // No longer current: a run still blocked on pieces after the join below cannot touch the next one
+        Thread runner = playbackThread;
+        playbackThread = null;
         synchronized (pauseLock) {
             isPaused = false;
             pauseLock.notifyAll();
         }
-        if (playbackThread != null) {
+        cleanup();
+        if (runner != null) {
             try {
-                playbackThread.join(500);
+                runner.join(500);
             } catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
             }
-            playbackThread = null;
         }
-        cleanup();
     }
 
     private void cleanup() {
         try {
             if (decodedStream != null) decodedStream.close();
             if (baseStream != null) baseStream.close();
+            // Also stops the read-ahead thread when format detection failed before baseStream was set
+            if (readAhead != null) readAhead.close();
         } catch (IOException ignored) {}
+        readAhead = null;
         currentDecodedBytesRead = 0;
     }
 
@@ -267,6 +519,10 @@ public class StandaloneMediaPlayer {
         if (currentFile == null) return;
         double seconds = duration.toSeconds();
         seekSeconds = seconds;
+        if (positionListener != null && durationSeconds > 0) {
+            long length = Math.max(expectedLength, currentFile.length());
+            positionListener.seekRequested((long) (Math.min(1.0, seconds / durationSeconds) * length));
+        }
         boolean wasPlaying = isPlaying && !isPaused;
 
         stopThread();
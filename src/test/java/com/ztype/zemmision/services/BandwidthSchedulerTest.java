@@ -0,0 +1,111 @@
+package com.ztype.zemmision.services;
+
+import com.ztype.zemmision.services.BandwidthScheduler.Direction;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BandwidthSchedulerTest {
+
+    private static final long SECOND = 1_000_000_000L;
+
+    @Test
+    void testUnlimitedNeverWaits() {
+        BandwidthScheduler scheduler = new BandwidthScheduler();
+        scheduler.add("a");
+        assertEquals(0, scheduler.reserve("a", Direction.DOWNLOAD, 100_000_000, 0));
+        assertEquals(0, scheduler.reserve("a", Direction.UPLOAD, 100_000_000, 1));
+        assertEquals(Long.MAX_VALUE, scheduler.getAllowance("a", Direction.DOWNLOAD));
+    }
+
+    @Test
+    void testPerTorrentLimitPacesTransfers() {
+        BandwidthScheduler scheduler = new BandwidthScheduler();
+        scheduler.setPerTorrentLimit(Direction.UPLOAD, 100_000);
+        scheduler.add("a");
+
+        // Half a second of burst passes straight away, the next second has to wait
+        assertEquals(0, scheduler.reserve("a", Direction.UPLOAD, 50_000, 0));
+        assertEquals(SECOND, scheduler.reserve("a", Direction.UPLOAD, 100_000, 0));
+        // Downloads are not limited
+        assertEquals(0, scheduler.reserve("a", Direction.DOWNLOAD, 10_000_000, 0));
+    }
+
+    @Test
+    void testPlayingPlaylistGetsLargerShare() {
+        BandwidthScheduler scheduler = new BandwidthScheduler();
+        scheduler.setGlobalLimit(Direction.DOWNLOAD, 300_000);
+        scheduler.add("a");
+        scheduler.add("b");
+        // Both want more than there is
+        scheduler.reserve("a", Direction.DOWNLOAD, 1_000_000, 0);
+        scheduler.reserve("b", Direction.DOWNLOAD, 1_000_000, 0);
+        scheduler.reserve("a", Direction.DOWNLOAD, 0, SECOND);
+        assertEquals(150_000, scheduler.getAllowance("a", Direction.DOWNLOAD));
+        assertEquals(150_000, scheduler.getAllowance("b", Direction.DOWNLOAD));
+
+        scheduler.setPlaying("a");
+        scheduler.reserve("a", Direction.DOWNLOAD, 0, SECOND);
+        assertEquals(266_666, scheduler.getAllowance("a", Direction.DOWNLOAD));
+        assertEquals(33_333, scheduler.getAllowance("b", Direction.DOWNLOAD));
+    }
+
+    @Test
+    void testUnusedShareGoesToBusyTorrents() {
+        BandwidthScheduler scheduler = new BandwidthScheduler();
+        scheduler.setGlobalLimit(Direction.UPLOAD, 300_000);
+        scheduler.add("idle");
+        scheduler.add("busy");
+        scheduler.reserve("idle", Direction.UPLOAD, 0, 0);
+        scheduler.reserve("busy", Direction.UPLOAD, 0, 0);
+
+        scheduler.reserve("idle", Direction.UPLOAD, 10_000, SECOND / 2);
+        assertTrue(scheduler.reserve("busy", Direction.UPLOAD, 1_000_000, SECOND / 2) > 0);
+        scheduler.reserve("busy", Direction.UPLOAD, 0, SECOND);
+
+        long idle = scheduler.getAllowance("idle", Direction.UPLOAD);
+        assertEquals((long) BandwidthScheduler.MIN_DEMAND, idle);
+        assertEquals(300_000 - idle, scheduler.getAllowance("busy", Direction.UPLOAD));
+    }
+
+    @Test
+    void testPerTorrentLimitAppliesWithinGlobalShare() {
+        BandwidthScheduler scheduler = new BandwidthScheduler();
+        scheduler.setGlobalLimit(Direction.DOWNLOAD, 1_000_000);
+        scheduler.setPerTorrentLimit(Direction.DOWNLOAD, 200_000);
+        scheduler.add("a");
+        scheduler.add("b");
+        scheduler.reserve("a", Direction.DOWNLOAD, 0, 0);
+        scheduler.reserve("b", Direction.DOWNLOAD, 0, 0);
+        scheduler.reserve("a", Direction.DOWNLOAD, 0, 0);
+
+        assertEquals(200_000, scheduler.getAllowance("a", Direction.DOWNLOAD));
+        assertEquals(200_000, scheduler.getAllowance("b", Direction.DOWNLOAD));
+    }
+
+    @Test
+    void testNoAllowanceWhileInDebt() {
+        BandwidthScheduler scheduler = new BandwidthScheduler();
+        scheduler.setPerTorrentLimit(Direction.DOWNLOAD, 100_000);
+        scheduler.add("a");
+
+        assertTrue(scheduler.hasAllowance("a", Direction.DOWNLOAD, 0));
+        // Charged after the fact: the bucket goes into debt instead of blocking
+        assertEquals(SECOND, scheduler.reserve("a", Direction.DOWNLOAD, 150_000, 0));
+        assertFalse(scheduler.hasAllowance("a", Direction.DOWNLOAD, SECOND / 2));
+        assertTrue(scheduler.hasAllowance("a", Direction.DOWNLOAD, SECOND + 1));
+    }
+
+    @Test
+    void testRemovedTorrentIsNotRecreated() {
+        BandwidthScheduler scheduler = new BandwidthScheduler();
+        scheduler.setPerTorrentLimit(Direction.UPLOAD, 100_000);
+        scheduler.add("a");
+        scheduler.remove("a");
+
+        // Late charges from a stopped torrent are ignored
+        assertEquals(0, scheduler.reserve("a", Direction.UPLOAD, 1_000_000, 0));
+        assertTrue(scheduler.hasAllowance("a", Direction.UPLOAD, 0));
+        assertEquals(Long.MAX_VALUE, scheduler.getAllowance("a", Direction.UPLOAD));
+    }
+}
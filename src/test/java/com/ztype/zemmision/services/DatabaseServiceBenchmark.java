@@ -0,0 +1,149 @@
+package com.ztype.zemmision.services;
+
+import com.ztype.zemmision.models.Playlist;
+import com.ztype.zemmision.models.Track;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the pooled {@link DatabaseService} with the previous
+ * open-a-connection-per-call approach on a library of thousands of playlists.
+ * <p>
+ * Run with {@code java -cp target/test-classes:<test classpath>
+ * com.ztype.zemmision.services.DatabaseServiceBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DatabaseServiceBenchmark {
+
+    @Param({"2000"})
+    public int playlistCount;
+
+    private Path dbFile;
+    private String dbUrl;
+    private DatabaseService pooled;
+    private final List<Playlist> library = new ArrayList<>();
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        dbFile = Files.createTempFile("zemmision-bench", ".db");
+        dbUrl = "jdbc:sqlite:" + dbFile.toAbsolutePath();
+        pooled = new DatabaseService(dbUrl);
+        for (int i = 0; i < playlistCount; i++) {
+            Playlist playlist = new Playlist("Playlist " + i, "Benchmark playlist");
+            List<Track> tracks = new ArrayList<>();
+            for (int t = 0; t < 12; t++) {
+                Track track = new Track("Track " + t, "/music/" + i + "/" + t + ".mp3", 200, 6_000_000);
+                track.setArtist("Artist " + (i % 50));
+                track.setAlbum("Album " + (i % 200));
+                tracks.add(track);
+            }
+            playlist.setTracks(tracks);
+            library.add(playlist);
+            pooled.savePlaylist(playlist);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        pooled.close();
+        Files.deleteIfExists(dbFile);
+        Files.deleteIfExists(Path.of(dbFile + "-wal"));
+        Files.deleteIfExists(Path.of(dbFile + "-shm"));
+    }
+
+    private Playlist randomPlaylist() {
+        return library.get(ThreadLocalRandom.current().nextInt(library.size()));
+    }
+
+    @Benchmark
+    public int pooledGetAllPlaylists() {
+        return pooled.getAllPlaylists().size();
+    }
+
+    @Benchmark
+    public int openPerCallGetAllPlaylists() throws SQLException {
+        int count = 0;
+        try (Connection conn = DriverManager.getConnection(dbUrl);
+                Statement stmt = conn.createStatement()) {
+            try (ResultSet rs = stmt.executeQuery("SELECT * FROM playlists")) {
+                while (rs.next()) {
+                    count++;
+                }
+            }
+            try (ResultSet rs = stmt.executeQuery("SELECT * FROM tracks ORDER BY playlist_id, position")) {
+                while (rs.next()) {
+                    new Track(rs.getString("title"), rs.getString("file_path"),
+                            rs.getLong("duration_seconds"), rs.getLong("size_bytes"));
+                }
+            }
+        }
+        return count;
+    }
+
+    @Benchmark
+    public void pooledSavePlaylist() {
+        Playlist playlist = randomPlaylist();
+        playlist.setLastPlayed(System.currentTimeMillis());
+        pooled.savePlaylist(playlist);
+    }
+
+    @Benchmark
+    public void openPerCallSavePlaylist() throws SQLException {
+        Playlist playlist = randomPlaylist();
+        playlist.setLastPlayed(System.currentTimeMillis());
+        try (Connection conn = DriverManager.getConnection(dbUrl)) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement pstmt = conn.prepareStatement(
+                    "UPDATE playlists SET name = ?, description = ?, last_played = ? WHERE id = ?")) {
+                pstmt.setString(1, playlist.getName());
+                pstmt.setString(2, playlist.getDescription());
+                pstmt.setLong(3, playlist.getLastPlayed());
+                pstmt.setString(4, playlist.getId());
+                pstmt.executeUpdate();
+            }
+            try (PreparedStatement pstmt = conn.prepareStatement("DELETE FROM tracks WHERE playlist_id = ?")) {
+                pstmt.setString(1, playlist.getId());
+                pstmt.executeUpdate();
+            }
+            try (PreparedStatement pstmt = conn.prepareStatement(
+                    "INSERT INTO tracks(playlist_id, position, title, file_path, duration_seconds, size_bytes, artist, album) VALUES(?, ?, ?, ?, ?, ?, ?, ?)")) {
+                List<Track> tracks = playlist.getTracks();
+                for (int i = 0; i < tracks.size(); i++) {
+                    Track track = tracks.get(i);
+                    pstmt.setString(1, playlist.getId());
+                    pstmt.setInt(2, i);
+                    pstmt.setString(3, track.getTitle());
+                    pstmt.setString(4, track.getFilePath());
+                    pstmt.setLong(5, track.getDurationSeconds());
+                    pstmt.setLong(6, track.getSizeBytes());
+                    pstmt.setString(7, track.getArtist());
+                    pstmt.setString(8, track.getAlbum());
+                    pstmt.addBatch();
+                }
+                pstmt.executeBatch();
+            }
+            conn.commit();
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(DatabaseServiceBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,296 @@
+package com.ztype.zemmision.services;
+
+import com.ztype.zemmision.models.Playlist;
+import com.ztype.zemmision.models.PlaylistSummary;
+import com.ztype.zemmision.models.Track;
+import com.ztype.zemmision.models.TrackPriority;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DatabaseServiceTest {
+
+    private Path dbFile;
+    private DatabaseService databaseService;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        dbFile = Files.createTempFile("zemmision-test", ".db");
+        databaseService = new DatabaseService("jdbc:sqlite:" + dbFile.toAbsolutePath());
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        databaseService.close();
+        Files.deleteIfExists(dbFile);
+        Files.deleteIfExists(Path.of(dbFile + "-wal"));
+        Files.deleteIfExists(Path.of(dbFile + "-shm"));
+    }
+
+    private Playlist newPlaylist(String name, int trackCount) {
+        Playlist playlist = new Playlist(name, "Desc");
+        List<Track> tracks = new ArrayList<>();
+        for (int i = 0; i < trackCount; i++) {
+            Track track = new Track("Track " + i, "/tmp/" + name + "/" + i + ".mp3", 180, 1024);
+            track.setArtist("Artist " + i);
+            track.setAlbum("Album");
+            tracks.add(track);
+        }
+        playlist.setTracks(tracks);
+        return playlist;
+    }
+
+    @Test
+    void testSaveAndLoadRoundTrip() {
+        Playlist playlist = newPlaylist("Round Trip", 3);
+        playlist.setPermanentlySeeded(true);
+        databaseService.savePlaylist(playlist);
+
+        List<Playlist> all = databaseService.getAllPlaylists();
+        assertEquals(1, all.size());
+        Playlist loaded = all.get(0);
+        assertEquals(playlist.getId(), loaded.getId());
+        assertEquals("Round Trip", loaded.getName());
+        assertTrue(loaded.isPermanentlySeeded());
+        assertEquals(3, loaded.getTracks().size());
+        assertEquals("Artist 2", loaded.getTracks().get(2).getArtist());
+    }
+
+    @Test
+    void testRepeatedSavesReuseConnections() {
+        Playlist playlist = newPlaylist("Repeated", 1);
+        for (int i = 0; i < 500; i++) {
+            playlist.setLastPlayed(i);
+            databaseService.savePlaylist(playlist);
+        }
+        List<Playlist> all = databaseService.getAllPlaylists();
+        assertEquals(1, all.size());
+        assertEquals(499, all.get(0).getLastPlayed());
+    }
+
+    @Test
+    void testDeletePlaylist() {
+        Playlist keep = newPlaylist("Keep", 1);
+        Playlist drop = newPlaylist("Drop", 1);
+        databaseService.savePlaylist(keep);
+        databaseService.savePlaylist(drop);
+
+        databaseService.deletePlaylist(drop.getId());
+
+        List<Playlist> all = databaseService.getAllPlaylists();
+        assertEquals(1, all.size());
+        assertEquals(keep.getId(), all.get(0).getId());
+    }
+
+    @Test
+    void testPointLookups() {
+        Playlist first = newPlaylist("First", 2);
+        Playlist second = newPlaylist("Second", 1);
+        databaseService.savePlaylist(first);
+        databaseService.savePlaylist(second);
+
+        assertEquals("Second", databaseService.findById(second.getId()).getName());
+        assertEquals(first.getId(), databaseService.findByName("First").getId());
+        assertEquals(2, databaseService.findByName("First").getTracks().size());
+        assertNull(databaseService.findById("missing"));
+        assertNull(databaseService.findByName("missing"));
+    }
+
+    @Test
+    void testColumnOnlyUpdates() {
+        Playlist playlist = newPlaylist("Columns", 2);
+        databaseService.savePlaylist(playlist);
+
+        databaseService.updateLastPlayed(playlist.getId(), 42L);
+        databaseService.updatePermanentlySeeded(playlist.getId(), true);
+
+        Playlist loaded = databaseService.findById(playlist.getId());
+        assertEquals(42L, loaded.getLastPlayed());
+        assertTrue(loaded.isPermanentlySeeded());
+        assertEquals(2, loaded.getTracks().size());
+    }
+
+    @Test
+    void testUpdateSingleTrack() {
+        Playlist playlist = newPlaylist("Single Track", 3);
+        databaseService.savePlaylist(playlist);
+
+        Track edited = playlist.getTracks().get(1);
+        edited.setArtist("New Artist");
+        databaseService.updateTrack(playlist.getId(), 1, edited);
+
+        Playlist loaded = databaseService.findById(playlist.getId());
+        assertEquals("Artist 0", loaded.getTracks().get(0).getArtist());
+        assertEquals("New Artist", loaded.getTracks().get(1).getArtist());
+        assertEquals("Artist 2", loaded.getTracks().get(2).getArtist());
+    }
+
+    @Test
+    void testTrackPriorityRoundTrip() {
+        Playlist playlist = newPlaylist("Priorities", 3);
+        playlist.getTracks().get(0).setPriority(TrackPriority.SKIP);
+        databaseService.savePlaylist(playlist);
+
+        Track edited = playlist.getTracks().get(2);
+        edited.setPriority(TrackPriority.HIGH);
+        databaseService.updateTrack(playlist.getId(), 2, edited);
+
+        Playlist loaded = databaseService.findById(playlist.getId());
+        assertEquals(TrackPriority.SKIP, loaded.getTracks().get(0).getPriority());
+        assertEquals(TrackPriority.NORMAL, loaded.getTracks().get(1).getPriority());
+        assertEquals(TrackPriority.HIGH, loaded.getTracks().get(2).getPriority());
+    }
+
+    @Test
+    void testResavingReplacesTracks() {
+        Playlist playlist = newPlaylist("Shrinking", 4);
+        databaseService.savePlaylist(playlist);
+        playlist.getTracks().remove(3);
+        playlist.getTracks().remove(0);
+        databaseService.savePlaylist(playlist);
+
+        Playlist loaded = databaseService.findById(playlist.getId());
+        assertEquals(2, loaded.getTracks().size());
+        assertEquals("Track 1", loaded.getTracks().get(0).getTitle());
+        assertEquals(2, databaseService.getAllTracks().size());
+    }
+
+    @Test
+    void testGetAllTracksSpansPlaylists() {
+        databaseService.savePlaylist(newPlaylist("B List", 2));
+        databaseService.savePlaylist(newPlaylist("A List", 3));
+
+        List<Track> tracks = databaseService.getAllTracks();
+        assertEquals(5, tracks.size());
+        assertTrue(tracks.get(0).getFilePath().contains("A List"));
+    }
+
+    @Test
+    void testSummariesPagesAndStreaming() {
+        for (int i = 0; i < 5; i++) {
+            Playlist playlist = newPlaylist("Playlist " + i, i);
+            playlist.setPermanentlySeeded(i == 3);
+            databaseService.savePlaylist(playlist);
+        }
+
+        List<PlaylistSummary> summaries = databaseService.getPlaylistSummaries();
+        assertEquals(5, summaries.size());
+        assertEquals("Playlist 0", summaries.get(0).getName());
+        assertEquals(4, summaries.get(4).getTrackCount());
+        assertTrue(summaries.get(3).isPermanentlySeeded());
+
+        List<Playlist> page = databaseService.getPlaylistsPage(2, 2);
+        assertEquals(2, page.size());
+        assertEquals("Playlist 2", page.get(0).getName());
+        assertEquals(3, page.get(1).getTracks().size());
+
+        List<String> streamed = new ArrayList<>();
+        databaseService.streamPlaylists(p -> streamed.add(p.getName() + ":" + p.getTracks().size()));
+        assertEquals(List.of("Playlist 0:0", "Playlist 1:1", "Playlist 2:2", "Playlist 3:3", "Playlist 4:4"), streamed);
+    }
+
+    @Test
+    void testSearchTracksByPrefix() {
+        Playlist playlist = newPlaylist("Search", 0);
+        playlist.getTracks().add(searchTrack("Bohemian Rhapsody", "Queen", "A Night at the Opera"));
+        playlist.getTracks().add(searchTrack("Heroes", "David Bowie", "Heroes"));
+        playlist.getTracks().add(searchTrack("Under Pressure", "Queen", "Hot Space"));
+        databaseService.savePlaylist(playlist);
+
+        assertEquals(List.of("Bohemian Rhapsody"), titles(databaseService.searchTracks("boh rhap", 0, 10)));
+        assertEquals(2, databaseService.searchTracks("que", 0, 10).size());
+        assertEquals(1, databaseService.searchTracks("que", 1, 10).size());
+        assertTrue(databaseService.searchTracks("\"unbalanced", 0, 10).isEmpty());
+        assertEquals(3, databaseService.searchTracks("  ", 0, 10).size());
+    }
+
+    @Test
+    void testSearchIndexFollowsWrites() {
+        Playlist playlist = newPlaylist("Indexed", 0);
+        playlist.getTracks().add(searchTrack("Heroes", "David Bowie", "Heroes"));
+        databaseService.savePlaylist(playlist);
+
+        Track edited = searchTrack("Changes", "David Bowie", "Hunky Dory");
+        databaseService.updateTrack(playlist.getId(), 0, edited);
+        assertTrue(databaseService.searchTracks("heroes", 0, 10).isEmpty());
+        assertEquals(List.of("Changes"), titles(databaseService.searchTracks("hunky", 0, 10)));
+
+        databaseService.deletePlaylist(playlist.getId());
+        assertTrue(databaseService.searchTracks("bowie", 0, 10).isEmpty());
+        assertTrue(databaseService.fuzzySearchTracks("bowie", 0, 10).isEmpty());
+    }
+
+    @Test
+    void testFuzzySearchToleratesTypos() {
+        Playlist playlist = newPlaylist("Fuzzy", 0);
+        playlist.getTracks().add(searchTrack("Bohemian Rhapsody", "Queen", "A Night at the Opera"));
+        playlist.getTracks().add(searchTrack("Heroes", "David Bowie", "Heroes"));
+        databaseService.savePlaylist(playlist);
+
+        assertTrue(databaseService.searchTracks("bohemain", 0, 10).isEmpty());
+        List<Track> results = databaseService.fuzzySearchTracks("bohemain", 0, 10);
+        assertFalse(results.isEmpty());
+        assertEquals("Bohemian Rhapsody", results.get(0).getTitle());
+        assertTrue(databaseService.fuzzySearchTracks("ab", 0, 10).isEmpty());
+    }
+
+    private Track searchTrack(String title, String artist, String album) {
+        Track track = new Track(title, "/tmp/" + title + ".mp3", 180, 1024);
+        track.setArtist(artist);
+        track.setAlbum(album);
+        return track;
+    }
+
+    private List<String> titles(List<Track> tracks) {
+        List<String> titles = new ArrayList<>();
+        for (Track track : tracks) {
+            titles.add(track.getTitle());
+        }
+        return titles;
+    }
+
+    @Test
+    void testMigratesLegacyTracksJson() throws Exception {
+        Path legacyFile = Files.createTempFile("zemmision-legacy", ".db");
+        String url = "jdbc:sqlite:" + legacyFile.toAbsolutePath();
+        try (java.sql.Connection conn = java.sql.DriverManager.getConnection(url);
+                java.sql.Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE TABLE playlists (id TEXT PRIMARY KEY, name TEXT NOT NULL, description TEXT,"
+                    + " tracks_json TEXT, torrent_hash TEXT, torrent_file_path TEXT)");
+            stmt.execute("INSERT INTO playlists(id, name, description, tracks_json) VALUES('legacy-1', 'Legacy', 'Old',"
+                    + " '[{\"title\":\"Old Song\",\"filePath\":\"old.mp3\",\"artist\":\"Old Artist\"},"
+                    + "{\"title\":\"Second\",\"filePath\":\"second.mp3\"}]')");
+        }
+
+        DatabaseService migrated = new DatabaseService(url);
+        try {
+            Playlist loaded = migrated.findById("legacy-1");
+            assertNotNull(loaded);
+            assertEquals(2, loaded.getTracks().size());
+            assertEquals("Old Artist", loaded.getTracks().get(0).getArtist());
+            assertEquals("Second", loaded.getTracks().get(1).getTitle());
+            assertFalse(loaded.isPermanentlySeeded());
+        } finally {
+            migrated.close();
+            Files.deleteIfExists(legacyFile);
+            Files.deleteIfExists(Path.of(legacyFile + "-wal"));
+            Files.deleteIfExists(Path.of(legacyFile + "-shm"));
+        }
+    }
+
+    @Test
+    void testCloseReleasesPool() {
+        databaseService.savePlaylist(newPlaylist("Before Close", 1));
+        databaseService.close();
+
+        // Calls after shutdown are logged and return empty rather than throwing
+        assertTrue(databaseService.getAllPlaylists().isEmpty());
+    }
+}
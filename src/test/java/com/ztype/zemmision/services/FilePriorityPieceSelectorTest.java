@@ -0,0 +1,87 @@
+package com.ztype.zemmision.services;
+
+import bt.torrent.PieceStatistics;
+import com.ztype.zemmision.models.TrackPriority;
+import org.junit.jupiter.api.Test;
+
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FilePriorityPieceSelectorTest {
+
+    private static final int PIECES = 10;
+
+    private static class MockStatistics implements PieceStatistics {
+        @Override
+        public int getCount(int pieceIndex) {
+            return 1;
+        }
+
+        @Override
+        public int getPiecesTotal() {
+            return PIECES;
+        }
+    }
+
+    // Delegate in plain index order
+    private FilePriorityPieceSelector newSelector() {
+        return new FilePriorityPieceSelector((relevant, stats) -> IntStream.range(0, PIECES).filter(relevant::get));
+    }
+
+    private BitSet allRelevant() {
+        BitSet relevant = new BitSet(PIECES);
+        relevant.set(0, PIECES);
+        return relevant;
+    }
+
+    // Three tracks over ten 100-byte pieces: a = 0-2, b = 2-6 (shares piece 2 with a), c = 7-9
+    private PieceMap pieceMap() {
+        return new PieceMap(100, List.of("a.mp3", "b.mp3", "c.mp3"), List.of(250L, 450L, 300L));
+    }
+
+    @Test
+    void testNoPrioritiesKeepsDelegateOrder() {
+        int[] order = newSelector().getNextPieces(allRelevant(), new MockStatistics()).toArray();
+        assertArrayEquals(IntStream.range(0, PIECES).toArray(), order);
+    }
+
+    @Test
+    void testHighFirstAndSkippedLeftOut() {
+        FilePriorityPieceSelector selector = newSelector();
+        selector.setPriorities(pieceMap(), Map.of("a.mp3", TrackPriority.SKIP, "c.mp3", TrackPriority.HIGH));
+
+        int[] order = selector.getNextPieces(allRelevant(), new MockStatistics()).toArray();
+
+        // Piece 2 is still needed by b
+        assertArrayEquals(new int[] { 7, 8, 9, 2, 3, 4, 5, 6 }, order);
+        assertTrue(selector.isSkipped(0));
+        assertFalse(selector.isSkipped(2));
+        assertTrue(selector.isHigh(8));
+    }
+
+    @Test
+    void testSharedPieceOfHighFileIsNeverSkipped() {
+        FilePriorityPieceSelector selector = newSelector();
+        selector.setPriorities(pieceMap(), Map.of("a.mp3", TrackPriority.HIGH, "b.mp3", TrackPriority.SKIP));
+
+        int[] order = selector.getNextPieces(allRelevant(), new MockStatistics()).toArray();
+
+        assertArrayEquals(new int[] { 0, 1, 2, 7, 8, 9 }, order);
+    }
+
+    @Test
+    void testPadFilesDoNotKeepSkippedTracks() {
+        // Hybrid layout: a = 0-1, pad, b = 2-3
+        PieceMap hybrid = new PieceMap(100, List.of("a.mp3", ".pad/50", "b.mp3"), List.of(150L, 50L, 200L));
+        FilePriorityPieceSelector selector = new FilePriorityPieceSelector(
+                (relevant, stats) -> IntStream.range(0, 4).filter(relevant::get));
+        selector.setPriorities(hybrid, Map.of("a.mp3", TrackPriority.SKIP));
+
+        assertTrue(selector.isSkipped(1));
+        assertFalse(selector.isSkipped(2));
+    }
+}
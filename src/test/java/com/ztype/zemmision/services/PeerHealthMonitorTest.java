@@ -0,0 +1,79 @@
+package com.ztype.zemmision.services;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PeerHealthMonitorTest {
+
+    private final List<String> recovered = new ArrayList<>();
+
+    // 10s threshold, 20s first backoff doubling to at most 80s, 1s global spacing, no jitter
+    private PeerHealthMonitor newMonitor() {
+        return new PeerHealthMonitor(recovered::add, 10_000, 20_000, 80_000, 1_000, 0);
+    }
+
+    @Test
+    void testRecoversAfterThresholdWithBackoff() {
+        PeerHealthMonitor monitor = newMonitor();
+        monitor.onState("p", false, 0, 0);
+        monitor.onState("p", false, 0, 9_000);
+        assertTrue(recovered.isEmpty());
+
+        monitor.onState("p", false, 0, 10_000);
+        assertEquals(1, recovered.size());
+
+        // Next attempts after 20s, then 40s
+        monitor.onState("p", false, 0, 29_000);
+        assertEquals(1, recovered.size());
+        monitor.onState("p", false, 0, 30_000);
+        assertEquals(2, recovered.size());
+        monitor.onState("p", false, 0, 69_000);
+        assertEquals(2, recovered.size());
+        monitor.onState("p", false, 0, 70_000);
+        assertEquals(3, recovered.size());
+    }
+
+    @Test
+    void testCompleteOrConnectedIsNotStalled() {
+        PeerHealthMonitor monitor = newMonitor();
+        for (long t = 0; t <= 60_000; t += 1_000) {
+            monitor.onState("seed", true, 0, t);
+            monitor.onState("busy", false, 3, t);
+        }
+        assertTrue(recovered.isEmpty());
+        assertEquals(0, monitor.getStats("seed", 60_000).getStallCount());
+    }
+
+    @Test
+    void testGlobalSpacingPreventsStorms() {
+        PeerHealthMonitor monitor = newMonitor();
+        for (int i = 0; i < 100; i++) {
+            monitor.onState("p" + i, false, 0, 0);
+        }
+        for (int i = 0; i < 100; i++) {
+            monitor.onState("p" + i, false, 0, 10_000);
+        }
+        assertEquals(1, recovered.size(), "only one recovery per spacing interval");
+    }
+
+    @Test
+    void testStallStatistics() {
+        PeerHealthMonitor monitor = newMonitor();
+        monitor.onState("p", false, 0, 0);
+        monitor.onState("p", false, 0, 10_000);
+        monitor.onState("p", false, 2, 15_000);
+        monitor.onState("p", false, 0, 20_000);
+
+        PeerHealthMonitor.StallStats stats = monitor.getStats("p", 25_000);
+        assertEquals(2, stats.getStallCount());
+        assertEquals(1, stats.getRecoveryAttempts());
+        assertEquals(20_000, stats.getTotalStalledMillis());
+        assertEquals(15_000, stats.getLongestStallMillis());
+        assertEquals(5_000, stats.getCurrentStallMillis());
+        assertTrue(stats.isStalled());
+    }
+}
@@ -0,0 +1,127 @@
+package com.ztype.zemmision.services;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PieceMapTest {
+
+    // Piece length 100: a.mp3 = pieces 0-2, b.mp3 = pieces 2-3, empty.txt = none, c.mp3 = piece 4
+    private PieceMap newMap() {
+        return new PieceMap(100, List.of("a.mp3", "b.mp3", "empty.txt", "c.mp3"),
+                Arrays.asList(250L, 150L, 0L, 50L));
+    }
+
+    @Test
+    void testFileRanges() {
+        PieceMap map = newMap();
+        assertEquals(5, map.getPieceCount());
+        assertEquals(0, map.getFirstPiece(0));
+        assertEquals(2, map.getLastPiece(0));
+        assertEquals(2, map.getFirstPiece(1));
+        assertEquals(3, map.getLastPiece(1));
+        assertEquals(0, map.getPieceCount(2));
+        assertEquals(4, map.getFirstPiece(3));
+        assertEquals(400, map.getFileOffset(3));
+        assertEquals(-1, map.indexOf("missing.mp3"));
+    }
+
+    @Test
+    void testSharedPieceCountsForBothFiles() {
+        PieceMap map = newMap();
+        map.markComplete(2);
+        map.markComplete(2);
+
+        assertEquals(1.0 / 3, map.getProgress("a.mp3"), 1e-9);
+        assertEquals(0.5, map.getProgress("b.mp3"), 1e-9);
+        assertEquals(1.0, map.getProgress("empty.txt"), 1e-9);
+        assertEquals(0.0, map.getProgress("c.mp3"), 1e-9);
+        assertEquals(1, map.getPiecesComplete());
+    }
+
+    @Test
+    void testSyncFoldsInNewPiecesOnly() {
+        PieceMap map = newMap();
+        BitSet bitfield = new BitSet();
+        int[] lookups = { 0 };
+        map.attach(piece -> {
+            lookups[0]++;
+            return bitfield.get(piece);
+        });
+
+        bitfield.set(0);
+        bitfield.set(4);
+        map.sync(2);
+        assertEquals(5, lookups[0]);
+        assertEquals(1.0, map.getProgress("c.mp3"), 1e-9);
+
+        // Unchanged count: nothing is scanned
+        map.sync(2);
+        assertEquals(5, lookups[0]);
+
+        bitfield.set(1);
+        map.sync(3);
+        // Only the three pieces not yet known complete are checked
+        assertEquals(8, lookups[0]);
+        assertEquals(2.0 / 3, map.getProgress("a.mp3"), 1e-9);
+        assertTrue(map.isComplete(1));
+        assertFalse(map.isComplete(3));
+    }
+
+    @Test
+    void testAwaitRangeWakesWhenCoveringPiecesVerify() throws Exception {
+        PieceMap map = newMap();
+        map.markComplete(0);
+        // a.mp3 bytes 50-149 lie in pieces 0 and 1
+        assertFalse(map.awaitRange(0, 50, 100, 10));
+
+        Thread verifier = new Thread(() -> {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException ignored) {
+            }
+            map.markComplete(1);
+        });
+        verifier.start();
+        long start = System.nanoTime();
+        assertTrue(map.awaitRange(0, 50, 100, 10_000));
+        assertTrue(System.nanoTime() - start < 5_000_000_000L);
+        verifier.join();
+    }
+
+    @Test
+    void testAwaitRangeIsClippedToTheFile() throws Exception {
+        PieceMap map = newMap();
+        map.markComplete(3);
+        // b.mp3 ends at byte 150, in piece 3; piece 4 belongs to c.mp3 only
+        assertTrue(map.awaitRange(1, 60, 1000, 0));
+        // Past the end there is nothing to wait for
+        assertTrue(map.awaitRange(1, 150, 10, 0));
+        assertFalse(map.awaitRange(3, 0, 10, 0));
+    }
+
+    @Test
+    void testVerifiedLengthStopsAtFirstMissingPiece() {
+        PieceMap map = newMap();
+        BitSet bitfield = new BitSet();
+        map.attach(bitfield::get);
+        map.markComplete(0);
+
+        // a.mp3 is pieces 0-2: only piece 0 is verified
+        assertEquals(100, map.verifiedLength(0, 0, 1000));
+        assertEquals(30, map.verifiedLength(0, 70, 1000));
+        assertEquals(20, map.verifiedLength(0, 70, 20));
+        assertEquals(0, map.verifiedLength(0, 100, 1000));
+
+        // Verified by the client but not yet synced: picked up from the bitfield
+        bitfield.set(1);
+        bitfield.set(2);
+        assertEquals(180, map.verifiedLength(0, 70, 1000));
+        assertEquals(1.0, map.getProgress("a.mp3"), 1e-9);
+        assertEquals(0, map.verifiedLength(0, 250, 10));
+    }
+}
@@ -0,0 +1,111 @@
+package com.ztype.zemmision.services;
+
+import com.ztype.zemmision.utils.Bencoder;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fixed 512 KiB pieces vs. {@link TorrentBuilder#pieceLengthFor(long, long)}
+ * for 10 MB, 500 MB and 10 GB playlists of 320 kbps audio.
+ * <p>
+ * The timed part is what playback waits for locally before the first piece
+ * can be played: verifying its SHA-1. The counters report, per operation, the
+ * size of the bencoded metainfo a new peer has to fetch, the bitfield
+ * exchanged with each peer, the first piece's size and its download time in
+ * milliseconds at {@link #LINK_BYTES_PER_SECOND} (modelled, not measured) —
+ * the bulk of real startup latency. Run with {@code java -cp
+ * target/test-classes:<test classpath>
+ * com.ztype.zemmision.services.PieceSizeBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 1)
+@Fork(1)
+public class PieceSizeBenchmark {
+
+    // A modest 4 Mbit/s swarm
+    static final long LINK_BYTES_PER_SECOND = 500_000;
+    static final long BYTES_PER_SECOND = 40_000;
+
+    @Param({"10", "500", "10240"})
+    public int playlistMb;
+
+    @Param({"fixed", "adaptive"})
+    public String policy;
+
+    @Param({"100"})
+    public int trackCount;
+
+    private byte[] firstPiece;
+    private long pieceLength;
+    private long metadataBytes;
+    private long bitfieldBytes;
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Sizes {
+        public long metadataBytes;
+        public long bitfieldBytes;
+        public long pieceBytes;
+        public long firstPieceMillis;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        long total = (long) playlistMb * 1024 * 1024;
+        pieceLength = "fixed".equals(policy)
+                ? TorrentBuilder.DEFAULT_PIECE_LENGTH
+                : TorrentBuilder.pieceLengthFor(total, BYTES_PER_SECOND);
+        long pieceCount = (total + pieceLength - 1) / pieceLength;
+
+        firstPiece = new byte[(int) Math.min(pieceLength, total)];
+        new Random(3).nextBytes(firstPiece);
+
+        // Same structure TorrentBuilder writes; hash values do not change the size
+        List<Object> fileList = new ArrayList<>();
+        for (int i = 0; i < trackCount; i++) {
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("length", total / trackCount);
+            entry.put("path", List.of(String.format("%03d_Some_Artist_-_Some_Title.mp3", i)));
+            fileList.add(entry);
+        }
+        Map<String, Object> info = new LinkedHashMap<>();
+        info.put("files", fileList);
+        info.put("name", "Playlist_1234567890");
+        info.put("piece length", pieceLength);
+        info.put("pieces", new byte[(int) pieceCount * 20]);
+        Map<String, Object> metainfo = new LinkedHashMap<>();
+        metainfo.put("announce", "udp://tracker.opentrackr.org:1337/announce");
+        metainfo.put("created by", "antigravity-creator");
+        metainfo.put("info", info);
+        metadataBytes = Bencoder.encode(metainfo).length;
+        bitfieldBytes = (pieceCount + 7) / 8;
+    }
+
+    @Benchmark
+    public byte[] verifyFirstPiece(Sizes sizes) throws Exception {
+        sizes.metadataBytes = metadataBytes;
+        sizes.bitfieldBytes = bitfieldBytes;
+        sizes.pieceBytes = firstPiece.length;
+        sizes.firstPieceMillis = firstPiece.length * 1000L / LINK_BYTES_PER_SECOND;
+        return MessageDigest.getInstance("SHA-1").digest(firstPiece);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(PieceSizeBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,262 @@
+package com.ztype.zemmision.services;
+
+import com.ztype.zemmision.models.Playlist;
+import com.ztype.zemmision.models.PlaylistSummary;
+import com.ztype.zemmision.models.Track;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PlaylistRepositoryTest {
+
+    private Path dbFile;
+    private CountingDatabaseService databaseService;
+    private PlaylistRepository repository;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        dbFile = Files.createTempFile("zemmision-repo", ".db");
+        databaseService = new CountingDatabaseService("jdbc:sqlite:" + dbFile.toAbsolutePath());
+        repository = new PlaylistRepository(databaseService);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        repository.close();
+        databaseService.close();
+        Files.deleteIfExists(dbFile);
+        Files.deleteIfExists(Path.of(dbFile + "-wal"));
+        Files.deleteIfExists(Path.of(dbFile + "-shm"));
+    }
+
+    @Test
+    void testReadsAreServedFromCacheOnceWarm() {
+        databaseService.savePlaylist(new Playlist("One", "Desc"));
+        databaseService.savePlaylist(new Playlist("Two", "Desc"));
+
+        for (int i = 0; i < 10; i++) {
+            assertEquals(2, repository.findAll().size());
+            assertTrue(repository.findByName("Two").isPresent());
+        }
+        assertEquals(1, databaseService.streamCalls);
+    }
+
+    @Test
+    void testSummariesDoNotWarmCache() {
+        Playlist playlist = new Playlist("Summarized", "Desc");
+        playlist.getTracks().add(new Track("Song", "song.mp3", 0, 0));
+        databaseService.savePlaylist(playlist);
+
+        List<PlaylistSummary> summaries = repository.findSummaries();
+        assertEquals(1, summaries.size());
+        assertEquals("Summarized", summaries.get(0).getName());
+        assertEquals(1, summaries.get(0).getTrackCount());
+        assertEquals(0, databaseService.streamCalls);
+
+        repository.findAll();
+        assertEquals(1, repository.findSummaries().get(0).getTrackCount());
+        assertEquals(1, databaseService.streamCalls);
+    }
+
+    @Test
+    void testWriteThroughAndListeners() {
+        List<String> changed = new ArrayList<>();
+        List<String> removed = new ArrayList<>();
+        repository.addListener(new PlaylistRepository.PlaylistListener() {
+            @Override
+            public void playlistChanged(Playlist playlist) {
+                changed.add(playlist.getId());
+            }
+
+            @Override
+            public void playlistRemoved(String playlistId) {
+                removed.add(playlistId);
+            }
+        });
+
+        Playlist playlist = new Playlist("Listened", "Desc");
+        playlist.getTracks().add(new Track("Song", "song.mp3", 0, 0));
+        repository.save(playlist);
+        repository.updateLastPlayed(playlist.getId(), 7L);
+        repository.flush();
+
+        assertEquals(List.of(playlist.getId(), playlist.getId()), changed);
+        assertSame(playlist, repository.findById(playlist.getId()).orElseThrow());
+        assertEquals(7L, databaseService.findById(playlist.getId()).getLastPlayed());
+
+        repository.delete(playlist.getId());
+        assertEquals(List.of(playlist.getId()), removed);
+        assertTrue(repository.findAll().isEmpty());
+        assertNull(databaseService.findById(playlist.getId()));
+    }
+
+    @Test
+    void testSaveBeforeWarmUpKeepsCallerInstance() {
+        Playlist playlist = new Playlist("Early", "Desc");
+        repository.save(playlist);
+
+        assertSame(playlist, repository.findAll().get(0));
+    }
+
+    @Test
+    void testDeferredWritesAreCoalescedIntoOneFlush() {
+        Playlist playlist = new Playlist("Edited", "Desc");
+        for (int i = 0; i < 3; i++) {
+            playlist.getTracks().add(new Track("Song " + i, "song" + i + ".mp3", 0, 0));
+        }
+        repository.save(playlist);
+        repository.flush();
+
+        for (int i = 0; i < 50; i++) {
+            Track track = playlist.getTracks().get(i % 3);
+            track.setArtist("Artist " + i);
+            repository.updateTrack(playlist, i % 3, track);
+            repository.updateLastPlayed(playlist.getId(), i);
+        }
+        repository.flush();
+
+        PlaylistWriteBehind.Metrics metrics = repository.getWriteBehindMetrics();
+        assertEquals(0, metrics.getQueueDepth());
+        // The save and the 100 edits
+        assertEquals(101, metrics.getEnqueued());
+        assertTrue(metrics.getFlushes() >= 1);
+        // 3 distinct tracks + 1 timestamp per flush, not 100 writes
+        assertTrue(metrics.getWritten() <= 4 * metrics.getFlushes());
+
+        Playlist stored = databaseService.findById(playlist.getId());
+        assertEquals(49L, stored.getLastPlayed());
+        assertEquals("Artist 49", stored.getTracks().get(1).getArtist());
+        assertEquals("Artist 48", stored.getTracks().get(0).getArtist());
+    }
+
+    @Test
+    void testCloseFlushesPendingWrites() {
+        Playlist playlist = new Playlist("Closing", "Desc");
+        repository.save(playlist);
+        repository.updateLastPlayed(playlist.getId(), 42L);
+
+        repository.close();
+
+        assertEquals(42L, databaseService.findById(playlist.getId()).getLastPlayed());
+    }
+
+    @Test
+    void testSaveSupersedesQueuedTrackEditsAfterReorder() {
+        // Long delay: the edit is still queued when the playlist is saved
+        PlaylistRepository slowRepository = new PlaylistRepository(databaseService,
+                new PlaylistWriteBehind(databaseService, 60_000));
+        Playlist playlist = new Playlist("Reordered", "Desc");
+        playlist.getTracks().add(new Track("First", "first.mp3", 0, 0));
+        playlist.getTracks().add(new Track("Second", "second.mp3", 0, 0));
+        slowRepository.save(playlist);
+
+        Track first = playlist.getTracks().get(0);
+        first.setArtist("Edited");
+        slowRepository.updateTrack(playlist, 0, first);
+        playlist.getTracks().add(playlist.getTracks().remove(0));
+        slowRepository.save(playlist);
+        slowRepository.flush();
+        slowRepository.close();
+
+        List<Track> stored = databaseService.findById(playlist.getId()).getTracks();
+        assertEquals("Second", stored.get(0).getTitle());
+        assertNull(stored.get(0).getArtist());
+        assertEquals("First", stored.get(1).getTitle());
+        assertEquals("Edited", stored.get(1).getArtist());
+    }
+
+    @Test
+    void testFailedFlushRollsBackAndStaysQueued() {
+        Playlist playlist = new Playlist("Failing", "Desc");
+        playlist.getTracks().add(new Track("Song", "song.mp3", 0, 0));
+        repository.save(playlist);
+        repository.flush();
+
+        Track track = playlist.getTracks().get(0);
+        track.setArtist("Edited");
+        repository.updateTrack(playlist, 0, track);
+        databaseService.failLastPlayed = true;
+        repository.updateLastPlayed(playlist.getId(), 7L);
+        repository.flush();
+
+        // The track edit ran before the failure and was rolled back with it
+        PlaylistWriteBehind.Metrics metrics = repository.getWriteBehindMetrics();
+        assertEquals(1, metrics.getFailedFlushes());
+        assertEquals(1, metrics.getQueueDepth());
+        Playlist stored = databaseService.findById(playlist.getId());
+        assertNull(stored.getTracks().get(0).getArtist());
+
+        // Edited again while queued: the retry writes the newer value
+        databaseService.failLastPlayed = false;
+        repository.updateLastPlayed(playlist.getId(), 8L);
+        repository.flush();
+
+        stored = databaseService.findById(playlist.getId());
+        assertEquals("Edited", stored.getTracks().get(0).getArtist());
+        assertEquals(8L, stored.getLastPlayed());
+        assertEquals(0, repository.getWriteBehindMetrics().getQueueDepth());
+    }
+
+    @Test
+    void testColdSummariesShowQueuedEditsWithoutFlushing() {
+        PlaylistRepository slowRepository = new PlaylistRepository(databaseService,
+                new PlaylistWriteBehind(databaseService, 60_000));
+        Playlist stored = new Playlist("Stored", "Desc");
+        databaseService.savePlaylist(stored);
+        Playlist queued = new Playlist("Queued", "Desc");
+        queued.getTracks().add(new Track("Song", "song.mp3", 0, 0));
+        slowRepository.updateTrack(queued, 0, queued.getTracks().get(0));
+
+        List<PlaylistSummary> summaries = slowRepository.findSummaries();
+
+        assertEquals(List.of("Stored", "Queued"), summaries.stream().map(PlaylistSummary::getName).toList());
+        assertEquals(1, summaries.get(1).getTrackCount());
+        assertNull(databaseService.findById(queued.getId()));
+        assertEquals(0, slowRepository.getWriteBehindMetrics().getFlushes());
+        assertEquals(0, databaseService.streamCalls);
+        slowRepository.close();
+    }
+
+    @Test
+    void testPermanentlySeededFlagIsQueued() {
+        Playlist playlist = new Playlist("Flagged", "Desc");
+        databaseService.savePlaylist(playlist);
+
+        repository.updatePermanentlySeeded(playlist.getId(), true);
+
+        assertTrue(repository.findById(playlist.getId()).orElseThrow().isPermanentlySeeded());
+        assertEquals(1, repository.getWriteBehindMetrics().getEnqueued());
+        repository.flush();
+        assertTrue(databaseService.findById(playlist.getId()).isPermanentlySeeded());
+    }
+
+    static class CountingDatabaseService extends DatabaseService {
+        int streamCalls = 0;
+        volatile boolean failLastPlayed = false;
+
+        CountingDatabaseService(String url) {
+            super(url);
+        }
+
+        @Override
+        public void streamPlaylists(java.util.function.Consumer<Playlist> consumer) {
+            streamCalls++;
+            super.streamPlaylists(consumer);
+        }
+
+        @Override
+        public void writeLastPlayed(String playlistId, long timestamp) throws java.sql.SQLException {
+            if (failLastPlayed) {
+                throw new java.sql.SQLException("disk I/O error");
+            }
+            super.writeLastPlayed(playlistId, timestamp);
+        }
+    }
+}
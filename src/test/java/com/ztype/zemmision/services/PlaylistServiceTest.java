@@ -33,6 +33,7 @@ class PlaylistServiceTest {
         List<File> files = Collections.singletonList(mockFile);
 
         Playlist result = playlistService.createPlaylist(name, desc, files);
+        playlistService.flushPendingWrites();
 
         assertNotNull(result);
         assertEquals(name, result.getName());
@@ -52,6 +53,7 @@ class PlaylistServiceTest {
         playlist.setId("some-id");
 
         playlistService.updatePlaylist(playlist);
+        playlistService.flushPendingWrites();
 
         assertTrue(databaseService.savePlaylistCalled);
         assertEquals("some-id", databaseService.lastSavedPlaylist.getId());
@@ -75,10 +77,12 @@ class PlaylistServiceTest {
         boolean deletePlaylistCalled = false;
         Playlist lastSavedPlaylist;
         String lastDeletedId;
+        boolean updateTrackCalled = false;
+        int lastUpdatedTrackPosition = -1;
         private final List<Playlist> list = new java.util.ArrayList<>();
 
         @Override
-        public void savePlaylist(Playlist playlist) {
+        public void writePlaylist(Playlist playlist) {
             savePlaylistCalled = true;
             lastSavedPlaylist = playlist;
             list.removeIf(p -> p.getId().equals(playlist.getId()));
@@ -96,6 +100,55 @@ class PlaylistServiceTest {
         public List<Playlist> getAllPlaylists() {
             return list;
         }
+
+        @Override
+        public void streamPlaylists(java.util.function.Consumer<Playlist> consumer) {
+            new java.util.ArrayList<>(list).forEach(consumer);
+        }
+
+        @Override
+        public List<com.ztype.zemmision.models.PlaylistSummary> getPlaylistSummaries() {
+            List<com.ztype.zemmision.models.PlaylistSummary> summaries = new java.util.ArrayList<>();
+            list.forEach(p -> summaries.add(com.ztype.zemmision.models.PlaylistSummary.of(p)));
+            return summaries;
+        }
+
+        @Override
+        public Playlist findById(String id) {
+            return list.stream().filter(p -> p.getId().equals(id)).findFirst().orElse(null);
+        }
+
+        @Override
+        public Playlist findByName(String name) {
+            return list.stream().filter(p -> p.getName().equals(name)).findFirst().orElse(null);
+        }
+
+        @Override
+        public void writeLastPlayed(String id, long timestamp) {
+            Playlist playlist = findById(id);
+            if (playlist != null) {
+                playlist.setLastPlayed(timestamp);
+            }
+        }
+
+        @Override
+        public void writeTrack(String playlistId, int position, com.ztype.zemmision.models.Track track) {
+            updateTrackCalled = true;
+            lastUpdatedTrackPosition = position;
+        }
+
+        @Override
+        public void writeInTransaction(SqlRunnable work) throws java.sql.SQLException {
+            work.run();
+        }
+
+        @Override
+        public void writePermanentlySeeded(String id, boolean permanentlySeeded) {
+            Playlist playlist = findById(id);
+            if (playlist != null) {
+                playlist.setPermanentlySeeded(permanentlySeeded);
+            }
+        }
     }
 
     static class MockTorrentService extends TorrentService {
@@ -110,7 +163,8 @@ class PlaylistServiceTest {
         }
 
         @Override
-        public Path createPlaylistTorrent(Playlist playlist) throws IOException {
+        public Path createPlaylistTorrent(Playlist playlist, TorrentBuilder.ProgressListener progressListener,
+                java.util.function.BooleanSupplier cancellation) throws IOException {
             createPlaylistTorrentCalled = true;
             return Path.of("temp.torrent");
         }
@@ -175,17 +229,53 @@ class PlaylistServiceTest {
 
         // 1. Initial Save
         playlistService.updatePlaylist(playlist);
+        playlistService.flushPendingWrites();
         assertTrue(databaseService.savePlaylistCalled);
         assertEquals("Original Artist", databaseService.lastSavedPlaylist.getTracks().get(0).getArtist());
 
         // 2. Simulate User Edit (Update object reference)
         playlist.getTracks().get(0).setArtist("New Artist");
         playlistService.updatePlaylist(playlist);
+        playlistService.flushPendingWrites();
 
         // 3. Verify Save called again with new data
         assertEquals("New Artist", databaseService.lastSavedPlaylist.getTracks().get(0).getArtist());
     }
 
+    @Test
+    void testSetPermanentSeedingUpdatesFlagOnly() {
+        Playlist playlist = new Playlist("Flagged", "Desc");
+        databaseService.savePlaylist(playlist);
+        databaseService.savePlaylistCalled = false;
+
+        playlistService.setPermanentSeeding(playlist.getId(), true);
+        playlistService.flushPendingWrites();
+
+        assertTrue(databaseService.findById(playlist.getId()).isPermanentlySeeded());
+        assertFalse(databaseService.savePlaylistCalled, "Flag change should not rewrite the whole row");
+    }
+
+    @Test
+    void testUpdateTrackTouchesSingleRow() {
+        Playlist playlist = new Playlist("Tracks", "Desc");
+        List<com.ztype.zemmision.models.Track> tracks = new java.util.ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            tracks.add(new com.ztype.zemmision.models.Track("Song " + i, "song" + i + ".mp3", 0, 0));
+        }
+        playlist.setTracks(tracks);
+        databaseService.savePlaylist(playlist);
+        databaseService.savePlaylistCalled = false;
+
+        com.ztype.zemmision.models.Track edited = tracks.get(2);
+        edited.setArtist("Edited Artist");
+        playlistService.updateTrack(playlist, edited);
+        playlistService.flushPendingWrites();
+
+        assertTrue(databaseService.updateTrackCalled);
+        assertEquals(2, databaseService.lastUpdatedTrackPosition);
+        assertFalse(databaseService.savePlaylistCalled);
+    }
+
     @Test
     void testDeleteImportedPlaylist() throws IOException {
         Playlist playlist = new Playlist("ImportedToDelete", "Imported from test.torrent");
@@ -0,0 +1,76 @@
+package com.ztype.zemmision.services;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PortAllocatorTest {
+
+    @Test
+    void testAllocatesWholeRangeThenExhausts() {
+        PortAllocator allocator = new PortAllocator(20000, 3, port -> true);
+        assertEquals(20000, allocator.allocate());
+        assertEquals(20001, allocator.allocate());
+        assertEquals(20002, allocator.allocate());
+        assertEquals(-1, allocator.allocate());
+
+        allocator.release(20001);
+        assertFalse(allocator.isAllocated(20001));
+        assertEquals(20001, allocator.allocate());
+        assertEquals(3, allocator.getAllocatedCount());
+    }
+
+    @Test
+    void testSkipsUnavailablePorts() {
+        PortAllocator allocator = new PortAllocator(20000, 4, port -> port != 20000 && port != 20002);
+        assertEquals(20001, allocator.allocate());
+        assertEquals(20003, allocator.allocate());
+        assertEquals(-1, allocator.allocate());
+        assertFalse(allocator.isAllocated(20000), "unavailable ports are not kept reserved");
+    }
+
+    @Test
+    void testReleaseIgnoresForeignPorts() {
+        PortAllocator allocator = new PortAllocator(20000, 2, port -> true);
+        allocator.release(20000);
+        allocator.release(6891);
+        assertEquals(0, allocator.getAllocatedCount());
+        assertTrue(allocator.contains(20001));
+        assertFalse(allocator.contains(20002));
+    }
+
+    @Test
+    void testConcurrentAllocationHasNoDuplicates() throws Exception {
+        PortAllocator allocator = new PortAllocator(20000, 256, port -> true);
+        Set<Integer> ports = ConcurrentHashMap.newKeySet();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        List<Future<Boolean>> results = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            results.add(executor.submit(() -> {
+                start.await();
+                return ports.add(allocator.allocate());
+            }));
+        }
+        start.countDown();
+        for (Future<Boolean> result : results) {
+            assertTrue(result.get(10, TimeUnit.SECONDS), "port handed out twice");
+        }
+        executor.shutdown();
+
+        assertEquals(200, ports.size());
+        assertEquals(200, allocator.getAllocatedCount());
+        ports.forEach(allocator::release);
+        assertEquals(0, allocator.getAllocatedCount());
+    }
+}
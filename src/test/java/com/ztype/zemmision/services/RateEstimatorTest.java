@@ -0,0 +1,105 @@
+package com.ztype.zemmision.services;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RateEstimatorTest {
+
+    private static final long SECOND = 1_000_000_000L;
+
+    @Test
+    void testSteadyRate() {
+        RateEstimator estimator = new RateEstimator(5.0, 10);
+        for (int i = 0; i <= 20; i++) {
+            estimator.sample(i * 100_000L, i * 10_000L, i * SECOND);
+        }
+        assertEquals(100_000, estimator.getDownloadRate(), 1e-6);
+        assertEquals(10_000, estimator.getUploadRate(), 1e-6);
+    }
+
+    @Test
+    void testPeersAreRatedFromTheirOwnCounters() {
+        RateEstimator estimator = new RateEstimator(5.0, 10, 4);
+        Object fast = new Object();
+        Object slow = new Object();
+        for (int i = 0; i <= 20; i++) {
+            estimator.samplePeer(fast, i * 90_000L, 0, i * SECOND);
+            estimator.samplePeer(slow, i * 10_000L, i * 5_000L, i * SECOND);
+            // Sampled again within the same messaging round: skipped
+            estimator.samplePeer(fast, i * 90_000L + 1, 0, i * SECOND + 1);
+        }
+
+        double[] download = new double[estimator.getPeerCapacity()];
+        double[] upload = new double[estimator.getPeerCapacity()];
+        assertEquals(2, estimator.copyPeerRates(download, upload, 20 * SECOND));
+        assertEquals(90_000, download[0], 1);
+        assertEquals(10_000, download[1], 1e-6);
+        assertEquals(5_000, upload[1], 1e-6);
+    }
+
+    @Test
+    void testIdlePeerSlotsAreReused() {
+        RateEstimator estimator = new RateEstimator(5.0, 10, 1);
+        Object first = new Object();
+        Object second = new Object();
+        estimator.samplePeer(first, 0, 0, 0);
+        estimator.samplePeer(first, 1000, 0, SECOND);
+
+        // Every slot taken by a live connection: the new one is not rated
+        estimator.samplePeer(second, 0, 0, 2 * SECOND);
+        estimator.samplePeer(second, 5000, 0, 3 * SECOND);
+        double[] download = new double[1];
+        double[] upload = new double[1];
+        assertEquals(1, estimator.copyPeerRates(download, upload, 3 * SECOND));
+        assertEquals(1000, download[0], 1e-6);
+
+        // Once the first has gone quiet its slot is handed over
+        estimator.samplePeer(second, 5000, 0, 60 * SECOND);
+        estimator.samplePeer(second, 8000, 0, 61 * SECOND);
+        assertEquals(1, estimator.copyPeerRates(download, upload, 61 * SECOND));
+        assertEquals(3000, download[0], 1e-6);
+        assertEquals(0, estimator.copyPeerRates(download, upload, 120 * SECOND));
+    }
+
+    @Test
+    void testAverageFollowsChangeGradually() {
+        RateEstimator estimator = new RateEstimator(5.0, 10);
+        estimator.sample(0, 0, 0);
+        estimator.sample(100_000, 0, SECOND);
+        estimator.sample(100_000, 0, 2 * SECOND); // Swarm stalls
+
+        double rate = estimator.getDownloadRate();
+        assertTrue(rate > 0 && rate < 100_000, "Stall should decay, not zero, the average: " + rate);
+        assertEquals(100_000, estimator.getPeakDownloadRate(), 1e-6);
+    }
+
+    @Test
+    void testHistoryRingKeepsNewestSamples() {
+        RateEstimator estimator = new RateEstimator(5.0, 3);
+        long downloaded = 0;
+        estimator.sample(0, 0, 0);
+        for (int i = 1; i <= 5; i++) {
+            downloaded += i * 1000L;
+            estimator.sample(downloaded, 0, i * SECOND);
+        }
+
+        double[] download = new double[estimator.getHistoryCapacity()];
+        double[] upload = new double[estimator.getHistoryCapacity()];
+        assertEquals(3, estimator.copyHistory(download, upload));
+        assertArrayEquals(new double[] { 3000, 4000, 5000 }, download, 1e-6);
+    }
+
+    @Test
+    void testCounterResetStartsOver() {
+        RateEstimator estimator = new RateEstimator(5.0, 10);
+        estimator.sample(0, 0, 0);
+        estimator.sample(50_000, 0, SECOND);
+        estimator.sample(10, 0, 2 * SECOND); // Client restarted
+
+        double before = estimator.getDownloadRate();
+        estimator.sample(10, 0, 3 * SECOND);
+        assertTrue(estimator.getDownloadRate() < before);
+        assertTrue(estimator.getDownloadRate() >= 0);
+    }
+}
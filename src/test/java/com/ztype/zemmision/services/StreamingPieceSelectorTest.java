@@ -0,0 +1,98 @@
+package com.ztype.zemmision.services;
+
+import bt.torrent.PieceStatistics;
+import org.junit.jupiter.api.Test;
+
+import java.util.BitSet;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StreamingPieceSelectorTest {
+
+    private static final int PIECES = 20;
+
+    // Every piece available from one peer
+    private static class MockStatistics implements PieceStatistics {
+        private final int[] counts = new int[PIECES];
+
+        MockStatistics() {
+            java.util.Arrays.fill(counts, 1);
+        }
+
+        @Override
+        public int getCount(int pieceIndex) {
+            return counts[pieceIndex];
+        }
+
+        @Override
+        public int getPiecesTotal() {
+            return PIECES;
+        }
+    }
+
+    // Fallback that walks the pieces backwards, so its order is easy to tell apart
+    private StreamingPieceSelector newSelector(int window) {
+        return new StreamingPieceSelector(window, (relevant, stats) ->
+                IntStream.iterate(PIECES - 1, i -> i >= 0, i -> i - 1).filter(relevant::get));
+    }
+
+    private BitSet allRelevant() {
+        BitSet relevant = new BitSet(PIECES);
+        relevant.set(0, PIECES);
+        return relevant;
+    }
+
+    @Test
+    void testWindowComesFirstInPlaybackOrder() {
+        StreamingPieceSelector selector = newSelector(3);
+        selector.setPlayhead(5);
+
+        int[] order = selector.getNextPieces(allRelevant(), new MockStatistics()).toArray();
+
+        assertArrayEquals(new int[] { 5, 6, 7 }, java.util.Arrays.copyOf(order, 3));
+        assertEquals(19, order[3]);
+        assertEquals(PIECES, order.length, "every piece is selected exactly once");
+    }
+
+    @Test
+    void testSkipsCompleteAndUnavailablePieces() {
+        StreamingPieceSelector selector = newSelector(3);
+        BitSet relevant = allRelevant();
+        relevant.clear(0);
+        MockStatistics stats = new MockStatistics();
+        stats.counts[1] = 0;
+
+        int[] order = selector.getNextPieces(relevant, stats).limit(2).toArray();
+
+        assertArrayEquals(new int[] { 2, 19 }, order);
+    }
+
+    @Test
+    void testSeekTargetRanksAfterPlayheadUntilReached() {
+        StreamingPieceSelector selector = newSelector(2);
+        selector.setSeekTarget(10);
+
+        int[] order = selector.getNextPieces(allRelevant(), new MockStatistics()).limit(4).toArray();
+        assertArrayEquals(new int[] { 0, 1, 10, 11 }, order);
+
+        selector.setPlayhead(10);
+        assertEquals(-1, selector.getSeekTarget());
+        order = selector.getNextPieces(allRelevant(), new MockStatistics()).limit(3).toArray();
+        assertArrayEquals(new int[] { 10, 11, 19 }, order);
+    }
+
+    @Test
+    void testPrefetchRanksBelowPlayheadWindow() {
+        StreamingPieceSelector selector = newSelector(2);
+        selector.setPrefetch(1, 3);
+
+        int[] order = selector.getNextPieces(allRelevant(), new MockStatistics()).limit(5).toArray();
+        assertArrayEquals(new int[] { 0, 1, 2, 3, 19 }, order);
+
+        selector.clearPrefetch();
+        assertEquals(-1, selector.getPrefetchStart());
+        order = selector.getNextPieces(allRelevant(), new MockStatistics()).limit(3).toArray();
+        assertArrayEquals(new int[] { 0, 1, 19 }, order);
+    }
+}
@@ -0,0 +1,117 @@
+package com.ztype.zemmision.services;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to build a playlist torrent: ttorrent's single-threaded
+ * {@code Torrent.create} vs. {@link TorrentBuilder} from scratch and
+ * {@link TorrentBuilder} rebuilding after one track was edited.
+ * <p>
+ * The playlist is {@code playlistMb} of random data split over
+ * {@code trackCount} tracks (2 GB by default; make sure the temp directory has
+ * room). The files are written once per trial, so after the first iteration
+ * they are in the page cache and the numbers compare hashing, not disk reads.
+ * Run with {@code java -cp target/test-classes:<test classpath>
+ * com.ztype.zemmision.services.TorrentBuilderBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class TorrentBuilderBenchmark {
+
+    @Param({"2048"})
+    public int playlistMb;
+
+    @Param({"16"})
+    public int trackCount;
+
+    private Path playlistDir;
+    private final List<Path> tracks = new ArrayList<>();
+    private PieceHashCache warmCache;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        playlistDir = Files.createTempDirectory("zemmision-bench-hash");
+        long trackBytes = (long) playlistMb * 1024 * 1024 / trackCount;
+        byte[] block = new byte[1024 * 1024];
+        Random random = new Random(7);
+        for (int i = 0; i < trackCount; i++) {
+            Path track = playlistDir.resolve(String.format("track%03d.mp3", i));
+            try (OutputStream out = Files.newOutputStream(track)) {
+                for (long written = 0; written < trackBytes; written += block.length) {
+                    random.nextBytes(block);
+                    out.write(block, 0, (int) Math.min(block.length, trackBytes - written));
+                }
+            }
+            tracks.add(track);
+        }
+        warmCache = new PieceHashCache();
+        new TorrentBuilder(playlistDir, tracks).hashCache(warmCache).hashPieces();
+    }
+
+    @Setup(Level.Invocation)
+    public void touchOneTrack() throws Exception {
+        // An edited track: same size, new modification time, so only its pieces miss the cache
+        Path edited = tracks.get(tracks.size() / 2);
+        Files.setLastModifiedTime(edited, FileTime.fromMillis(System.currentTimeMillis()));
+    }
+
+    @Benchmark
+    public byte[] ttorrentCreate() throws Exception {
+        List<File> files = new ArrayList<>();
+        for (Path track : tracks) {
+            files.add(track.toFile());
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        com.turn.ttorrent.common.Torrent.create(playlistDir.toFile(), files,
+                new URI("udp://tracker.opentrackr.org:1337/announce"), "zemmision-bench").save(out);
+        return out.toByteArray();
+    }
+
+    @Benchmark
+    public byte[] builderFromScratch() throws Exception {
+        return new TorrentBuilder(playlistDir, tracks)
+                .announce("udp://tracker.opentrackr.org:1337/announce")
+                .build();
+    }
+
+    @Benchmark
+    public byte[] builderRebuildAfterEdit() throws Exception {
+        return new TorrentBuilder(playlistDir, tracks)
+                .announce("udp://tracker.opentrackr.org:1337/announce")
+                .hashCache(warmCache)
+                .build();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        try (var paths = Files.walk(playlistDir)) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(TorrentBuilderBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
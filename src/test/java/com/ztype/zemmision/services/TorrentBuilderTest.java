@@ -0,0 +1,237 @@
+package com.ztype.zemmision.services;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TorrentBuilderTest {
+
+    private static final int PIECE = 1024;
+
+    private Path root;
+    private final List<Path> files = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        root = Files.createTempDirectory("torrent-builder");
+        // Sizes chosen so pieces straddle files, plus an empty file and a short last piece
+        int[] sizes = { 3000, 0, 1024, 5500, 700 };
+        Random random = new Random(42);
+        for (int i = 0; i < sizes.length; i++) {
+            byte[] data = new byte[sizes[i]];
+            random.nextBytes(data);
+            Path file = root.resolve("track" + i + ".mp3");
+            Files.write(file, data);
+            files.add(file);
+        }
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        try (var paths = Files.walk(root)) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    // SHA-1 of each piece of the files laid end to end
+    private byte[] expectedPieces() throws Exception {
+        ByteArrayOutputStream all = new ByteArrayOutputStream();
+        for (Path file : files) {
+            all.write(Files.readAllBytes(file));
+        }
+        byte[] bytes = all.toByteArray();
+        ByteArrayOutputStream hashes = new ByteArrayOutputStream();
+        for (int offset = 0; offset < bytes.length; offset += PIECE) {
+            MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+            sha1.update(bytes, offset, Math.min(PIECE, bytes.length - offset));
+            hashes.write(sha1.digest());
+        }
+        return hashes.toByteArray();
+    }
+
+    @Test
+    void testParallelHashesMatchSequentialReference() throws Exception {
+        AtomicLong lastProgress = new AtomicLong();
+        byte[] pieces = new TorrentBuilder(root, files)
+                .pieceLength(PIECE)
+                .threads(4)
+                .progressListener((done, total) -> lastProgress.accumulateAndGet(done, Math::max))
+                .hashPieces();
+
+        assertArrayEquals(expectedPieces(), pieces);
+        assertEquals(10224, lastProgress.get());
+    }
+
+    @Test
+    void testMetainfoLayout() throws Exception {
+        byte[] metainfo = new TorrentBuilder(root, files)
+                .pieceLength(PIECE)
+                .announce("udp://tracker.example:1337/announce")
+                .build();
+        String text = new String(metainfo, java.nio.charset.StandardCharsets.ISO_8859_1);
+
+        assertTrue(text.startsWith("d8:announce35:udp://tracker.example:1337/announce"));
+        assertTrue(text.contains("4:infod5:filesld6:lengthi3000e4:pathl10:track0.mp3eed"));
+        assertTrue(text.contains("4:name" + root.getFileName().toString().length() + ":" + root.getFileName()));
+        assertTrue(text.contains("12:piece lengthi1024e6:pieces200:"));
+    }
+
+    @Test
+    void testCacheSkipsUnchangedFiles() throws Exception {
+        PieceHashCache cache = new PieceHashCache();
+        byte[] first = new TorrentBuilder(root, files).pieceLength(PIECE).hashCache(cache).hashPieces();
+        assertTrue(cache.size() > 0);
+
+        // Rewrite track3 with different bytes but the same size and time: only a cache hit keeps its old hashes
+        Path track3 = files.get(3);
+        FileTime time = Files.getLastModifiedTime(track3);
+        Files.write(track3, new byte[5500]);
+        Files.setLastModifiedTime(track3, time);
+
+        byte[] second = new TorrentBuilder(root, files).pieceLength(PIECE).hashCache(cache).hashPieces();
+        byte[] expected = expectedPieces();
+        // track3 covers bytes 4024-9524: pieces 4-8 lie inside it, 3 and 9 straddle its neighbours
+        assertArrayEquals(Arrays.copyOfRange(first, 4 * 20, 9 * 20), Arrays.copyOfRange(second, 4 * 20, 9 * 20));
+        assertFalse(Arrays.equals(Arrays.copyOfRange(expected, 4 * 20, 9 * 20), Arrays.copyOfRange(second, 4 * 20, 9 * 20)));
+        assertArrayEquals(Arrays.copyOfRange(expected, 3 * 20, 4 * 20), Arrays.copyOfRange(second, 3 * 20, 4 * 20));
+        assertArrayEquals(Arrays.copyOfRange(expected, 9 * 20, 10 * 20), Arrays.copyOfRange(second, 9 * 20, 10 * 20));
+    }
+
+    @Test
+    void testCancelStopsBuild() {
+        TorrentBuilder builder = new TorrentBuilder(root, files).pieceLength(PIECE).cancellation(() -> true);
+        assertThrows(CancellationException.class, builder::hashPieces);
+    }
+
+    @Test
+    void testCacheRoundTrip() throws Exception {
+        PieceHashCache cache = new PieceHashCache();
+        new TorrentBuilder(root, files).pieceLength(PIECE).hashCache(cache).hashPieces();
+        Path saved = root.resolve("cache.bin");
+        cache.save(saved);
+
+        PieceHashCache loaded = PieceHashCache.load(saved);
+        assertEquals(cache.size(), loaded.size());
+    }
+
+    @Test
+    void testPieceLengthForBitrate() {
+        // 4 s of 320 kbps is 160000 bytes, nearest power of two 128 KiB
+        assertEquals(128 * 1024, TorrentBuilder.pieceLengthFor(500L * 1024 * 1024, 40_000));
+        // 4 s of CD audio is 705600 bytes: 512 KiB
+        assertEquals(512 * 1024, TorrentBuilder.pieceLengthFor(2000L * 1024 * 1024, 176_400));
+    }
+
+    @Test
+    void testPieceLengthBoundedByPieceCount() {
+        // Small playlists keep at least MIN_PIECES pieces, down to the block size
+        assertEquals(128 * 1024, TorrentBuilder.pieceLengthFor(10L * 1024 * 1024, 176_400));
+        assertEquals(TorrentBuilder.MIN_PIECE_LENGTH, TorrentBuilder.pieceLengthFor(100 * 1024, 40_000));
+        // Large ones stay under MAX_PIECES pieces
+        long tenGb = 10L * 1024 * 1024 * 1024;
+        long length = TorrentBuilder.pieceLengthFor(tenGb, 40_000);
+        assertEquals(2 * 1024 * 1024, length);
+        assertTrue(tenGb / length <= TorrentBuilder.MAX_PIECES);
+    }
+
+    @Test
+    void testBuildChoosesPieceLength() throws Exception {
+        TorrentBuilder builder = new TorrentBuilder(root, files);
+        byte[] pieces = builder.hashPieces();
+        assertEquals(TorrentBuilder.MIN_PIECE_LENGTH, builder.getPieceLength());
+        assertEquals(20, pieces.length);
+    }
+
+    @Test
+    void testHybridAlignsFilesToPieces() throws Exception {
+        int piece = 16 * 1024;
+        TorrentBuilder builder = new TorrentBuilder(root, files).pieceLength(piece).hybrid(true);
+        byte[] pieces = builder.hashPieces();
+
+        // One piece per non-empty file; all but the last are padded with zeros
+        assertEquals(4 * 20, pieces.length);
+        byte[] track0 = Files.readAllBytes(files.get(0));
+        MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+        sha1.update(track0);
+        sha1.update(new byte[piece - track0.length]);
+        assertArrayEquals(sha1.digest(), Arrays.copyOfRange(pieces, 0, 20));
+        byte[] track4 = Files.readAllBytes(files.get(4));
+        assertArrayEquals(MessageDigest.getInstance("SHA-1").digest(track4), Arrays.copyOfRange(pieces, 60, 80));
+
+        assertEquals(List.of(piece - 3000L, piece - 1024L, piece - 5500L), List.copyOf(builder.getPadFiles().values()));
+        // A file of one block is its own merkle tree
+        assertArrayEquals(MessageDigest.getInstance("SHA-256").digest(track0), builder.getPiecesRoot(files.get(0)));
+        assertNull(builder.getPiecesRoot(files.get(1)));
+    }
+
+    @Test
+    void testHybridPiecesRoot() throws Exception {
+        byte[] data = new byte[40000];
+        new Random(5).nextBytes(data);
+        Path big = root.resolve("track5.mp3");
+        Path copy = root.resolve("track6.mp3");
+        Files.write(big, data);
+        Files.write(copy, data);
+        files.add(big);
+        files.add(copy);
+
+        TorrentBuilder builder = new TorrentBuilder(root, files).pieceLength(16 * 1024).hybrid(true);
+        byte[] metainfo = builder.build();
+
+        // Three 16 KiB leaves, padded to four with a zero hash
+        MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+        byte[][] leaves = new byte[4][];
+        for (int i = 0; i < 3; i++) {
+            leaves[i] = sha256.digest(Arrays.copyOfRange(data, i * 16384, Math.min(data.length, (i + 1) * 16384)));
+        }
+        leaves[3] = new byte[32];
+        sha256.update(leaves[0]);
+        sha256.update(leaves[1]);
+        byte[] left = sha256.digest();
+        sha256.update(leaves[2]);
+        sha256.update(leaves[3]);
+        byte[] right = sha256.digest();
+        sha256.update(left);
+        sha256.update(right);
+        byte[] expectedRoot = sha256.digest();
+
+        assertArrayEquals(expectedRoot, builder.getPiecesRoot(big));
+        // Identical tracks share a root
+        assertArrayEquals(expectedRoot, builder.getPiecesRoot(copy));
+        String text = new String(metainfo, java.nio.charset.StandardCharsets.ISO_8859_1);
+        assertTrue(text.contains("12:meta versioni2e"));
+        assertTrue(text.contains("12:piece layersd32:"));
+    }
+
+    @Test
+    void testHybridCacheMatchesFreshBuild() throws Exception {
+        PieceHashCache cache = new PieceHashCache();
+        TorrentBuilder first = new TorrentBuilder(root, files).pieceLength(16 * 1024).hybrid(true).hashCache(cache);
+        byte[] expected = first.hashPieces();
+        TorrentBuilder second = new TorrentBuilder(root, files).pieceLength(16 * 1024).hybrid(true).hashCache(cache);
+        assertArrayEquals(expected, second.hashPieces());
+        assertArrayEquals(first.getPiecesRoot(files.get(3)), second.getPiecesRoot(files.get(3)));
+    }
+
+    @Test
+    void testHybridNeedsPowerOfTwoPieces() {
+        TorrentBuilder builder = new TorrentBuilder(root, files).pieceLength(20000).hybrid(true);
+        assertThrows(IllegalArgumentException.class, builder::hashPieces);
+    }
+}
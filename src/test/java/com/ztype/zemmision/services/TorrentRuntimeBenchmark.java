@@ -0,0 +1,140 @@
+package com.ztype.zemmision.services;
+
+import com.ztype.zemmision.models.Playlist;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Thread count and retained heap of {@link TorrentService} seeding many
+ * playlists, one runtime per playlist vs. the shared runtime.
+ * <p>
+ * Each trial starts {@code playlistCount} small seeded torrents and reports,
+ * as secondary results, how many threads and bytes of heap they added over
+ * the idle baseline. Run with {@code java -cp target/test-classes:<test
+ * classpath> com.ztype.zemmision.services.TorrentRuntimeBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(1)
+public class TorrentRuntimeBenchmark {
+
+    @Param({"10", "50", "200"})
+    public int playlistCount;
+
+    @Param({"false", "true"})
+    public boolean shared;
+
+    private Path stagingDir;
+    private Path torrentsDir;
+    private TorrentService torrentService;
+    private final List<String> playlistIds = new ArrayList<>();
+    private int baselineThreads;
+    private long baselineHeap;
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Footprint {
+        public long addedThreads;
+        public long addedHeapBytes;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        stagingDir = Files.createTempDirectory("zemmision-bench-staging");
+        torrentsDir = Files.createTempDirectory("zemmision-bench-torrents");
+        baselineThreads = ManagementFactory.getThreadMXBean().getThreadCount();
+        baselineHeap = usedHeapAfterGc();
+
+        torrentService = new TorrentService() {
+            {
+                enablePortMapping = false;
+                useSharedRuntime = shared;
+            }
+
+            @Override
+            public Path getStagingRoot() {
+                return stagingDir;
+            }
+        };
+
+        for (int i = 0; i < playlistCount; i++) {
+            Playlist playlist = new Playlist("Bench " + i, "Benchmark playlist");
+            Path playlistDir = stagingDir.resolve("Bench_" + i + "_" + playlist.getId());
+            Files.createDirectories(playlistDir);
+            Path track = playlistDir.resolve("track.mp3");
+            Files.write(track, new byte[64 * 1024]);
+
+            Path torrentFile = torrentsDir.resolve(playlist.getId() + ".torrent");
+            try (FileOutputStream out = new FileOutputStream(torrentFile.toFile())) {
+                com.turn.ttorrent.common.Torrent.create(playlistDir.toFile(), List.of(track.toFile()),
+                        new URI("udp://tracker.opentrackr.org:1337/announce"), "zemmision-bench").save(out);
+            }
+            playlist.setTorrentFilePath(torrentFile.toString());
+            playlistIds.add(playlist.getId());
+            torrentService.startSeeding(playlist);
+        }
+
+        // Wait until every client has reported its first state
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(60);
+        while (System.currentTimeMillis() < deadline && !allStarted()) {
+            Thread.sleep(250);
+        }
+    }
+
+    private boolean allStarted() {
+        for (String id : playlistIds) {
+            String state = torrentService.getClientStatus(id).getState();
+            if ("Initializing".equals(state) || "Stopped".equals(state)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long usedHeapAfterGc() {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+
+    @Benchmark
+    public void footprint(Footprint footprint) {
+        footprint.addedThreads = ManagementFactory.getThreadMXBean().getThreadCount() - baselineThreads;
+        footprint.addedHeapBytes = usedHeapAfterGc() - baselineHeap;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        torrentService.stopAll();
+        for (Path dir : new Path[] { stagingDir, torrentsDir }) {
+            try (var paths = Files.walk(dir)) {
+                paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+            }
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(TorrentRuntimeBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
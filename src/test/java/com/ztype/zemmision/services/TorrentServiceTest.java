@@ -70,7 +70,8 @@ class TorrentServiceTest {
         verify(mockClient, timeout(2000)).startAsync(any(), anyLong());
         // Verify selector is NOT Sequential (RarestFirst is default for seeding)
         assertNotNull(capturedSelector.get());
-        assertTrue(!(capturedSelector.get() instanceof SequentialSelector),
+        PieceSelector selector = ((SwitchablePieceSelector) capturedSelector.get()).getDelegate();
+        assertTrue(!(selector instanceof SequentialSelector) && !(selector instanceof StreamingPieceSelector),
                 "Seeding should not use Sequential selector");
     }
 
@@ -83,9 +84,32 @@ class TorrentServiceTest {
         torrentService.startStreaming(playlist);
 
         verify(mockClient, timeout(2000)).startAsync(any(), anyLong());
-        // Verify selector IS Sequential
+        // Verify selector follows the playhead
         assertNotNull(capturedSelector.get());
-        assertTrue(capturedSelector.get() instanceof SequentialSelector, "Streaming MUST use Sequential selector");
+        assertTrue(capturedSelector.get() instanceof SwitchablePieceSelector);
+        assertTrue(((SwitchablePieceSelector) capturedSelector.get()).getDelegate() instanceof StreamingPieceSelector,
+                "Streaming MUST use the playhead-aware selector");
+    }
+
+    @Test
+    void testSwitchModeKeepsClient() {
+        Playlist playlist = new Playlist("Switch Playlist", "Desc");
+        playlist.setId("playlist-3");
+        playlist.setTorrentFilePath("test.torrent");
+
+        torrentService.startSeeding(playlist);
+        verify(mockClient, timeout(2000)).startAsync(any(), anyLong());
+        SwitchablePieceSelector selector = (SwitchablePieceSelector) capturedSelector.get();
+
+        torrentService.startStreaming(playlist);
+        assertTrue(selector.getDelegate() instanceof StreamingPieceSelector);
+        torrentService.startSeeding(playlist);
+        assertFalse(selector.getDelegate() instanceof StreamingPieceSelector);
+
+        // One client for the whole session: no restart, no reconnect
+        verify(mockClient, never()).stop();
+        verify(mockClient, times(1)).startAsync(any(), anyLong());
+        assertSame(selector, capturedSelector.get());
     }
 
     @Test
@@ -103,6 +127,40 @@ class TorrentServiceTest {
         verify(mockClient).stop();
     }
 
+    @Test
+    void testConcurrentStartsGetDistinctPorts() throws Exception {
+        java.util.List<Playlist> playlists = new java.util.ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            Playlist playlist = new Playlist("Concurrent " + i, "Desc");
+            playlist.setId("concurrent-" + i);
+            playlist.setTorrentFilePath("test.torrent");
+            playlists.add(playlist);
+        }
+
+        java.util.concurrent.ExecutorService executor = java.util.concurrent.Executors.newFixedThreadPool(16);
+        java.util.List<java.util.concurrent.Future<?>> starts = new java.util.ArrayList<>();
+        for (Playlist playlist : playlists) {
+            starts.add(executor.submit(() -> torrentService.startSeeding(playlist)));
+        }
+        for (java.util.concurrent.Future<?> start : starts) {
+            start.get(30, java.util.concurrent.TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        java.util.Set<Integer> seen = new java.util.HashSet<>();
+        for (Playlist playlist : playlists) {
+            java.util.List<Integer> ports = torrentService.getPorts(playlist.getId());
+            assertEquals(2, ports.size(), "one DHT and one acceptor port per playlist");
+            for (int port : ports) {
+                assertTrue(seen.add(port), "port " + port + " handed out twice");
+            }
+        }
+        assertEquals(200, torrentService.getAllocatedPortCount());
+
+        torrentService.stopAll();
+        assertEquals(0, torrentService.getAllocatedPortCount(), "stopped playlists must release their ports");
+    }
+
     @Test
     void testGetClientStatus_Stopped() {
         ClientStatus status = torrentService.getClientStatus("non-existent-id");
@@ -0,0 +1,197 @@
+package com.ztype.zemmision.utils;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GrowingFileInputStreamTest {
+
+    private static final int PIECE = 16;
+    private static final int SIZE = 64;
+    // What a preallocated file holds where a piece has not been written yet
+    private static final byte GARBAGE = (byte) 0xEE;
+
+    private File file;
+    private byte[] content;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        file = File.createTempFile("grow", ".bin");
+        content = new byte[SIZE];
+        for (int i = 0; i < SIZE; i++) {
+            content[i] = (byte) i;
+        }
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        Files.deleteIfExists(file.toPath());
+    }
+
+    @Test
+    void testNeverReturnsBytesOfUnverifiedPieces() throws Exception {
+        PieceWaiter waiter = new PieceWaiter(0, 2);
+        waiter.preallocate();
+
+        byte[] read = new byte[SIZE];
+        try (GrowingFileInputStream in = new GrowingFileInputStream(file, () -> true, null, waiter)) {
+            // Stops at the end of piece 0, although piece 1 is on disk
+            assertEquals(PIECE, in.read(read, 0, SIZE));
+            assertTrue(waiter.awaited.isEmpty());
+
+            int total = PIECE;
+            while (total < SIZE) {
+                int n = in.read(read, total, SIZE - total);
+                assertTrue(n > 0);
+                total += n;
+            }
+            assertEquals(-1, in.read());
+        }
+        assertArrayEquals(content, read);
+        // Waited for the missing pieces only, each at its first byte
+        assertEquals(List.of(16L, 48L, 64L), waiter.awaited);
+    }
+
+    @Test
+    void testByteBufferReadsWaitForTheMissingPiece() throws Exception {
+        PieceWaiter waiter = new PieceWaiter(0, 1, 3);
+        waiter.preallocate();
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(SIZE);
+        try (GrowingFileInputStream in = new GrowingFileInputStream(file, () -> true, null, waiter)) {
+            assertEquals(2 * PIECE, in.read(buffer));
+            assertEquals(2 * PIECE, in.read(buffer));
+            assertEquals(-1, in.read(ByteBuffer.allocate(8)));
+        }
+        buffer.flip();
+        byte[] read = new byte[SIZE];
+        buffer.get(read);
+        assertArrayEquals(content, read);
+        assertEquals(List.of(32L, 64L), waiter.awaited);
+    }
+
+    @Test
+    void testEndOfStreamOnlyAtEndOfCompleteFile() throws Exception {
+        // Half written, and the download is not complete: a timed-out wait must not end the stream
+        PieceWaiter waiter = new PieceWaiter(0, 1);
+        waiter.timeOutsBeforeVerify = 2;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.write(content, 0, 2 * PIECE);
+        }
+
+        byte[] read = new byte[SIZE];
+        try (GrowingFileInputStream in = new GrowingFileInputStream(file, () -> false, null, waiter)) {
+            assertEquals(SIZE, in.readNBytes(read, 0, SIZE));
+            assertEquals(-1, in.read());
+        }
+        assertArrayEquals(content, read);
+        assertEquals(List.of(32L, 32L, 32L, 48L, 48L, 48L, 64L), waiter.awaited);
+    }
+
+    @Test
+    void testStoppedDownloadEndsTheStreamAfterATimeout() throws Exception {
+        PieceWaiter waiter = new PieceWaiter(0);
+        waiter.timeOutsBeforeVerify = Integer.MAX_VALUE;
+        waiter.preallocate();
+
+        try (GrowingFileInputStream in = new GrowingFileInputStream(file, () -> true, null, waiter)) {
+            assertEquals(PIECE, in.read(new byte[SIZE], 0, SIZE));
+            assertEquals(-1, in.read());
+        }
+        assertEquals(List.of(16L), waiter.awaited);
+    }
+
+    @Test
+    void testSkipWaitsForPiecesItSkipsOver() throws Exception {
+        PieceWaiter waiter = new PieceWaiter(0);
+        waiter.preallocate();
+
+        try (GrowingFileInputStream in = new GrowingFileInputStream(file, () -> true, null, waiter)) {
+            assertEquals(40, in.skip(40));
+            assertEquals(List.of(16L, 32L), waiter.awaited);
+            assertEquals(40, in.read());
+            assertEquals(SIZE - 41, in.skip(100));
+            assertEquals(-1, in.read());
+        }
+    }
+
+    /**
+     * Verifies pieces on demand: the first {@link #timeOutsBeforeVerify}
+     * waits for a piece time out, the next writes its real bytes and
+     * verifies it.
+     */
+    private class PieceWaiter implements GrowingFileInputStream.RangeWaiter {
+        final BitSet verified = new BitSet();
+        final List<Long> awaited = new ArrayList<>();
+        int timeOutsBeforeVerify = 0;
+        private int timeOuts = 0;
+
+        PieceWaiter(int... verifiedPieces) throws IOException {
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                for (int piece : verifiedPieces) {
+                    raf.seek((long) piece * PIECE);
+                    raf.write(content, piece * PIECE, PIECE);
+                    verified.set(piece);
+                }
+            }
+        }
+
+        // Fills every missing piece with garbage, as a preallocated file would hold
+        void preallocate() throws IOException {
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                byte[] garbage = new byte[PIECE];
+                Arrays.fill(garbage, GARBAGE);
+                for (int piece = verified.nextClearBit(0); piece < SIZE / PIECE; piece = verified.nextClearBit(piece + 1)) {
+                    raf.seek((long) piece * PIECE);
+                    raf.write(garbage);
+                }
+            }
+        }
+
+        @Override
+        public long verifiedLength(long offset, long maxLength) {
+            long end = Math.min(SIZE, offset + maxLength);
+            if (offset >= end) {
+                return 0;
+            }
+            int missing = verified.nextClearBit((int) (offset / PIECE));
+            return Math.max(0, Math.min(end, (long) missing * PIECE) - offset);
+        }
+
+        @Override
+        public boolean await(long offset, long length, long timeoutMillis) throws InterruptedException {
+            awaited.add(offset);
+            if (offset >= SIZE) {
+                return true;
+            }
+            int piece = (int) (offset / PIECE);
+            if (verified.get(piece)) {
+                return true;
+            }
+            if (timeOuts++ < timeOutsBeforeVerify) {
+                return false;
+            }
+            timeOuts = 0;
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.seek((long) piece * PIECE);
+                raf.write(content, piece * PIECE, PIECE);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            verified.set(piece);
+            return true;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.ztype.zemmision.utils;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MappedFileInputStreamTest {
+
+    private static final int SEGMENT = 16;
+    // Two full segments and a short last one
+    private static final int SIZE = 2 * SEGMENT + 5;
+
+    private File file;
+    private byte[] content;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        file = File.createTempFile("mapped", ".bin");
+        content = new byte[SIZE];
+        for (int i = 0; i < SIZE; i++) {
+            content[i] = (byte) (i * 7 + 3);
+        }
+        Files.write(file.toPath(), content);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        Files.deleteIfExists(file.toPath());
+    }
+
+    @Test
+    void testReadsStopAtSegmentBoundaries() throws Exception {
+        List<Long> positions = new ArrayList<>();
+        byte[] read = new byte[SIZE];
+        try (MappedFileInputStream in = new MappedFileInputStream(file, positions::add, SEGMENT)) {
+            assertEquals(10, in.read(read, 0, 10));
+            // Asked to read across the boundary: returns the rest of the segment
+            assertEquals(SEGMENT - 10, in.read(read, 10, SIZE - 10));
+            assertEquals(SEGMENT, in.read(read, SEGMENT, SIZE - SEGMENT));
+            assertEquals(5, in.read(read, 2 * SEGMENT, SIZE - 2 * SEGMENT));
+            assertEquals(-1, in.read(read, 0, 1));
+            assertEquals(-1, in.read());
+        }
+        assertArrayEquals(content, read);
+        assertEquals(List.of(10L, 16L, 32L, 37L), positions);
+    }
+
+    @Test
+    void testReadNBytesAndSingleBytesAcrossSegments() throws Exception {
+        try (MappedFileInputStream in = new MappedFileInputStream(file, null, SEGMENT)) {
+            assertArrayEquals(Arrays.copyOf(content, 20), in.readNBytes(20));
+            for (int i = 20; i < SIZE; i++) {
+                assertEquals(content[i] & 0xFF, in.read());
+            }
+            assertEquals(-1, in.read());
+            assertEquals(0, in.available());
+        }
+    }
+
+    @Test
+    void testSkipIsClampedToTheEnd() throws Exception {
+        try (MappedFileInputStream in = new MappedFileInputStream(file, null, SEGMENT)) {
+            assertEquals(SEGMENT + 3, in.skip(SEGMENT + 3));
+            assertEquals(content[SEGMENT + 3] & 0xFF, in.read());
+            assertEquals(SIZE - SEGMENT - 4, in.available());
+            assertEquals(0, in.skip(-5));
+            assertEquals(SIZE - SEGMENT - 4, in.skip(1000));
+            assertEquals(-1, in.read());
+            assertEquals(0, in.skip(1));
+        }
+    }
+
+    @Test
+    void testResetReturnsToMarkInAnEarlierSegment() throws Exception {
+        try (MappedFileInputStream in = new MappedFileInputStream(file, null, SEGMENT)) {
+            assertTrue(in.markSupported());
+            in.skip(12);
+            in.mark(0);
+            byte[] first = in.readNBytes(SIZE - 12);
+            assertEquals(-1, in.read());
+
+            in.reset();
+            assertArrayEquals(first, in.readNBytes(SIZE - 12));
+            assertArrayEquals(Arrays.copyOfRange(content, 12, SIZE), first);
+        }
+    }
+
+    @Test
+    void testUseAfterCloseFails() throws Exception {
+        MappedFileInputStream in = new MappedFileInputStream(file, null, SEGMENT);
+        in.read();
+        in.close();
+
+        assertThrows(IOException.class, in::read);
+        assertThrows(IOException.class, () -> in.read(new byte[4], 0, 4));
+        assertThrows(IOException.class, () -> in.skip(1));
+        assertThrows(IOException.class, in::available);
+        assertThrows(IOException.class, in::reset);
+        // Closing twice is harmless
+        in.close();
+    }
+
+    @Test
+    void testEmptyFile() throws Exception {
+        Files.write(file.toPath(), new byte[0]);
+        try (MappedFileInputStream in = new MappedFileInputStream(file)) {
+            assertEquals(-1, in.read());
+            assertEquals(-1, in.read(new byte[4], 0, 4));
+            assertEquals(0, in.read(new byte[4], 0, 0));
+        }
+    }
+}
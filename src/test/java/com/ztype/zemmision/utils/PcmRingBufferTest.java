@@ -0,0 +1,98 @@
+package com.ztype.zemmision.utils;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PcmRingBufferTest {
+
+    @Test
+    void testCapacityIsRoundedUpToPowerOfTwo() {
+        assertEquals(8, new PcmRingBuffer(5).capacity());
+        assertEquals(8, new PcmRingBuffer(8).capacity());
+        assertEquals(524_288, new PcmRingBuffer(352_800).capacity());
+    }
+
+    @Test
+    void testWritesWhatFitsAndWrapsAround() {
+        PcmRingBuffer ring = new PcmRingBuffer(8);
+        byte[] out = new byte[8];
+
+        assertEquals(6, ring.write(new byte[] { 1, 2, 3, 4, 5, 6 }, 0, 6));
+        assertEquals(4, ring.read(out, 0, 4));
+        // 2 left, 6 free: this write wraps past the end of the array
+        assertEquals(6, ring.write(new byte[] { 7, 8, 9, 10, 11, 12, 13 }, 0, 7));
+        assertEquals(0, ring.write(new byte[] { 14 }, 0, 1));
+        assertEquals(8, ring.available());
+
+        assertEquals(8, ring.read(out, 0, 8));
+        assertArrayEquals(new byte[] { 5, 6, 7, 8, 9, 10, 11, 12 }, out);
+        assertEquals(0, ring.available());
+    }
+
+    @Test
+    void testUnderrunsCountEmptySpellsMidStream() {
+        PcmRingBuffer ring = new PcmRingBuffer(8);
+        byte[] out = new byte[8];
+
+        // Empty before the first write: still starting, not an underrun
+        assertEquals(0, ring.read(out, 0, 8));
+        assertEquals(0, ring.getUnderruns());
+
+        ring.write(new byte[4], 0, 4);
+        ring.read(out, 0, 8);
+        ring.read(out, 0, 8);
+        ring.read(out, 0, 8);
+        assertEquals(1, ring.getUnderruns());
+
+        ring.write(new byte[4], 0, 4);
+        ring.read(out, 0, 8);
+        ring.finish();
+        // Empty after the end is not an underrun either
+        ring.read(out, 0, 8);
+        assertEquals(1, ring.getUnderruns());
+        assertTrue(ring.isFinished());
+    }
+
+    @Test
+    void testProducerAndConsumerThreadsKeepByteOrder() throws Exception {
+        PcmRingBuffer ring = new PcmRingBuffer(256);
+        int total = 200_000;
+        Thread producer = new Thread(() -> {
+            byte[] chunk = new byte[37];
+            int next = 0;
+            while (next < total) {
+                int len = Math.min(chunk.length, total - next);
+                for (int i = 0; i < len; i++) {
+                    chunk[i] = (byte) (next + i);
+                }
+                int written = 0;
+                while (written < len) {
+                    int n = ring.write(chunk, written, len - written);
+                    if (n == 0) {
+                        Thread.yield();
+                    }
+                    written += n;
+                }
+                next += len;
+            }
+            ring.finish();
+        });
+        producer.start();
+
+        byte[] out = new byte[29];
+        int expected = 0;
+        while (!(ring.isFinished() && ring.available() == 0)) {
+            int n = ring.read(out, 0, out.length);
+            if (n == 0) {
+                Thread.yield();
+            }
+            for (int i = 0; i < n; i++) {
+                assertEquals((byte) (expected + i), out[i]);
+            }
+            expected += n;
+        }
+        producer.join();
+        assertEquals(total, expected);
+    }
+}
@@ -0,0 +1,139 @@
+package com.ztype.zemmision.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReadAheadInputStreamTest {
+
+    private static byte[] data(int length) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) (i * 31 + 7);
+        }
+        return data;
+    }
+
+    private static byte[] read(InputStream in, int length) throws IOException {
+        byte[] out = new byte[length];
+        assertEquals(length, in.readNBytes(out, 0, length));
+        return out;
+    }
+
+    @Test
+    void testReadsAcrossBuffersInOrder() throws Exception {
+        byte[] data = data(10_000);
+        // Short source reads and small buffers: every caller read spans several of them
+        try (ReadAheadInputStream in = new ReadAheadInputStream(new ArraySource(data, 50), 64, 4)) {
+            assertArrayEquals(data, read(in, data.length));
+            assertEquals(-1, in.read());
+            assertEquals(-1, in.read(new byte[8], 0, 8));
+        }
+    }
+
+    @Test
+    void testResetWithinLimitReplaysMarkedBytes() throws Exception {
+        byte[] data = data(1000);
+        try (ReadAheadInputStream in = new ReadAheadInputStream(new ArraySource(data, 50), 64, 4)) {
+            read(in, 10);
+            in.mark(200);
+            byte[] first = read(in, 150);
+            in.reset();
+            assertArrayEquals(first, read(in, 150));
+            // Then carries on past the replayed bytes
+            assertArrayEquals(Arrays.copyOfRange(data, 160, 1000), read(in, 840));
+        }
+    }
+
+    @Test
+    void testResetPastLimitFails() throws Exception {
+        byte[] data = data(1000);
+        try (ReadAheadInputStream in = new ReadAheadInputStream(new ArraySource(data, 50), 64, 4)) {
+            in.mark(20);
+            read(in, 21);
+            assertThrows(IOException.class, in::reset);
+            assertArrayEquals(Arrays.copyOfRange(data, 21, 1000), read(in, 979));
+        }
+    }
+
+    @Test
+    void testMarkWhileReplayingKeepsUnreadBytes() throws Exception {
+        byte[] data = data(1000);
+        try (ReadAheadInputStream in = new ReadAheadInputStream(new ArraySource(data, 50), 64, 4)) {
+            in.mark(100);
+            read(in, 30);
+            in.reset();
+            read(in, 10);
+            // 20 bytes still to be replayed: the new mark starts at offset 10
+            in.mark(100);
+            assertArrayEquals(Arrays.copyOfRange(data, 10, 50), read(in, 40));
+            in.reset();
+            assertArrayEquals(Arrays.copyOfRange(data, 10, 1000), read(in, 990));
+        }
+    }
+
+    @Test
+    void testSourceFailureIsRethrownAfterBufferedBytes() throws Exception {
+        byte[] data = data(300);
+        IOException failure = new IOException("disk gone");
+        ArraySource source = new ArraySource(data, 50);
+        source.failure = failure;
+        try (ReadAheadInputStream in = new ReadAheadInputStream(source, 64, 4)) {
+            // Everything read before the failure still arrives
+            assertArrayEquals(data, read(in, data.length));
+            IOException thrown = assertThrows(IOException.class, () -> in.read(new byte[8], 0, 8));
+            assertSame(failure, thrown.getCause());
+        }
+    }
+
+    @Test
+    void testCloseClosesSourceAndFailsLaterReads() throws Exception {
+        // Source never ends: the filler is blocked on a full ring when the stream is closed
+        ArraySource source = new ArraySource(data(1 << 20), 64);
+        ReadAheadInputStream in = new ReadAheadInputStream(source, 64, 4);
+        read(in, 10);
+        in.close();
+
+        assertTrue(source.closed);
+        assertThrows(IOException.class, in::read);
+        // Closing twice is harmless
+        in.close();
+    }
+
+    private static class ArraySource implements ReadAheadInputStream.Source {
+        private final byte[] data;
+        private final int maxRead;
+        private int position;
+        IOException failure;
+        volatile boolean closed;
+
+        ArraySource(byte[] data, int maxRead) {
+            this.data = data;
+            this.maxRead = maxRead;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            if (position == data.length) {
+                if (failure != null) {
+                    throw failure;
+                }
+                return -1;
+            }
+            int n = Math.min(Math.min(maxRead, dst.remaining()), data.length - position);
+            dst.put(data, position, n);
+            position += n;
+            return n;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+}
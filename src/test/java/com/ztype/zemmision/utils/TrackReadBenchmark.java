@@ -0,0 +1,156 @@
+package com.ztype.zemmision.utils;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading a complete track through {@link GrowingFileInputStream} vs.
+ * {@link MappedFileInputStream}: decoding it to 16-bit PCM the way
+ * {@link StandaloneMediaPlayer} does, and reading the raw bytes alone, in
+ * 4 KiB blocks and byte by byte.
+ * <p>
+ * The WAV is a generated 60 s 44.1 kHz stereo sine. For MP3 pass a real file
+ * with {@code -Dzemmision.bench.mp3=<path>}; otherwise 60 s of silent 128 kbps
+ * frames are generated, which decode faster than music and so make the
+ * stream's share of the time look larger. Run with {@code java -cp
+ * target/test-classes:<test classpath>
+ * com.ztype.zemmision.utils.TrackReadBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+public class TrackReadBenchmark {
+
+    static final int SECONDS = 60;
+    static final float SAMPLE_RATE = 44_100f;
+    // MPEG-1 Layer III, 128 kbps, 44.1 kHz, no CRC, no padding, stereo
+    static final byte[] MP3_FRAME_HEADER = { (byte) 0xFF, (byte) 0xFB, (byte) 0x90, 0x00 };
+    static final int MP3_FRAME_BYTES = 144 * 128_000 / 44_100;
+
+    @Param({"wav", "mp3"})
+    public String format;
+
+    @Param({"growing", "mapped"})
+    public String stream;
+
+    private Path dir;
+    private File track;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("zemmision-bench-read");
+        track = "wav".equals(format) ? writeWav(dir.resolve("track.wav")) : mp3Track(dir.resolve("track.mp3"));
+    }
+
+    private static File writeWav(Path path) throws Exception {
+        AudioFormat pcm = new AudioFormat(SAMPLE_RATE, 16, 2, true, false);
+        int frames = (int) (SAMPLE_RATE * SECONDS);
+        byte[] data = new byte[frames * pcm.getFrameSize()];
+        for (int i = 0; i < frames; i++) {
+            short sample = (short) (Math.sin(2 * Math.PI * 440 * i / SAMPLE_RATE) * 12_000);
+            for (int channel = 0; channel < 2; channel++) {
+                data[i * 4 + channel * 2] = (byte) sample;
+                data[i * 4 + channel * 2 + 1] = (byte) (sample >> 8);
+            }
+        }
+        AudioSystem.write(new AudioInputStream(new ByteArrayInputStream(data), pcm, frames),
+                AudioFileFormat.Type.WAVE, path.toFile());
+        return path.toFile();
+    }
+
+    private static File mp3Track(Path path) throws Exception {
+        String given = System.getProperty("zemmision.bench.mp3");
+        if (given != null) {
+            return new File(given);
+        }
+        // All-zero side information and main data decode to silence
+        byte[] frame = new byte[MP3_FRAME_BYTES];
+        System.arraycopy(MP3_FRAME_HEADER, 0, frame, 0, MP3_FRAME_HEADER.length);
+        int frameCount = (int) (SECONDS * SAMPLE_RATE / 1152);
+        try (OutputStream out = Files.newOutputStream(path)) {
+            for (int i = 0; i < frameCount; i++) {
+                out.write(frame);
+            }
+        }
+        return path.toFile();
+    }
+
+    private InputStream open() throws Exception {
+        return "mapped".equals(stream)
+                ? new MappedFileInputStream(track)
+                : new GrowingFileInputStream(track, () -> true);
+    }
+
+    @Benchmark
+    public long decode() throws Exception {
+        try (AudioInputStream base = AudioSystem.getAudioInputStream(open())) {
+            AudioFormat baseFormat = base.getFormat();
+            AudioFormat decodedFormat = new AudioFormat(AudioFormat.Encoding.PCM_SIGNED, baseFormat.getSampleRate(),
+                    16, baseFormat.getChannels(), baseFormat.getChannels() * 2, baseFormat.getSampleRate(), false);
+            try (AudioInputStream decoded = AudioSystem.getAudioInputStream(decodedFormat, base)) {
+                byte[] buffer = new byte[4096];
+                long total = 0;
+                int n;
+                while ((n = decoded.read(buffer, 0, buffer.length)) != -1) {
+                    total += n;
+                }
+                return total;
+            }
+        }
+    }
+
+    @Benchmark
+    public long readBlocks() throws Exception {
+        try (InputStream in = open()) {
+            byte[] buffer = new byte[4096];
+            long total = 0;
+            int n;
+            while ((n = in.read(buffer, 0, buffer.length)) != -1) {
+                total += n;
+            }
+            return total;
+        }
+    }
+
+    @Benchmark
+    public long readBytes() throws Exception {
+        try (InputStream in = open()) {
+            long sum = 0;
+            int b;
+            while ((b = in.read()) != -1) {
+                sum += b;
+            }
+            return sum;
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        try (var paths = Files.walk(dir)) {
+            paths.sorted(java.util.Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(TrackReadBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}